@@ -0,0 +1,35 @@
+-- Archiving: the aggregates whose latest snapshot moved past history still in ES_EVENT, filled by a trigger on ES_AGGREGATE_SNAPSHOT so
+-- the archiver reads only them instead of every event and every snapshot. A row is removed once the events it covers are archived.
+CREATE TABLE IF NOT EXISTS ES_EVENT_ARCHIVE_CANDIDATE (
+  AGGREGATE_ID              UUID        PRIMARY KEY,
+  SNAPSHOT_VERSION          BIGINT      NOT NULL
+);
+
+INSERT INTO ES_EVENT_ARCHIVE_CANDIDATE (AGGREGATE_ID, SNAPSHOT_VERSION)
+SELECT AGGREGATE_ID, MAX(AGGREGATE_VERSION)
+  FROM ES_AGGREGATE_SNAPSHOT
+ GROUP BY AGGREGATE_ID
+ON CONFLICT (AGGREGATE_ID) DO NOTHING;
+
+CREATE OR REPLACE FUNCTION ES_RECORD_ARCHIVE_CANDIDATE()
+RETURNS TRIGGER
+LANGUAGE plpgsql
+AS $$
+BEGIN
+  INSERT INTO ES_EVENT_ARCHIVE_CANDIDATE (AGGREGATE_ID, SNAPSHOT_VERSION)
+  VALUES (NEW.AGGREGATE_ID, NEW.AGGREGATE_VERSION)
+  ON CONFLICT (AGGREGATE_ID) DO UPDATE SET SNAPSHOT_VERSION = GREATEST(ES_EVENT_ARCHIVE_CANDIDATE.SNAPSHOT_VERSION, EXCLUDED.SNAPSHOT_VERSION);
+  RETURN NULL;
+END;
+$$;
+
+DROP TRIGGER IF EXISTS ES_AGGREGATE_SNAPSHOT_ARCHIVE_CANDIDATE ON ES_AGGREGATE_SNAPSHOT;
+CREATE TRIGGER ES_AGGREGATE_SNAPSHOT_ARCHIVE_CANDIDATE
+  AFTER INSERT ON ES_AGGREGATE_SNAPSHOT
+  FOR EACH ROW
+  EXECUTE FUNCTION ES_RECORD_ARCHIVE_CANDIDATE();
+
+-- The aggregate types a subscription consumes, NULL for every type, so events of other types are archived without waiting for it.
+-- Subscriptions read ES_EVENT only, so every registered subscription holds back archiving, however long it has been stopped, until it
+-- is deregistered; the rows left behind by retired consumers, e.g. those that used a random subscription name, must be deregistered.
+ALTER TABLE ES_EVENT_SUBSCRIPTION ADD COLUMN IF NOT EXISTS AGGREGATE_TYPES TEXT[];
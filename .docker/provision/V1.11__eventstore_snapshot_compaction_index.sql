@@ -0,0 +1,4 @@
+-- The compactor picks the aggregates with snapshots beyond the retention from this index alone, CREATION_DATE included, instead of
+-- ranking every snapshot of the aggregate type on each batch.
+CREATE INDEX IF NOT EXISTS IDX_ES_AGGREGATE_SNAPSHOT_TYPE_ID_VERSION_DATE ON ES_AGGREGATE_SNAPSHOT (AGGREGATE_TYPE, AGGREGATE_ID, AGGREGATE_VERSION DESC) INCLUDE (CREATION_DATE);
+DROP INDEX IF EXISTS IDX_ES_AGGREGATE_SNAPSHOT_TYPE_ID_VERSION;
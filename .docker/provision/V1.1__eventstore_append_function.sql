@@ -0,0 +1,80 @@
+-- Appends the events of an aggregate in a single round trip.
+-- Creates the aggregate if it does not exist, verifies and bumps its version, inserts the optional snapshot and the events.
+-- A version mismatch is reported with SQLSTATE 'ES409' so the caller can map it to an optimistic concurrency conflict.
+-- Each step is its own function, so a later migration that changes one step only replaces that function.
+
+-- Creates the aggregate if needed and moves it from the expected version to the new one.
+CREATE OR REPLACE FUNCTION ES_BUMP_AGGREGATE_VERSION(
+  P_AGGREGATE_ID                UUID,
+  P_AGGREGATE_TYPE              TEXT,
+  P_EXPECTED_AGGREGATE_VERSION  BIGINT,
+  P_NEW_AGGREGATE_VERSION       BIGINT
+)
+RETURNS VOID
+LANGUAGE plpgsql
+AS $$
+BEGIN
+  INSERT INTO ES_AGGREGATE (ID, AGGREGATE_TYPE, AGGREGATE_VERSION)
+  VALUES (P_AGGREGATE_ID, P_AGGREGATE_TYPE, 0)
+  ON CONFLICT (ID) DO NOTHING;
+
+  UPDATE ES_AGGREGATE
+     SET AGGREGATE_VERSION = P_NEW_AGGREGATE_VERSION
+   WHERE ID = P_AGGREGATE_ID
+     AND AGGREGATE_VERSION = P_EXPECTED_AGGREGATE_VERSION;
+
+  IF NOT FOUND THEN
+    RAISE EXCEPTION 'Optimistic concurrency conflict detected for aggregate ''%'' with ID ''%''. The current expected version does not match the version ''%''.',
+      P_AGGREGATE_TYPE, P_AGGREGATE_ID, P_EXPECTED_AGGREGATE_VERSION
+      USING ERRCODE = 'ES409';
+  END IF;
+END;
+$$;
+
+-- Inserts the events, given as a JSON array with one object per event, and returns their generated offsets.
+CREATE OR REPLACE FUNCTION ES_INSERT_AGGREGATE_EVENTS(
+  P_AGGREGATE_ID                UUID,
+  P_EVENTS                      JSON
+)
+RETURNS TABLE (ID UUID, OFFSET_ID BIGINT, OFFSET_TXID TEXT, OFFSET_DATE_TIME TIMESTAMP WITH TIME ZONE)
+LANGUAGE plpgsql
+AS $$
+#variable_conflict use_column
+BEGIN
+  RETURN QUERY
+  INSERT INTO ES_EVENT (ID, AGGREGATE_ID, AGGREGATE_VERSION, EVENT_TYPE, DATA_CONTENT_TYPE, DATA, DATA_BASE64, EXTENSION)
+  SELECT (EVENT ->> 'id')::UUID,
+         P_AGGREGATE_ID,
+         (EVENT ->> 'aggregate_version')::BIGINT,
+         EVENT ->> 'event_type',
+         EVENT ->> 'data_content_type',
+         (EVENT ->> 'data')::JSON,
+         EVENT ->> 'data_base64',
+         (EVENT ->> 'extension')::JSON
+    FROM JSON_ARRAY_ELEMENTS(P_EVENTS) AS EVENT
+  RETURNING ES_EVENT.ID, ES_EVENT.OFFSET_ID, ES_EVENT.OFFSET_TXID::TEXT, ES_EVENT.OFFSET_DATE_TIME;
+END;
+$$;
+
+CREATE OR REPLACE FUNCTION ES_APPEND_AGGREGATE_EVENTS(
+  P_AGGREGATE_ID                UUID,
+  P_AGGREGATE_TYPE              TEXT,
+  P_EXPECTED_AGGREGATE_VERSION  BIGINT,
+  P_NEW_AGGREGATE_VERSION       BIGINT,
+  P_EVENTS                      JSON,
+  P_SNAPSHOT                    JSON
+)
+RETURNS TABLE (ID UUID, OFFSET_ID BIGINT, OFFSET_TXID TEXT, OFFSET_DATE_TIME TIMESTAMP WITH TIME ZONE)
+LANGUAGE plpgsql
+AS $$
+BEGIN
+  PERFORM ES_BUMP_AGGREGATE_VERSION(P_AGGREGATE_ID, P_AGGREGATE_TYPE, P_EXPECTED_AGGREGATE_VERSION, P_NEW_AGGREGATE_VERSION);
+
+  IF P_SNAPSHOT IS NOT NULL THEN
+    INSERT INTO ES_AGGREGATE_SNAPSHOT (AGGREGATE_ID, AGGREGATE_VERSION, AGGREGATE_TYPE, DATA)
+    VALUES (P_AGGREGATE_ID, P_NEW_AGGREGATE_VERSION, P_AGGREGATE_TYPE, P_SNAPSHOT);
+  END IF;
+
+  RETURN QUERY SELECT * FROM ES_INSERT_AGGREGATE_EVENTS(P_AGGREGATE_ID, P_EVENTS);
+END;
+$$;
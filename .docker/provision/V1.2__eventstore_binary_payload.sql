@@ -0,0 +1,30 @@
+-- Event payloads encoded with a binary codec (Smile, CBOR) are stored in DATA_BINARY instead of DATA.
+-- DATA_CONTENT_TYPE records the codec of each event, so JSON and binary events can be mixed.
+ALTER TABLE ES_EVENT ADD COLUMN IF NOT EXISTS DATA_BINARY BYTEA;
+ALTER TABLE ES_EVENT ALTER COLUMN DATA DROP NOT NULL;
+
+-- Same as V1.1, also appending DATA_BINARY, sent as a Base64 string inside the events JSON.
+CREATE OR REPLACE FUNCTION ES_INSERT_AGGREGATE_EVENTS(
+  P_AGGREGATE_ID                UUID,
+  P_EVENTS                      JSON
+)
+RETURNS TABLE (ID UUID, OFFSET_ID BIGINT, OFFSET_TXID TEXT, OFFSET_DATE_TIME TIMESTAMP WITH TIME ZONE)
+LANGUAGE plpgsql
+AS $$
+#variable_conflict use_column
+BEGIN
+  RETURN QUERY
+  INSERT INTO ES_EVENT (ID, AGGREGATE_ID, AGGREGATE_VERSION, EVENT_TYPE, DATA_CONTENT_TYPE, DATA, DATA_BINARY, DATA_BASE64, EXTENSION)
+  SELECT (EVENT ->> 'id')::UUID,
+         P_AGGREGATE_ID,
+         (EVENT ->> 'aggregate_version')::BIGINT,
+         EVENT ->> 'event_type',
+         EVENT ->> 'data_content_type',
+         (EVENT ->> 'data')::JSON,
+         DECODE(EVENT ->> 'data_binary', 'base64'),
+         EVENT ->> 'data_base64',
+         (EVENT ->> 'extension')::JSON
+    FROM JSON_ARRAY_ELEMENTS(P_EVENTS) AS EVENT
+  RETURNING ES_EVENT.ID, ES_EVENT.OFFSET_ID, ES_EVENT.OFFSET_TXID::TEXT, ES_EVENT.OFFSET_DATE_TIME;
+END;
+$$;
@@ -0,0 +1,8 @@
+-- Snapshot retention: CREATION_DATE lets the compactor apply a maximum age per aggregate type.
+ALTER TABLE ES_AGGREGATE_SNAPSHOT ADD COLUMN IF NOT EXISTS CREATION_DATE TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT clock_timestamp();
+
+-- Serves the compactor ranking per aggregate type. The latest snapshot lookup is served by the UNIQUE (AGGREGATE_ID, AGGREGATE_VERSION)
+-- index, which makes the single column indexes redundant.
+CREATE INDEX IF NOT EXISTS IDX_ES_AGGREGATE_SNAPSHOT_TYPE_ID_VERSION ON ES_AGGREGATE_SNAPSHOT (AGGREGATE_TYPE, AGGREGATE_ID, AGGREGATE_VERSION DESC);
+DROP INDEX IF EXISTS IDX_ES_AGGREGATE_SNAPSHOT_AGGREGATE_ID;
+DROP INDEX IF EXISTS IDX_ES_AGGREGATE_SNAPSHOT_VERSION;
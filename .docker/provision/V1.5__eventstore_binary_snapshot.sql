@@ -0,0 +1,33 @@
+-- Snapshots are encoded by the snapshot codec into DATA_BINARY and tagged with the schema fingerprint of the aggregate class.
+-- Snapshots taken before, with DATA and no fingerprint, are ignored by loads and replaced as new snapshots are taken.
+ALTER TABLE ES_AGGREGATE_SNAPSHOT ADD COLUMN IF NOT EXISTS DATA_BINARY BYTEA;
+ALTER TABLE ES_AGGREGATE_SNAPSHOT ADD COLUMN IF NOT EXISTS SCHEMA_FINGERPRINT TEXT;
+ALTER TABLE ES_AGGREGATE_SNAPSHOT ALTER COLUMN DATA DROP NOT NULL;
+
+-- Same as V1.1, the snapshot now being passed as its binary state and schema fingerprint. The signature changes, so the old function
+-- is dropped rather than replaced.
+DROP FUNCTION IF EXISTS ES_APPEND_AGGREGATE_EVENTS(UUID, TEXT, BIGINT, BIGINT, JSON, JSON);
+
+CREATE OR REPLACE FUNCTION ES_APPEND_AGGREGATE_EVENTS(
+  P_AGGREGATE_ID                UUID,
+  P_AGGREGATE_TYPE              TEXT,
+  P_EXPECTED_AGGREGATE_VERSION  BIGINT,
+  P_NEW_AGGREGATE_VERSION       BIGINT,
+  P_EVENTS                      JSON,
+  P_SNAPSHOT_BINARY             BYTEA,
+  P_SNAPSHOT_SCHEMA_FINGERPRINT TEXT
+)
+RETURNS TABLE (ID UUID, OFFSET_ID BIGINT, OFFSET_TXID TEXT, OFFSET_DATE_TIME TIMESTAMP WITH TIME ZONE)
+LANGUAGE plpgsql
+AS $$
+BEGIN
+  PERFORM ES_BUMP_AGGREGATE_VERSION(P_AGGREGATE_ID, P_AGGREGATE_TYPE, P_EXPECTED_AGGREGATE_VERSION, P_NEW_AGGREGATE_VERSION);
+
+  IF P_SNAPSHOT_BINARY IS NOT NULL THEN
+    INSERT INTO ES_AGGREGATE_SNAPSHOT (AGGREGATE_ID, AGGREGATE_VERSION, AGGREGATE_TYPE, DATA_BINARY, SCHEMA_FINGERPRINT)
+    VALUES (P_AGGREGATE_ID, P_NEW_AGGREGATE_VERSION, P_AGGREGATE_TYPE, P_SNAPSHOT_BINARY, P_SNAPSHOT_SCHEMA_FINGERPRINT);
+  END IF;
+
+  RETURN QUERY SELECT * FROM ES_INSERT_AGGREGATE_EVENTS(P_AGGREGATE_ID, P_EVENTS);
+END;
+$$;
@@ -0,0 +1,30 @@
+-- The stable code of the event type, decoded with an array lookup. Events without a code are resolved by EVENT_TYPE.
+ALTER TABLE ES_EVENT ADD COLUMN IF NOT EXISTS EVENT_TYPE_CODE SMALLINT;
+
+-- Same as V1.6, also appending EVENT_TYPE_CODE.
+CREATE OR REPLACE FUNCTION ES_INSERT_AGGREGATE_EVENTS(
+  P_AGGREGATE_ID                UUID,
+  P_EVENTS                      JSON
+)
+RETURNS TABLE (ID UUID, OFFSET_ID BIGINT, OFFSET_TXID TEXT, OFFSET_DATE_TIME TIMESTAMP WITH TIME ZONE)
+LANGUAGE plpgsql
+AS $$
+#variable_conflict use_column
+BEGIN
+  RETURN QUERY
+  INSERT INTO ES_EVENT (ID, AGGREGATE_ID, AGGREGATE_VERSION, EVENT_TYPE, EVENT_TYPE_CODE, EVENT_REVISION, DATA_CONTENT_TYPE, DATA, DATA_BINARY, DATA_BASE64, EXTENSION)
+  SELECT (EVENT ->> 'id')::UUID,
+         P_AGGREGATE_ID,
+         (EVENT ->> 'aggregate_version')::BIGINT,
+         EVENT ->> 'event_type',
+         (EVENT ->> 'event_type_code')::SMALLINT,
+         COALESCE((EVENT ->> 'event_revision')::INTEGER, 1),
+         EVENT ->> 'data_content_type',
+         (EVENT ->> 'data')::JSON,
+         DECODE(EVENT ->> 'data_binary', 'base64'),
+         EVENT ->> 'data_base64',
+         (EVENT ->> 'extension')::JSON
+    FROM JSON_ARRAY_ELEMENTS(P_EVENTS) AS EVENT
+  RETURNING ES_EVENT.ID, ES_EVENT.OFFSET_ID, ES_EVENT.OFFSET_TXID::TEXT, ES_EVENT.OFFSET_DATE_TIME;
+END;
+$$;
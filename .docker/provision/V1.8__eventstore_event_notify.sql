@@ -0,0 +1,26 @@
+-- Notifies the subscriptions when events are appended, on one channel per aggregate type: es_event_<aggregate type in lower case>.
+-- Fires once per INSERT statement, and PostgreSQL folds identical notifications of a transaction into one, delivered at commit.
+CREATE OR REPLACE FUNCTION ES_NOTIFY_EVENTS_APPENDED()
+RETURNS TRIGGER
+LANGUAGE plpgsql
+AS $$
+DECLARE
+  V_AGGREGATE_TYPE TEXT;
+BEGIN
+  FOR V_AGGREGATE_TYPE IN
+    SELECT DISTINCT A.AGGREGATE_TYPE
+      FROM APPENDED_EVENTS E
+      JOIN ES_AGGREGATE A ON A.ID = E.AGGREGATE_ID
+  LOOP
+    PERFORM PG_NOTIFY(LOWER('es_event_' || V_AGGREGATE_TYPE), '');
+  END LOOP;
+  RETURN NULL;
+END;
+$$;
+
+DROP TRIGGER IF EXISTS ES_EVENT_NOTIFY ON ES_EVENT;
+CREATE TRIGGER ES_EVENT_NOTIFY
+  AFTER INSERT ON ES_EVENT
+  REFERENCING NEW TABLE AS APPENDED_EVENTS
+  FOR EACH STATEMENT
+  EXECUTE FUNCTION ES_NOTIFY_EVENTS_APPENDED();
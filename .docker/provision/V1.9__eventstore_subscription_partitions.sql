@@ -0,0 +1,28 @@
+-- Consumer groups: a subscription is split into PARTITION_COUNT partitions by hash of AGGREGATE_ID, each with its own offset and a
+-- leased owner. The events of an aggregate always belong to the same partition, so they are still handled in order.
+ALTER TABLE ES_EVENT_SUBSCRIPTION ADD COLUMN IF NOT EXISTS PARTITION_NUMBER INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE ES_EVENT_SUBSCRIPTION ADD COLUMN IF NOT EXISTS PARTITION_COUNT INTEGER NOT NULL DEFAULT 1;
+ALTER TABLE ES_EVENT_SUBSCRIPTION ADD COLUMN IF NOT EXISTS OWNER TEXT;
+ALTER TABLE ES_EVENT_SUBSCRIPTION ADD COLUMN IF NOT EXISTS LEASE_EXPIRES_AT TIMESTAMP WITH TIME ZONE;
+
+ALTER TABLE ES_EVENT_SUBSCRIPTION DROP CONSTRAINT IF EXISTS ES_EVENT_SUBSCRIPTION_SUBSCRIPTION_NAME_KEY;
+ALTER TABLE ES_EVENT_SUBSCRIPTION DROP CONSTRAINT IF EXISTS ES_EVENT_SUBSCRIPTION_SUBSCRIPTION_NAME_PARTITION_NUMBER_KEY;
+ALTER TABLE ES_EVENT_SUBSCRIPTION ADD CONSTRAINT ES_EVENT_SUBSCRIPTION_SUBSCRIPTION_NAME_PARTITION_NUMBER_KEY UNIQUE (SUBSCRIPTION_NAME, PARTITION_NUMBER);
+
+-- The processes consuming a subscription. Members that stop sending heartbeats are removed and their partitions are rebalanced.
+CREATE TABLE IF NOT EXISTS ES_EVENT_SUBSCRIPTION_MEMBER (
+  SUBSCRIPTION_NAME     TEXT                     NOT NULL,
+  MEMBER_ID             TEXT                     NOT NULL,
+  HEARTBEAT_AT          TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+  PRIMARY KEY (SUBSCRIPTION_NAME, MEMBER_ID)
+);
+
+-- The partition of a subscription the events of an aggregate belong to. Inlined by the planner.
+CREATE OR REPLACE FUNCTION ES_SUBSCRIPTION_PARTITION(P_AGGREGATE_ID UUID, P_PARTITION_COUNT INTEGER)
+RETURNS INTEGER
+LANGUAGE sql
+IMMUTABLE
+PARALLEL SAFE
+AS $$
+  SELECT ((HASHTEXTEXTENDED(P_AGGREGATE_ID::TEXT, 0) & 9223372036854775807) % P_PARTITION_COUNT)::INTEGER
+$$;
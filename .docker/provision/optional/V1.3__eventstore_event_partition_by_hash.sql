@@ -0,0 +1,60 @@
+-- Optional: turns ES_EVENT into a table partitioned by hash of AGGREGATE_ID.
+-- Queries by aggregate ID (replay, latest events per aggregate) only touch the partition that holds the aggregate.
+-- Run it after the other schema scripts, on an empty or small event store; existing events are copied into the partitioned table.
+-- The partition count is fixed at creation; it must match eventstore.partitioning.hash-partitions.
+-- The primary key and the unique constraint must include the partition key, hence (AGGREGATE_ID, ID).
+
+ALTER TABLE ES_EVENT RENAME TO ES_EVENT_UNPARTITIONED;
+ALTER INDEX IF EXISTS IDX_ES_EVENT_TRANSACTION_ID_ID RENAME TO IDX_ES_EVENT_UNPARTITIONED_TRANSACTION_ID_ID;
+ALTER INDEX IF EXISTS IDX_ES_EVENT_AGGREGATE_ID RENAME TO IDX_ES_EVENT_UNPARTITIONED_AGGREGATE_ID;
+ALTER INDEX IF EXISTS IDX_ES_EVENT_VERSION RENAME TO IDX_ES_EVENT_UNPARTITIONED_VERSION;
+
+CREATE TABLE ES_EVENT (
+  ID                        UUID        NOT NULL DEFAULT uuid_generate_v4(),
+  OFFSET_ID                 BIGINT      NOT NULL DEFAULT nextval('es_event_offset_id_seq'),
+  OFFSET_TXID               XID8        NOT NULL DEFAULT pg_current_xact_id(),
+  AGGREGATE_ID              UUID        NOT NULL REFERENCES ES_AGGREGATE (ID),
+  AGGREGATE_VERSION         BIGINT      NOT NULL,
+  EVENT_TYPE                TEXT        NOT NULL,
+  EVENT_TYPE_CODE           SMALLINT,
+  EVENT_REVISION            INTEGER     NOT NULL DEFAULT 1,
+  DATA_CONTENT_TYPE         TEXT,
+  DATA                      JSON,
+  DATA_BINARY               BYTEA,
+  DATA_BASE64               TEXT,
+  OFFSET_DATE_TIME          TIMESTAMP   WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+  EXTENSION                 JSON,
+  PRIMARY KEY (AGGREGATE_ID, ID),
+  UNIQUE (AGGREGATE_ID, AGGREGATE_VERSION)
+) PARTITION BY HASH (AGGREGATE_ID);
+
+CREATE INDEX IF NOT EXISTS IDX_ES_EVENT_TRANSACTION_ID_ID ON ES_EVENT (OFFSET_TXID, OFFSET_ID, ID);
+
+-- 16 partitions; the maintenance component creates any missing one at startup.
+DO $$
+BEGIN
+  FOR REMAINDER IN 0..15 LOOP
+    EXECUTE FORMAT('CREATE TABLE IF NOT EXISTS ES_EVENT_P%s PARTITION OF ES_EVENT FOR VALUES WITH (MODULUS 16, REMAINDER %s)', REMAINDER, REMAINDER);
+  END LOOP;
+END;
+$$;
+
+INSERT INTO ES_EVENT SELECT ID, OFFSET_ID, OFFSET_TXID, AGGREGATE_ID, AGGREGATE_VERSION, EVENT_TYPE, EVENT_TYPE_CODE, EVENT_REVISION, DATA_CONTENT_TYPE, DATA,
+                            DATA_BINARY, DATA_BASE64, OFFSET_DATE_TIME, EXTENSION
+                       FROM ES_EVENT_UNPARTITIONED;
+
+ALTER SEQUENCE es_event_offset_id_seq OWNED BY ES_EVENT.OFFSET_ID;
+DROP TABLE ES_EVENT_UNPARTITIONED;
+
+-- The append notification trigger of V1.8, if installed, went away with the unpartitioned table.
+DO $$
+BEGIN
+  IF EXISTS (SELECT 1 FROM PG_PROC WHERE PRONAME = 'es_notify_events_appended') THEN
+    CREATE TRIGGER ES_EVENT_NOTIFY
+      AFTER INSERT ON ES_EVENT
+      REFERENCING NEW TABLE AS APPENDED_EVENTS
+      FOR EACH STATEMENT
+      EXECUTE FUNCTION ES_NOTIFY_EVENTS_APPENDED();
+  END IF;
+END;
+$$;
@@ -0,0 +1,98 @@
+package com.cjrequena.sample.component;
+
+import com.cjrequena.eventstore.sample.domain.aggregate.Aggregate;
+import com.cjrequena.eventstore.sample.service.AggregateSnapshotWriter;
+import com.cjrequena.sample.configuration.CommandHandlerConfigurationProperties;
+import com.cjrequena.sample.configuration.CommandHandlerConfigurationProperties.AggregateCacheProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Bounded cache of the aggregates saved by recent commands.
+ * <p>
+ * An aggregate is checked out of the cache by the command that uses it, so two concurrent commands never mutate the same instance, and
+ * checked back in with its post-save state once the command transaction commits. A failed command never checks its aggregate back in.
+ * Other processes may have appended events since the aggregate was cached, so callers must compare the cached version with the one in
+ * {@code ES_AGGREGATE} before trusting it.
+ */
+@Component
+@Log4j2
+public class AggregateCache {
+
+  private final AggregateCacheProperties aggregateCacheProperties;
+  private final AggregateSnapshotWriter aggregateSnapshotWriter;
+  private final Cache<UUID, Aggregate> cache;
+
+  @Autowired
+  public AggregateCache(
+    CommandHandlerConfigurationProperties commandHandlerConfigurationProperties,
+    AggregateSnapshotWriter aggregateSnapshotWriter,
+    MeterRegistry meterRegistry) {
+    this.aggregateCacheProperties = commandHandlerConfigurationProperties.getAggregateCache();
+    this.aggregateSnapshotWriter = aggregateSnapshotWriter;
+    this.cache = Caffeine.newBuilder()
+      .maximumSize(this.aggregateCacheProperties.maximumSize())
+      .expireAfterAccess(this.aggregateCacheProperties.expireAfterAccess())
+      .recordStats()
+      .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, this.cache, "command-handler.aggregate");
+  }
+
+  public boolean isEnabled() {
+    return this.aggregateCacheProperties.enabled();
+  }
+
+  /**
+   * Removes the cached aggregate and hands it to the caller.
+   *
+   * @param aggregateId the aggregate to check out.
+   * @return the cached aggregate, or empty if it is not cached or the cache is disabled.
+   */
+  public Optional<Aggregate> checkout(UUID aggregateId) {
+    if (!isEnabled()) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(this.cache.asMap().remove(aggregateId));
+  }
+
+  /**
+   * Caches the saved aggregate once the current transaction commits, unless a newer version has been cached meanwhile. An aggregate
+   * still waiting for an asynchronous snapshot is serialized first, since the next command would mutate it while the worker reads it; it
+   * is only left out of the cache when a worker is serializing it at that very moment.
+   *
+   * @param aggregate the aggregate, with its events already confirmed.
+   */
+  public void checkinAfterCommit(Aggregate aggregate) {
+    if (!isEnabled()) {
+      return;
+    }
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          checkin(aggregate);
+        }
+      });
+    } else {
+      checkin(aggregate);
+    }
+  }
+
+  private void checkin(Aggregate aggregate) {
+    if (!this.aggregateSnapshotWriter.detach(aggregate)) {
+      return;
+    }
+    this.cache.asMap().merge(aggregate.getAggregateId(), aggregate,
+      (cachedAggregate, savedAggregate) -> cachedAggregate.getAggregateVersion() >= savedAggregate.getAggregateVersion() ? cachedAggregate : savedAggregate);
+  }
+}
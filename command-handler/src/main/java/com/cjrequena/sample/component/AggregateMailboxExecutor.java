@@ -0,0 +1,110 @@
+package com.cjrequena.sample.component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/**
+ * Serializes command execution per aggregate.
+ * <p>
+ * Every aggregate with work in flight has a mailbox. Commands for the same aggregate are queued in its mailbox and run one after another
+ * on a virtual thread, while different aggregates run in parallel. Because nothing else in this process writes the aggregate while its
+ * mailbox is busy, the aggregate checked into the {@link AggregateCache} by one command is always current for the next one.
+ */
+@Component
+@Log4j2
+public class AggregateMailboxExecutor {
+
+  private final ConcurrentMap<UUID, Mailbox> mailboxes = new ConcurrentHashMap<>();
+  private final ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+
+  @PreDestroy
+  public void stop() {
+    this.executorService.close();
+  }
+
+  /**
+   * Runs the given task in the mailbox of the aggregate and waits for it to finish.
+   *
+   * @param aggregateId the aggregate the task works on.
+   * @param task the task to run.
+   * @throws RuntimeException the exception thrown by the task.
+   */
+  public void execute(UUID aggregateId, Runnable task) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    Runnable mailboxTask = () -> {
+      try {
+        task.run();
+        future.complete(null);
+      } catch (Throwable ex) {
+        future.completeExceptionally(ex);
+      }
+    };
+
+    boolean[] start = {false};
+    Mailbox mailbox = this.mailboxes.compute(aggregateId, (id, current) -> {
+      Mailbox target = current != null ? current : new Mailbox(id);
+      target.tasks.add(mailboxTask);
+      if (!target.running) {
+        target.running = true;
+        start[0] = true;
+      }
+      return target;
+    });
+    if (start[0]) {
+      this.executorService.execute(() -> drain(mailbox));
+    }
+
+    try {
+      future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the command to be handled", ex);
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      if (ex.getCause() instanceof Error error) {
+        throw error;
+      }
+      throw new IllegalStateException(ex.getCause());
+    }
+  }
+
+  private void drain(Mailbox mailbox) {
+    Runnable task;
+    while ((task = nextTask(mailbox)) != null) {
+      task.run();
+    }
+  }
+
+  private Runnable nextTask(Mailbox mailbox) {
+    Runnable[] next = {null};
+    this.mailboxes.computeIfPresent(mailbox.aggregateId, (id, current) -> {
+      next[0] = current.tasks.poll();
+      if (next[0] == null) {
+        // Nothing left to do: release the mailbox.
+        current.running = false;
+        return null;
+      }
+      return current;
+    });
+    return next[0];
+  }
+
+  private static final class Mailbox {
+    private final UUID aggregateId;
+    // Guarded by the map entry of the mailbox, only touched inside compute.
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private boolean running;
+
+    private Mailbox(UUID aggregateId) {
+      this.aggregateId = aggregateId;
+    }
+  }
+}
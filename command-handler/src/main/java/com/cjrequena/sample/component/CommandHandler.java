@@ -28,6 +28,7 @@ public abstract class CommandHandler<T extends Command> {
   protected final AggregateFactory aggregateFactory;
   protected final EventMapper eventMapper;
   protected final EventStoreConfigurationProperties eventStoreConfigurationProperties;
+  protected final AggregateCache aggregateCache;
 
   public abstract void handle(@Nonnull Command command) throws EventStoreOptimisticConcurrencyServiceException;
 
@@ -38,33 +39,64 @@ public abstract class CommandHandler<T extends Command> {
   public abstract AggregateType getAggregateType();
 
   protected Aggregate retrieveOrInstantiateAggregate(UUID aggregateId) {
+    Optional<Aggregate> cachedAggregate = retrieveAggregateFromCache(aggregateId);
+    if (cachedAggregate.isPresent()) {
+      return cachedAggregate.get();
+    }
     final EventStoreConfigurationProperties.SnapshotProperties snapshotConfiguration = eventStoreConfigurationProperties.getSnapshot(
       getAggregateType().getAggregateType());
     if (snapshotConfiguration.enabled()) {
-      return retrieveAggregateFromSnapshot(aggregateId)
-        .orElseGet(() -> createAndReproduceAggregate(aggregateId));
+      return retrieveAndReproduceAggregate(aggregateId);
     } else {
       return createAndReproduceAggregate(aggregateId);
     }
   }
 
-  protected Optional<Aggregate> retrieveAggregateFromSnapshot(UUID aggregateId) {
-    Optional<Aggregate> optionalAggregate = eventStoreService.retrieveAggregateSnapshot(getAggregateType().getAggregateClass(), aggregateId, null);
-    return optionalAggregate.map(aggregate -> {
-      List<Event> events = retrieveEvents(aggregateId, aggregate.getAggregateVersion());
-      aggregate.reproduceFromEvents(events);
-      return aggregate;
+  protected void saveAggregate(Aggregate aggregate) throws EventStoreOptimisticConcurrencyServiceException {
+    eventStoreService.saveAggregate(aggregate);
+    aggregate.markUnconfirmedEventsAsConfirmed();
+    aggregateCache.checkinAfterCommit(aggregate);
+  }
+
+  /**
+   * Reuses the aggregate saved by a previous command once it has been validated against the version in the event store. Events appended
+   * by other processes since it was cached are applied on top of it; a cached aggregate ahead of the event store is discarded.
+   */
+  protected Optional<Aggregate> retrieveAggregateFromCache(UUID aggregateId) {
+    return aggregateCache.checkout(aggregateId).flatMap(aggregate -> {
+      long cachedVersion = aggregate.getAggregateVersion();
+      long currentVersion = eventStoreService.retrieveAggregateVersion(aggregateId).orElse(-1L);
+      if (currentVersion == cachedVersion) {
+        return Optional.of(aggregate);
+      }
+      if (currentVersion > cachedVersion) {
+        log.debug("Cached aggregate {} is at version {} but the event store is at version {}. Catching up.", aggregateId, cachedVersion,
+          currentVersion);
+        reproduceFromEvents(aggregate, cachedVersion);
+        return Optional.of(aggregate);
+      }
+      return Optional.empty();
     });
   }
 
+  /**
+   * Restores the aggregate from its latest snapshot and the events after it, both read with a single query and applied as they arrive.
+   */
+  protected Aggregate retrieveAndReproduceAggregate(UUID aggregateId) {
+    return eventStoreService.reproduceAggregate(getAggregateType().getAggregateClass(), aggregateId, eventMapper::mapToEvent);
+  }
+
   protected Aggregate createAndReproduceAggregate(UUID aggregateId) {
     log.info("Snapshot not found for Aggregate ID: {}. Reconstituting from events.", aggregateId);
     Aggregate aggregate = aggregateFactory.newInstance(getAggregateType().getAggregateClass(), aggregateId);
-    List<Event> events = retrieveEvents(aggregateId, null);
-    aggregate.reproduceFromEvents(events);
+    reproduceFromEvents(aggregate, null);
     return aggregate;
   }
 
+  protected void reproduceFromEvents(Aggregate aggregate, Long fromVersion) {
+    eventStoreService.reproduceAggregateFromEvents(aggregate, fromVersion, eventMapper::mapToEvent);
+  }
+
   protected List<Event> retrieveEvents(UUID aggregateId, Long fromVersion) {
     return eventMapper.mapToEventList(eventStoreService.retrieveEventsByAggregateId(aggregateId, fromVersion, null));
   }
@@ -30,8 +30,9 @@ public class CreateAccountCommandHandler extends CommandHandler<CreateAccountCom
     EventStoreService eventStoreService,
     AggregateFactory aggregateFactory,
     EventMapper eventMapper,
-    EventStoreConfigurationProperties eventStoreConfigurationProperties) {
-    super(eventStoreService, aggregateFactory, eventMapper, eventStoreConfigurationProperties);
+    EventStoreConfigurationProperties eventStoreConfigurationProperties,
+    AggregateCache aggregateCache) {
+    super(eventStoreService, aggregateFactory, eventMapper, eventStoreConfigurationProperties, aggregateCache);
   }
 
   @Override
@@ -56,8 +57,7 @@ public class CreateAccountCommandHandler extends CommandHandler<CreateAccountCom
     try {
       Aggregate aggregate = retrieveOrInstantiateAggregate(command.getAggregateId());
       aggregate.applyCommand(command);
-      eventStoreService.saveAggregate(aggregate);
-      aggregate.markUnconfirmedEventsAsConfirmed();
+      saveAggregate(aggregate);
     } catch (EventStoreOptimisticConcurrencyServiceException ex) {
       throw new OptimisticConcurrencyServiceException(ex.getMessage(), ex);
     }
@@ -31,8 +31,9 @@ public class CreditAccountCommandHandler extends CommandHandler<CreditAccountCom
     EventStoreService eventStoreService,
     AggregateFactory aggregateFactory,
     EventMapper eventMapper,
-    EventStoreConfigurationProperties eventStoreConfigurationProperties) {
-    super(eventStoreService, aggregateFactory, eventMapper, eventStoreConfigurationProperties);
+    EventStoreConfigurationProperties eventStoreConfigurationProperties,
+    AggregateCache aggregateCache) {
+    super(eventStoreService, aggregateFactory, eventMapper, eventStoreConfigurationProperties, aggregateCache);
   }
 
   @Override
@@ -60,8 +61,7 @@ public class CreditAccountCommandHandler extends CommandHandler<CreditAccountCom
     try {
       Aggregate aggregate = retrieveOrInstantiateAggregate(command.getAggregateId());
       aggregate.applyCommand(command);
-      eventStoreService.saveAggregate(aggregate);
-      aggregate.markUnconfirmedEventsAsConfirmed();
+      saveAggregate(aggregate);
     } catch (EventStoreOptimisticConcurrencyServiceException ex) {
       throw new OptimisticConcurrencyServiceException(ex.getMessage(), ex);
     }
@@ -34,8 +34,9 @@ public class DebitAccountCommandHandler extends CommandHandler<DebitAccountComma
     EventStoreService eventStoreService,
     AggregateFactory aggregateFactory,
     EventMapper eventMapper,
-    EventStoreConfigurationProperties eventStoreConfigurationProperties) {
-    super(eventStoreService, aggregateFactory, eventMapper, eventStoreConfigurationProperties);
+    EventStoreConfigurationProperties eventStoreConfigurationProperties,
+    AggregateCache aggregateCache) {
+    super(eventStoreService, aggregateFactory, eventMapper, eventStoreConfigurationProperties, aggregateCache);
   }
 
   @Override
@@ -70,8 +71,7 @@ public class DebitAccountCommandHandler extends CommandHandler<DebitAccountComma
 
     try {
       aggregate.applyCommand(command);
-      eventStoreService.saveAggregate(aggregate);
-      aggregate.markUnconfirmedEventsAsConfirmed();
+      saveAggregate(aggregate);
     } catch (EventStoreOptimisticConcurrencyServiceException ex) {
       throw new OptimisticConcurrencyServiceException(ex.getMessage(), ex);
     }
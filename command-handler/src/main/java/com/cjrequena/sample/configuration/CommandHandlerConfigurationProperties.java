@@ -0,0 +1,76 @@
+package com.cjrequena.sample.configuration;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@Validated
+@Configuration
+@ConfigurationProperties(prefix = "command-handler")
+public class CommandHandlerConfigurationProperties {
+
+  @Valid
+  @NestedConfigurationProperty
+  private ExecutionProperties execution = new ExecutionProperties(ExecutionMode.DIRECT);
+  @Valid
+  @NestedConfigurationProperty
+  private AggregateCacheProperties aggregateCache = new AggregateCacheProperties(true, 10000, Duration.ofMinutes(10));
+  @Valid
+  @NestedConfigurationProperty
+  private RetryPolicyProperties retry = new RetryPolicyProperties(3, Duration.ofMillis(10), Duration.ofMillis(200));
+  // Retry policies that override the default one, keyed by command type.
+  @Valid
+  @NestedConfigurationProperty
+  private Map<String, RetryPolicyProperties> commandRetry = new HashMap<>();
+
+  public RetryPolicyProperties getRetry(String commandType) {
+    return commandRetry.getOrDefault(commandType, retry);
+  }
+
+  /**
+   * @param mode how commands are executed. {@code direct} runs each command on the calling thread. {@code mailbox} queues commands per
+   *             aggregate ID and runs them one after another on a virtual thread.
+   */
+  public record ExecutionProperties(@DefaultValue("direct") ExecutionMode mode) {
+  }
+
+  /**
+   * @param enabled whether aggregates saved by a command are cached for the next command on the same aggregate.
+   * @param maximumSize the maximum number of cached aggregates.
+   * @param expireAfterAccess how long an aggregate stays cached after it was last saved.
+   */
+  public record AggregateCacheProperties(
+    @DefaultValue("true") boolean enabled,
+    @DefaultValue("10000") @Positive long maximumSize,
+    @DefaultValue("10m") Duration expireAfterAccess) {
+  }
+
+  /**
+   * @param maxRetries how many times a command that hit an optimistic concurrency conflict is retried. 0 disables retries.
+   * @param initialBackoff the upper bound of the random wait before the first retry. It doubles on every retry.
+   * @param maxBackoff the upper bound of the random wait before any retry.
+   */
+  public record RetryPolicyProperties(
+    @DefaultValue("3") @PositiveOrZero int maxRetries,
+    @DefaultValue("10ms") Duration initialBackoff,
+    @DefaultValue("200ms") Duration maxBackoff) {
+  }
+
+  public enum ExecutionMode {
+    DIRECT,
+    MAILBOX
+  }
+}
@@ -0,0 +1,31 @@
+package com.cjrequena.sample.configuration;
+
+import com.cjrequena.eventstore.sample.mapper.EventEntityMapper;
+import com.cjrequena.sample.domain.event.AccountCreatedEvent;
+import com.cjrequena.sample.domain.event.AccountCreditedEvent;
+import com.cjrequena.sample.domain.event.AccountDebitedEvent;
+import com.cjrequena.sample.mapper.EventMapper;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the mapping of each account event class to the entity appended to the event store.
+ */
+@Configuration
+public class EventEntityMapperConfiguration {
+
+  @Bean
+  public EventEntityMapper<AccountCreatedEvent> accountCreatedEventEntityMapper(EventMapper eventMapper) {
+    return EventEntityMapper.of(AccountCreatedEvent.class, eventMapper::mapToEventEntity);
+  }
+
+  @Bean
+  public EventEntityMapper<AccountCreditedEvent> accountCreditedEventEntityMapper(EventMapper eventMapper) {
+    return EventEntityMapper.of(AccountCreditedEvent.class, eventMapper::mapToEventEntity);
+  }
+
+  @Bean
+  public EventEntityMapper<AccountDebitedEvent> accountDebitedEventEntityMapper(EventMapper eventMapper) {
+    return EventEntityMapper.of(AccountDebitedEvent.class, eventMapper::mapToEventEntity);
+  }
+}
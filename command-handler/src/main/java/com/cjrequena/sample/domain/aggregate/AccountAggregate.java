@@ -1,7 +1,6 @@
 package com.cjrequena.sample.domain.aggregate;
 
 import com.cjrequena.eventstore.sample.domain.aggregate.Aggregate;
-import com.cjrequena.sample.common.util.JsonUtil;
 import com.cjrequena.sample.domain.command.CreateAccountCommand;
 import com.cjrequena.sample.domain.command.CreditAccountCommand;
 import com.cjrequena.sample.domain.command.DebitAccountCommand;
@@ -40,9 +39,7 @@ public class AccountAggregate extends Aggregate {
     applyUnconfirmedEvent(AccountCreatedEvent.builder()
       .aggregateId(command.getAggregateId())
       .aggregateVersion(getNextAggregateVersion())
-      .dataContentType("application/json")
       .data(command.getAccountVO())
-      .dataBase64(JsonUtil.objectToJsonBase64(command.getAccountVO()))
       .extension(eventExtension)
       .build());
   }
@@ -54,9 +51,7 @@ public class AccountAggregate extends Aggregate {
     applyUnconfirmedEvent(AccountCreditedEvent.builder()
       .aggregateId(command.getAggregateId())
       .aggregateVersion(getNextAggregateVersion())
-      .dataContentType("application/json")
       .data(command.getCreditVO())
-      .dataBase64(JsonUtil.objectToJsonBase64(command.getCreditVO()))
       .extension(eventExtension)
       .build());
   }
@@ -67,9 +62,7 @@ public class AccountAggregate extends Aggregate {
     applyUnconfirmedEvent(AccountDebitedEvent.builder()
       .aggregateId(command.getAggregateId())
       .aggregateVersion(getNextAggregateVersion())
-      .dataContentType("application/json")
       .data(command.getDebitVO())
-      .dataBase64(JsonUtil.objectToJsonBase64(command.getDebitVO()))
       .extension(eventExtension)
       .build());
   }
@@ -1,9 +1,6 @@
 package com.cjrequena.sample.domain.event;
 
 import com.cjrequena.eventstore.sample.domain.event.Event;
-import com.cjrequena.eventstore.sample.entity.EventEntity;
-import com.cjrequena.sample.common.util.ApplicationContextProvider;
-import com.cjrequena.sample.mapper.EventMapper;
 import com.cjrequena.sample.vo.DebitVO;
 import com.cjrequena.sample.vo.EventExtensionVO;
 import jakarta.annotation.Nonnull;
@@ -20,12 +17,6 @@ public class AccountDebitedEvent extends Event {
 
   private final DebitVO data;
   private final EventExtensionVO extension;
-  private final EventMapper eventMapper = ApplicationContextProvider.getContext().getBean(EventMapper.class);
-
-
-  public EventEntity mapToEventEntity() {
-    return this.eventMapper.mapToEventEntity(this);
-  }
 
   @Nonnull
   @Override
@@ -33,4 +24,9 @@ public class AccountDebitedEvent extends Event {
     return EventType.ACCOUNT_DEBITED_EVENT.getEventType();
   }
 
+  @Override
+  public Short getEventTypeCode() {
+    return EventType.ACCOUNT_DEBITED_EVENT.getCode();
+  }
+
 }
@@ -1,18 +1,18 @@
 package com.cjrequena.sample.mapper;
 
+import com.cjrequena.eventstore.sample.codec.EventPayloadCodecRegistry;
 import com.cjrequena.eventstore.sample.domain.event.Event;
 import com.cjrequena.eventstore.sample.entity.EventEntity;
 import com.cjrequena.sample.common.util.JsonUtil;
 import com.cjrequena.sample.domain.event.AccountCreatedEvent;
 import com.cjrequena.sample.domain.event.AccountCreditedEvent;
 import com.cjrequena.sample.domain.event.AccountDebitedEvent;
+import com.cjrequena.sample.domain.event.EventType;
 import com.cjrequena.sample.exception.service.MapperServiceException;
-import com.cjrequena.sample.vo.AccountVO;
-import com.cjrequena.sample.vo.CreditVO;
-import com.cjrequena.sample.vo.DebitVO;
 import com.cjrequena.sample.vo.EventExtensionVO;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 import org.mapstruct.NullValueCheckStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,18 +22,36 @@ import java.util.stream.Collectors;
 
 @Mapper(
   componentModel = "spring",
-  nullValueCheckStrategy = NullValueCheckStrategy.ALWAYS
+  nullValueCheckStrategy = NullValueCheckStrategy.ALWAYS,
+  uses = EventPayloadCodecRegistry.class
 )
 public interface EventMapper {
 
   Logger log = LoggerFactory.getLogger(EventMapper.class);
 
-  //@Mapping(source = "aggregateId", target = "aggregateId")
+  // The payload is encoded by the event store, with the codec configured for the aggregate type and the latest event revision.
+  @Mapping(target = "data", ignore = true)
+  @Mapping(target = "dataBinary", ignore = true)
+  @Mapping(target = "dataContentType", ignore = true)
+  @Mapping(target = "eventRevision", ignore = true)
   EventEntity mapToEventEntity(AccountCreatedEvent event);
+  @Mapping(target = "data", ignore = true)
+  @Mapping(target = "dataBinary", ignore = true)
+  @Mapping(target = "dataContentType", ignore = true)
+  @Mapping(target = "eventRevision", ignore = true)
   EventEntity mapToEventEntity(AccountCreditedEvent event);
+  @Mapping(target = "data", ignore = true)
+  @Mapping(target = "dataBinary", ignore = true)
+  @Mapping(target = "dataContentType", ignore = true)
+  @Mapping(target = "eventRevision", ignore = true)
   EventEntity mapToEventEntity(AccountDebitedEvent event);
+
+  // The payload is decoded with the codec of the content type stored with the event.
+  @Mapping(target = "data", source = "eventEntity")
   AccountCreatedEvent mapToAccountCreatedEvent(EventEntity eventEntity);
+  @Mapping(target = "data", source = "eventEntity")
   AccountCreditedEvent mapToAccountCreditedEvent(EventEntity eventEntity);
+  @Mapping(target = "data", source = "eventEntity")
   AccountDebitedEvent mapToAccountDebitedEvent(EventEntity eventEntity);
 
   // Custom mapping method for converting String to EventExtensionVO
@@ -58,72 +76,6 @@ public interface EventMapper {
     }
   }
 
-  // Custom mapping method for converting String to AccountVO
-  default AccountVO mapToAccountVO(String value) {
-    try {
-      return JsonUtil.jsonStringToObject(value, AccountVO.class);
-    } catch (JsonProcessingException ex) {
-      String errorMessage = String.format("Failed to map JSON string to AccountVO: %s", value);
-      log.error(errorMessage);
-      throw new MapperServiceException(errorMessage, ex);
-    }
-  }
-
-  // You can add another mapping method if you need to go from AccountVO to String
-  default String map(AccountVO value) {
-    try {
-      return JsonUtil.objectToJsonString(value);
-    } catch (JsonProcessingException ex) {
-      String errorMessage = String.format("Failed to map AccountVO to JSON string: %s", value);
-      log.error(errorMessage);
-      throw new MapperServiceException(errorMessage, ex);
-    }
-  }
-
-  // Custom mapping method for converting String to CreditVO
-  default CreditVO mapToCreditVO(String value) {
-    try {
-      return JsonUtil.jsonStringToObject(value, CreditVO.class);
-    } catch (JsonProcessingException ex) {
-      String errorMessage = String.format("Failed to map JSON string to CreditVO: %s", value);
-      log.error(errorMessage);
-      throw new MapperServiceException(errorMessage, ex);
-    }
-  }
-
-  // You can add another mapping method if you need to go from CreditVO to String
-  default String map(CreditVO value) {
-    try {
-      return JsonUtil.objectToJsonString(value);
-    } catch (JsonProcessingException ex) {
-      String errorMessage = String.format("Failed to map CreditVO to JSON string: %s", value);
-      log.error(errorMessage);
-      throw new MapperServiceException(errorMessage, ex);
-    }
-  }
-
-  // Custom mapping method for converting String to DebitVO
-  default DebitVO mapToDebitVO(String value) {
-    try {
-      return JsonUtil.jsonStringToObject(value, DebitVO.class);
-    } catch (JsonProcessingException ex) {
-      String errorMessage = String.format("Failed to map JSON string to DebitVO: %s", value);
-      log.error(errorMessage);
-      throw new MapperServiceException(errorMessage, ex);
-    }
-  }
-
-  // You can add another mapping method if you need to go from DebitVO to String
-  default String map(DebitVO value) {
-    try {
-      return JsonUtil.objectToJsonString(value);
-    } catch (JsonProcessingException ex) {
-      String errorMessage = String.format("Failed to map DebitVO to JSON string: %s", value);
-      log.error(errorMessage);
-      throw new MapperServiceException(errorMessage, ex);
-    }
-  }
-
   // New method to map a List of EventEntity to a List of Event
   default List<Event> mapToEventList(List<EventEntity> eventEntities) {
     return eventEntities.stream()
@@ -133,19 +85,19 @@ public interface EventMapper {
 
   // Helper method to map a single EventEntity to an Event (AccountCreatedEvent, AccountCreditedEvent, etc.)
   default Event mapToEvent(EventEntity eventEntity) {
-    // Assuming EventEntity has a type field or some kind of discriminator
-    switch (eventEntity.getEventType()) {
-      case "com.cjrequena.sample.domain.event.AccountCreatedEvent":
-        return mapToAccountCreatedEvent(eventEntity);
-      case "com.cjrequena.sample.domain.event.AccountCreditedEvent":
-        return mapToAccountCreditedEvent(eventEntity);
-      case "com.cjrequena.sample.domain.event.AccountDebitedEvent":
-        return mapToAccountDebitedEvent(eventEntity);
-      default:
-        String errorMessage = String.format("Error mapping to event, unknown event type: %s", eventEntity.getEventType());
-        log.error(errorMessage);
-        throw new MapperServiceException(errorMessage);
+    // Resolved by the stored type code with an array lookup, or by the type name for events stored without one
+    EventType eventType = EventType.of(eventEntity.getEventTypeCode(), eventEntity.getEventType());
+    if (eventType == null) {
+      String errorMessage = String.format("Error mapping to event, unknown event type: %s (code %s)", eventEntity.getEventType(),
+        eventEntity.getEventTypeCode());
+      log.error(errorMessage);
+      throw new MapperServiceException(errorMessage);
     }
+    return switch (eventType) {
+      case ACCOUNT_CREATED_EVENT -> mapToAccountCreatedEvent(eventEntity);
+      case ACCOUNT_CREDITED_EVENT -> mapToAccountCreditedEvent(eventEntity);
+      case ACCOUNT_DEBITED_EVENT -> mapToAccountDebitedEvent(eventEntity);
+    };
   }
 
 }
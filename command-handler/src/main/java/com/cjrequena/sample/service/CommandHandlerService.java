@@ -1,23 +1,31 @@
 package com.cjrequena.sample.service;
 
 import com.cjrequena.eventstore.sample.domain.command.Command;
+import com.cjrequena.sample.component.AggregateMailboxExecutor;
 import com.cjrequena.sample.component.CommandHandler;
+import com.cjrequena.sample.configuration.CommandHandlerConfigurationProperties;
+import com.cjrequena.sample.configuration.CommandHandlerConfigurationProperties.ExecutionMode;
+import com.cjrequena.sample.configuration.CommandHandlerConfigurationProperties.RetryPolicyProperties;
 import com.cjrequena.sample.exception.service.CommandHandlerNotFoundServiceException;
+import com.cjrequena.sample.exception.service.OptimisticConcurrencyServiceException;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Log4j2
 @Service
-@Transactional
 @RequiredArgsConstructor(onConstructor = @__(@Autowired))
 public class CommandHandlerService {
 
   private final List<CommandHandler<? extends Command>> commandHandlers;
+  private final AggregateMailboxExecutor aggregateMailboxExecutor;
+  private final CommandHandlerConfigurationProperties commandHandlerConfigurationProperties;
+  private final MeterRegistry meterRegistry;
 
   public void handler(Command command) {
     log.info("Processing command {}", command);
@@ -27,10 +35,65 @@ public class CommandHandlerService {
       .findFirst()
       .ifPresentOrElse(commandHandler -> {
         log.info("Handling command {} with {}", command.getClass().getSimpleName(), commandHandler.getClass().getSimpleName());
-        commandHandler.handle(command);
+        handleWithRetry(commandHandler, command);
       }, () -> {
         log.info("No specialized handler found with {}", command.getClass().getSimpleName());
         throw new CommandHandlerNotFoundServiceException("No specialized handler found for command: " + command.getClass().getSimpleName());
       });
   }
+
+  /**
+   * Handles the command, retrying it on optimistic concurrency conflicts as configured for its type. Every attempt runs in its own
+   * transaction and starts from a freshly loaded aggregate, since the aggregate of the failed attempt already has the command applied.
+   */
+  private void handleWithRetry(CommandHandler<? extends Command> commandHandler, Command command) {
+    String commandType = command.getClass().getSimpleName();
+    RetryPolicyProperties retryPolicy = commandHandlerConfigurationProperties.getRetry(commandType);
+    for (int retry = 0; ; retry++) {
+      try {
+        handle(commandHandler, command);
+        if (retry > 0) {
+          meterRegistry.counter("command.retry.succeeded", "command", commandType).increment();
+        }
+        return;
+      } catch (OptimisticConcurrencyServiceException ex) {
+        if (retry >= retryPolicy.maxRetries()) {
+          if (retryPolicy.maxRetries() > 0) {
+            meterRegistry.counter("command.retry.exhausted", "command", commandType).increment();
+          }
+          throw ex;
+        }
+        meterRegistry.counter("command.retry.attempts", "command", commandType).increment();
+        long backoffMillis = backoffMillis(retryPolicy, retry);
+        log.info("Optimistic concurrency conflict handling command {} for aggregate with ID {}, retrying in {} ms",
+          commandType, command.getAggregateId(), backoffMillis);
+        sleep(backoffMillis);
+      }
+    }
+  }
+
+  private void handle(CommandHandler<? extends Command> commandHandler, Command command) {
+    if (commandHandlerConfigurationProperties.getExecution().mode() == ExecutionMode.MAILBOX) {
+      // Commands for the same aggregate run one after another, each one in its own transaction.
+      aggregateMailboxExecutor.execute(command.getAggregateId(), () -> commandHandler.handle(command));
+    } else {
+      commandHandler.handle(command);
+    }
+  }
+
+  // Full jitter: a random wait between zero and the exponential backoff, so competing writers spread out.
+  private static long backoffMillis(RetryPolicyProperties retryPolicy, int retry) {
+    long exponentialBackoff = retryPolicy.initialBackoff().toMillis() << Math.min(retry, 20);
+    long backoffCap = Math.min(exponentialBackoff, retryPolicy.maxBackoff().toMillis());
+    return backoffCap > 0 ? ThreadLocalRandom.current().nextLong(backoffCap + 1) : 0;
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting to retry the command", ex);
+    }
+  }
 }
@@ -0,0 +1,160 @@
+package com.cjrequena.sample;
+
+import com.cjrequena.eventstore.sample.domain.aggregate.Aggregate;
+import com.cjrequena.eventstore.sample.domain.command.Command;
+import com.cjrequena.eventstore.sample.exception.service.EventStoreOptimisticConcurrencyServiceException;
+import com.cjrequena.eventstore.sample.service.AggregateFactory;
+import com.cjrequena.eventstore.sample.service.EventStoreService;
+import com.cjrequena.sample.domain.aggregate.AggregateType;
+import com.cjrequena.sample.domain.command.CreateAccountCommand;
+import com.cjrequena.sample.domain.command.CreditAccountCommand;
+import com.cjrequena.sample.mapper.EventMapper;
+import com.cjrequena.sample.vo.AccountVO;
+import com.cjrequena.sample.vo.CreditVO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Appends through the group commit dispatcher against the event store database, with a pool small enough to be exhausted by the callers.
+ */
+@SpringBootTest(properties = {
+  "eventstore.group-commit.enabled=true",
+  "eventstore.group-commit.window=200ms",
+  "eventstore.group-commit.handoff-timeout=1s",
+  "spring.datasource.eventstore.maximum-pool-size=4",
+  "spring.datasource.eventstore.minimum-idle=4",
+  "spring.datasource.eventstore.connection-timeout=60000"
+})
+class GroupCommitDispatcherIT {
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+  @Autowired
+  private EventStoreService eventStoreService;
+  @Autowired
+  private AggregateFactory aggregateFactory;
+  @Autowired
+  private EventMapper eventMapper;
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Test
+  void commitsConcurrentAppendsTogether() {
+    DistributionSummary groupSize = this.meterRegistry.get("eventstore.group-commit.size").summary();
+    long groupsBefore = groupSize.count();
+    double appendsBefore = groupSize.totalAmount();
+
+    List<Aggregate> aggregates = List.of(newAccount(), newAccount(), newAccount());
+    List<Optional<Throwable>> failures = saveConcurrently(aggregates);
+
+    failures.forEach(failure -> assertTrue(failure.isEmpty(), () -> "Unexpected failure " + failure.get()));
+    aggregates.forEach(aggregate -> assertEquals(Optional.of(1L), this.eventStoreService.retrieveAggregateVersion(aggregate.getAggregateId())));
+    // Three appends in fewer than three transactions.
+    assertEquals(3, groupSize.totalAmount() - appendsBefore);
+    assertTrue(groupSize.count() - groupsBefore < 3, "The appends were not grouped");
+  }
+
+  @Test
+  void failsOnlyTheConflictingAppendOfAGroup() {
+    Aggregate account = newAccount();
+    this.eventStoreService.saveAggregate(account);
+    UUID aggregateId = account.getAggregateId();
+
+    // Both credits expect version 1, only the first one appended in the group can get it.
+    Aggregate firstCredit = credit(aggregateId);
+    Aggregate secondCredit = credit(aggregateId);
+    Aggregate otherAccount = newAccount();
+    List<Optional<Throwable>> failures = saveConcurrently(List.of(firstCredit, secondCredit, otherAccount));
+
+    List<Throwable> creditFailures = new ArrayList<>();
+    failures.get(0).ifPresent(creditFailures::add);
+    failures.get(1).ifPresent(creditFailures::add);
+    assertEquals(1, creditFailures.size(), "Exactly one credit must conflict");
+    assertInstanceOf(EventStoreOptimisticConcurrencyServiceException.class, creditFailures.get(0));
+    assertTrue(failures.get(2).isEmpty(), () -> "The conflict was reported to another caller: " + failures.get(2).get());
+    assertEquals(Optional.of(2L), this.eventStoreService.retrieveAggregateVersion(aggregateId));
+    assertEquals(Optional.of(1L), this.eventStoreService.retrieveAggregateVersion(otherAccount.getAggregateId()));
+  }
+
+  @Test
+  void appendsOnTheCallingThreadWhenCallersHoldEveryConnection() {
+    Counter handoffTimeouts = this.meterRegistry.get("eventstore.group-commit.handoff-timeouts").counter();
+    double handoffTimeoutsBefore = handoffTimeouts.count();
+
+    // Every caller holds a connection in its own transaction while it waits, three times the size of the pool.
+    List<Aggregate> aggregates = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      aggregates.add(newAccount());
+    }
+    List<Optional<Throwable>> failures = assertTimeoutPreemptively(TIMEOUT, () -> saveConcurrently(aggregates));
+
+    failures.forEach(failure -> assertTrue(failure.isEmpty(), () -> "Unexpected failure " + failure.get()));
+    aggregates.forEach(aggregate -> assertEquals(Optional.of(1L), this.eventStoreService.retrieveAggregateVersion(aggregate.getAggregateId())));
+    assertTrue(handoffTimeouts.count() > handoffTimeoutsBefore, "No caller fell back to its own transaction");
+  }
+
+  private List<Optional<Throwable>> saveConcurrently(List<Aggregate> aggregates) {
+    ExecutorService executor = Executors.newFixedThreadPool(aggregates.size());
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<Optional<Throwable>>> futures = new ArrayList<>();
+      for (Aggregate aggregate : aggregates) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          try {
+            this.eventStoreService.saveAggregate(aggregate);
+            return Optional.<Throwable>empty();
+          } catch (RuntimeException ex) {
+            return Optional.<Throwable>of(ex);
+          }
+        }));
+      }
+      start.countDown();
+      List<Optional<Throwable>> failures = new ArrayList<>();
+      for (Future<Optional<Throwable>> future : futures) {
+        failures.add(future.get());
+      }
+      return failures;
+    } catch (Exception ex) {
+      throw new IllegalStateException(ex);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Aggregate newAccount() {
+    Command createAccountCommand = CreateAccountCommand.builder()
+      .accountVO(AccountVO.builder().owner("Group commit").balance(BigDecimal.valueOf(100)).build())
+      .build();
+    Aggregate aggregate = this.aggregateFactory.newInstance(AggregateType.ACCOUNT_AGGREGATE.getAggregateClass(), createAccountCommand.getAggregateId());
+    aggregate.applyCommand(createAccountCommand);
+    return aggregate;
+  }
+
+  private Aggregate credit(UUID aggregateId) {
+    Aggregate aggregate = this.eventStoreService.reproduceAggregate(AggregateType.ACCOUNT_AGGREGATE.getAggregateClass(), aggregateId,
+      this.eventMapper::mapToEvent);
+    aggregate.applyCommand(CreditAccountCommand.builder()
+      .aggregateId(aggregateId)
+      .creditVO(CreditVO.builder().accountId(aggregateId).amount(BigDecimal.TEN).build())
+      .build());
+    return aggregate;
+  }
+}
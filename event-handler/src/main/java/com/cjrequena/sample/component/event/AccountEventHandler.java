@@ -1,6 +1,7 @@
 package com.cjrequena.sample.component.event;
 
 import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties;
+import com.cjrequena.eventstore.sample.domain.aggregate.Aggregate;
 import com.cjrequena.eventstore.sample.domain.event.Event;
 import com.cjrequena.eventstore.sample.entity.EventEntity;
 import com.cjrequena.eventstore.sample.service.AggregateFactory;
@@ -15,7 +16,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
@@ -43,7 +44,7 @@ public class AccountEventHandler extends AsyncEventHandler {
   public void handle(List<EventEntity> eventEntityList) {
     final List<Event> events = this.eventMapper.mapToEventList(eventEntityList);
 
-    Set<UUID> eventsIds = new HashSet<>();
+    Set<UUID> eventsIds = new LinkedHashSet<>();
 
     for (Event event : events) {
       if (log.isInfoEnabled()) {
@@ -55,8 +56,8 @@ public class AccountEventHandler extends AsyncEventHandler {
       eventsIds.add(event.getAggregateId());
     }
 
-    for (UUID eventId : eventsIds) {
-      final AccountAggregate aggregate = (AccountAggregate) this.retrieveOrInstantiateAggregate(eventId);
+    for (Aggregate retrievedAggregate : this.retrieveOrInstantiateAggregates(eventsIds).values()) {
+      final AccountAggregate aggregate = (AccountAggregate) retrievedAggregate;
       log.info("Preparing to save or update in the projection database the aggregate {}", aggregate);
 
       // Save or Update the projection database
@@ -14,8 +14,9 @@ import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.UUID;
 
 @Transactional
@@ -38,30 +39,39 @@ public abstract class AsyncEventHandler {
   protected Aggregate retrieveOrInstantiateAggregate(UUID aggregateId) {
     final EventStoreConfigurationProperties.SnapshotProperties snapshotConfiguration = eventStoreConfigurationProperties.getSnapshot(getAggregateType().getType());
     if (snapshotConfiguration.enabled()) {
-      return retrieveAggregateFromSnapshot(aggregateId)
-        .orElseGet(() -> createAndReproduceAggregate(aggregateId));
+      return retrieveAndReproduceAggregate(aggregateId);
     } else {
       return createAndReproduceAggregate(aggregateId);
     }
   }
 
-  protected Optional<Aggregate> retrieveAggregateFromSnapshot(UUID aggregateId) {
-    Optional<Aggregate> optionalAggregate = eventStoreService.retrieveAggregateSnapshot(getAggregateType().getClazz(), aggregateId, null);
-    return optionalAggregate.map(aggregate -> {
-      List<Event> events = retrieveEvents(aggregateId, aggregate.getAggregateVersion());
-      aggregate.reproduceFromEvents(events);
-      return aggregate;
-    });
+  /**
+   * Reproduces all the given aggregates with two queries in total, one for their snapshots and one for their events, rather than two per
+   * aggregate.
+   */
+  protected Map<UUID, Aggregate> retrieveOrInstantiateAggregates(Collection<UUID> aggregateIds) {
+    final EventStoreConfigurationProperties.SnapshotProperties snapshotConfiguration = eventStoreConfigurationProperties.getSnapshot(getAggregateType().getType());
+    return eventStoreService.reproduceAggregates(getAggregateType().getClazz(), aggregateIds, snapshotConfiguration.enabled(), eventMapper::mapToEvent);
+  }
+
+  /**
+   * Restores the aggregate from its latest snapshot and the events after it, both read with a single query and applied as they arrive.
+   */
+  protected Aggregate retrieveAndReproduceAggregate(UUID aggregateId) {
+    return eventStoreService.reproduceAggregate(getAggregateType().getClazz(), aggregateId, eventMapper::mapToEvent);
   }
 
   protected Aggregate createAndReproduceAggregate(UUID aggregateId) {
     log.info("Snapshot not found for Aggregate ID: {}. Reconstituting from events.", aggregateId);
     Aggregate aggregate = aggregateFactory.newInstance(getAggregateType().getClazz(), aggregateId);
-    List<Event> events = retrieveEvents(aggregateId, null);
-    aggregate.reproduceFromEvents(events);
+    reproduceFromEvents(aggregate, null);
     return aggregate;
   }
 
+  protected void reproduceFromEvents(Aggregate aggregate, Long fromVersion) {
+    eventStoreService.reproduceAggregateFromEvents(aggregate, fromVersion, eventMapper::mapToEvent);
+  }
+
   protected List<Event> retrieveEvents(UUID aggregateId, Long fromVersion) {
     return eventMapper.mapToEventList(eventStoreService.retrieveEventsByAggregateId(aggregateId, fromVersion, null));
   }
@@ -5,16 +5,47 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
 @Getter
 public enum EventType {
 
-    ACCOUNT_CREATED_EVENT(AccountCreatedEvent.class, AccountCreatedEvent.class.getName()),
-    ACCOUNT_CREDITED_EVENT(AccountCreditedEvent.class,AccountCreditedEvent.class.getName()),
-    ACCOUNT_DEBITED_EVENT(AccountDebitedEvent.class, AccountDebitedEvent.class.getName());
+    // Codes are stored with every event: never change or reuse them, and keep them small as they index the lookup table.
+    ACCOUNT_CREATED_EVENT((short) 1, AccountCreatedEvent.class, AccountCreatedEvent.class.getName()),
+    ACCOUNT_CREDITED_EVENT((short) 2, AccountCreditedEvent.class, AccountCreditedEvent.class.getName()),
+    ACCOUNT_DEBITED_EVENT((short) 3, AccountDebitedEvent.class, AccountDebitedEvent.class.getName());
+
+    private static final EventType[] BY_CODE = new EventType[Arrays.stream(values()).mapToInt(EventType::getCode).max().orElse(0) + 1];
+    private static final Map<String, EventType> BY_NAME = new HashMap<>();
 
+    static {
+        for (EventType eventType : values()) {
+            if (BY_CODE[eventType.code] != null) {
+                throw new IllegalStateException("Duplicate event type code " + eventType.code);
+            }
+            BY_CODE[eventType.code] = eventType;
+            BY_NAME.put(eventType.type, eventType);
+        }
+    }
+
+    private final short code;
     private final Class<? extends Event> clazz;
     private final String type;
 
+    /**
+     * Resolves the type of a stored event by its code, falling back to its type name for events stored without a code.
+     *
+     * @return the event type, or null if it is unknown.
+     */
+    public static EventType of(Short code, String type) {
+        if (code != null) {
+            return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        }
+        return BY_NAME.get(type);
+    }
+
     //private final String value;
 }
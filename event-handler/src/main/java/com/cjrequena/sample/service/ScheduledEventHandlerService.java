@@ -1,67 +1,267 @@
 package com.cjrequena.sample.service;
 
 import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.SubscriptionProperties;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.SubscriptionType;
 import com.cjrequena.eventstore.sample.entity.EventEntity;
+import com.cjrequena.eventstore.sample.entity.EventSubscriptionEntity;
+import com.cjrequena.eventstore.sample.service.EventNotificationListener;
 import com.cjrequena.eventstore.sample.service.EventStoreService;
+import com.cjrequena.eventstore.sample.service.EventSubscriptionCoordinator;
 import com.cjrequena.sample.component.event.AsyncEventHandler;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.Nullable;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Runs the event handlers of the subscription on a single background thread, for the partitions of the subscription owned by this
+ * process, see {@link EventSubscriptionCoordinator}.
+ * <p>
+ * A run reads the new events in keyset pages and handles each page in its own transaction, which also moves the subscription offset, so
+ * the memory used stays bounded however far behind the subscription is. While a page is handled the next one is read on a second thread,
+ * and pages keep coming until the end of the committed stream is reached, without waiting for the next run. The page size adapts to the
+ * throughput of the handler.
+ * <p>
+ * A run is requested by the polling schedule and, with the {@code postgres-channel} subscription type, whenever events of the aggregate
+ * type of a handler are committed. Requests for a handler that arrive while one of its runs is already queued are folded into it, so a
+ * burst of appends costs a single extra run at most. Events are only read below the oldest transaction still in progress, so with
+ * {@code postgres-channel} a run that leaves committed events behind that horizon is requested again after a short delay: their
+ * notification has already been delivered, and nothing else may wake the handler before the next poll.
+ */
 @Service
-@Transactional
 @ConditionalOnProperty(name = "eventstore.subscription.enabled", havingValue = "true")
-@RequiredArgsConstructor(onConstructor = @__(@Autowired))
 @Log4j2
 public class ScheduledEventHandlerService {
 
   private final EventStoreService eventStoreService;
   private final List<AsyncEventHandler> eventHandlers;
   private final EventStoreConfigurationProperties eventStoreConfigurationProperties;
+  private final EventNotificationListener eventNotificationListener;
+  private final EventSubscriptionCoordinator eventSubscriptionCoordinator;
+  private final TransactionTemplate transactionTemplate;
+  private final Map<AsyncEventHandler, AtomicBoolean> queuedRuns = new IdentityHashMap<>();
+  private final Map<AsyncEventHandler, AdaptivePageSize> pageSizes = new IdentityHashMap<>();
+  private final ExecutorService executorService;
+  private final ExecutorService prefetchExecutorService;
+  private final ScheduledExecutorService retryExecutorService;
+
+  @Autowired
+  public ScheduledEventHandlerService(
+    EventStoreService eventStoreService,
+    List<AsyncEventHandler> eventHandlers,
+    EventStoreConfigurationProperties eventStoreConfigurationProperties,
+    EventNotificationListener eventNotificationListener,
+    EventSubscriptionCoordinator eventSubscriptionCoordinator,
+    @Qualifier("transactionManagerEventStore") PlatformTransactionManager transactionManager) {
+    this.eventStoreService = eventStoreService;
+    this.eventHandlers = eventHandlers;
+    this.eventStoreConfigurationProperties = eventStoreConfigurationProperties;
+    this.eventNotificationListener = eventNotificationListener;
+    this.eventSubscriptionCoordinator = eventSubscriptionCoordinator;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    eventHandlers.forEach(eventHandler -> {
+      this.queuedRuns.put(eventHandler, new AtomicBoolean());
+      this.pageSizes.put(eventHandler, new AdaptivePageSize(eventStoreConfigurationProperties.getSubscription()));
+    });
+    this.executorService = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("event-subscription").daemon(true).factory());
+    this.prefetchExecutorService = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("event-subscription-prefetch").daemon(true).factory());
+    this.retryExecutorService = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("event-subscription-retry").daemon(true).factory());
+  }
+
+  @PostConstruct
+  public void start() {
+    // Partitions taken over from another process may have a backlog.
+    this.eventSubscriptionCoordinator.onPartitionsAcquired(this::handler);
+    this.eventSubscriptionCoordinator.join(this.eventHandlers.stream().map(eventHandler -> eventHandler.getAggregateType().getType()).toList());
+    if (this.eventStoreConfigurationProperties.getSubscription().type() == SubscriptionType.POSTGRES_CHANNEL) {
+      this.eventHandlers.forEach(eventHandler ->
+        this.eventNotificationListener.listen(eventHandler.getAggregateType().getType(), () -> requestRun(eventHandler)));
+    }
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    this.executorService.shutdown();
+    this.executorService.awaitTermination(5, TimeUnit.SECONDS);
+    this.prefetchExecutorService.shutdownNow();
+    this.retryExecutorService.shutdownNow();
+  }
 
   @Scheduled(
     fixedDelayString = "${eventstore.subscription.polling-interval}",
     initialDelayString = "${eventstore.subscription.polling-initial-delay}"
   )
   public void handler() {
-    eventHandlers.forEach(this::handler);
+    eventHandlers.forEach(this::requestRun);
+  }
+
+  /**
+   * Queues a run of the given handler, unless one is already queued.
+   */
+  public void requestRun(AsyncEventHandler eventHandler) {
+    AtomicBoolean queuedRun = this.queuedRuns.get(eventHandler);
+    if (queuedRun.compareAndSet(false, true)) {
+      this.executorService.execute(() -> {
+        // Cleared before the run, so events committed while it is in progress request another one.
+        queuedRun.set(false);
+        try {
+          if (handler(eventHandler)) {
+            this.retryExecutorService.schedule(() -> requestRun(eventHandler),
+              this.eventStoreConfigurationProperties.getSubscription().horizonRetryDelay().toNanos(), TimeUnit.NANOSECONDS);
+          }
+        } catch (RuntimeException ex) {
+          log.error("Subscription handler for {} failed", eventHandler.getAggregateType(), ex);
+        }
+      });
+    }
+  }
+
+  /**
+   * Hands the new events of the partitions of the subscription owned by this process to the given handler, one page per transaction,
+   * until each partition has caught up. The next page is read on another thread while the current one is being handled.
+   *
+   * @return true if, with the {@code postgres-channel} subscription type, committed events were left behind an older transaction still in
+   *         progress.
+   */
+  public boolean handler(AsyncEventHandler eventHandler) {
+    boolean heldBack = false;
+    for (int partitionNumber : this.eventSubscriptionCoordinator.getOwnedPartitions()) {
+      handler(eventHandler, partitionNumber);
+      heldBack |= isHeldBack(eventHandler, partitionNumber);
+    }
+    return heldBack;
+  }
+
+  private boolean isHeldBack(AsyncEventHandler eventHandler, int partitionNumber) {
+    return this.eventStoreConfigurationProperties.getSubscription().type() == SubscriptionType.POSTGRES_CHANNEL
+      && this.eventStoreService.hasEventsBeyondSubscriptionHorizon(eventHandler.getAggregateType().getType(), partitionNumber,
+      this.eventSubscriptionCoordinator.getPartitionCount());
+  }
+
+  private void handler(AsyncEventHandler eventHandler, int partitionNumber) {
+    AdaptivePageSize pageSize = this.pageSizes.get(eventHandler);
+    CompletableFuture<EventPage> prefetchedPage = null;
+    PageResult pageResult;
+    do {
+      CompletableFuture<EventPage> currentPrefetchedPage = prefetchedPage;
+      pageResult = this.transactionTemplate.execute(status -> handlePage(eventHandler, partitionNumber, currentPrefetchedPage, pageSize.get()));
+      prefetchedPage = pageResult.prefetchedPage();
+      if (pageResult.handledEvents() > 0) {
+        pageSize.record(pageResult.handledEvents(), pageResult.handleNanos());
+      }
+    } while (pageResult.fullPage());
   }
 
-  @Async
-  public void handler(AsyncEventHandler eventHandler) {
+  private PageResult handlePage(AsyncEventHandler eventHandler, int partitionNumber, @Nullable CompletableFuture<EventPage> prefetchedPage,
+    int limit) {
     final EventStoreConfigurationProperties.SubscriptionProperties subscriptionProperties;
     subscriptionProperties = this.eventStoreConfigurationProperties.getSubscription();
 
     String subscriptionName = subscriptionProperties.name();
-    log.debug("Handling new events for subscription {}", subscriptionName);
+    String aggregateType = eventHandler.getAggregateType().getType();
+    log.debug("Handling new events for subscription {} partition {}", subscriptionName, partitionNumber);
 
-    this.eventStoreService.registerNewSubscriptionIfAbsent(subscriptionName);
+    Optional<EventSubscriptionEntity> lockedEventSubscription = this.eventStoreService.retrieveEventSubscriptionAndLockSubscriptionOffset(subscriptionName,
+      partitionNumber, this.eventSubscriptionCoordinator.getMemberId());
+    if (lockedEventSubscription.isEmpty()) {
+      // Locked by another transaction, or the lease was lost since the latest heartbeat.
+      log.info("Can't acquire lock on subscription {} partition {}", subscriptionName, partitionNumber);
+      return PageResult.STOP;
+    }
+    EventSubscriptionEntity eventSubscription = lockedEventSubscription.get();
+    log.debug("Acquired lock on subscription {}, eventSubscription = {}", subscriptionName, eventSubscription);
 
-    this.eventStoreService.retrieveEventSubscriptionAndLockSubscriptionOffset(subscriptionName).ifPresentOrElse(
-      eventSubscription -> {
-        log.debug("Acquired lock on subscription {}, eventSubscription = {}", subscriptionName, eventSubscription);
+    EventPage page = prefetchedPage != null ? prefetchedPage.exceptionally(ex -> null).join() : null;
+    if (page == null || !page.startsAt(eventSubscription.getOffsetTxId(), eventSubscription.getOffsetId())) {
+      // Nothing prefetched, the prefetch failed, or the offset moved since, e.g. another instance handled the page.
+      page = fetchPage(aggregateType, partitionNumber, eventSubscription.getOffsetTxId(), eventSubscription.getOffsetId(), limit);
+    }
+    List<EventEntity> events = page.events();
+    if (events.isEmpty()) {
+      return PageResult.STOP;
+    }
 
-        List<EventEntity> events = eventStoreService.retrieveEventsByAggregateTypeAfterOffsetTxIdAndOffsetId(
-          eventHandler.getAggregateType().getType(),
-          eventSubscription.getOffsetTxId(),
-          eventSubscription.getOffsetId()
-        );
+    log.debug("Fetched {} new event(s) for subscription {}", events.size(), subscriptionName);
+    EventEntity lastEvent = events.getLast();
+    boolean fullPage = events.size() >= page.limit();
+    CompletableFuture<EventPage> nextPage = fullPage
+      ? CompletableFuture.supplyAsync(() -> fetchPage(aggregateType, partitionNumber, lastEvent.getOffsetTxId(), lastEvent.getOffsetId(), limit),
+        this.prefetchExecutorService)
+      : null;
 
-        if (!events.isEmpty()) {
-          log.debug("Fetched {} new event(s) for subscription {}", events.size(), subscriptionName);
-          eventHandler.handle(events);
-          EventEntity lastEvent = events.getLast();
-          this.eventStoreService.updateEventSubscription(subscriptionName, lastEvent.getOffsetTxId(), lastEvent.getOffsetId());
-        }
-      },
-      () -> log.info("Can't acquire lock on subscription {}", subscriptionName)
-    );
+    long startTime = System.nanoTime();
+    eventHandler.handle(events);
+    long handleNanos = System.nanoTime() - startTime;
+    this.eventStoreService.updateEventSubscription(subscriptionName, partitionNumber, lastEvent.getOffsetTxId(), lastEvent.getOffsetId());
+    return new PageResult(events.size(), handleNanos, fullPage, nextPage);
+  }
+
+  private EventPage fetchPage(String aggregateType, int partitionNumber, Long offsetTxId, Long offsetId, int limit) {
+    return new EventPage(offsetTxId, offsetId, limit, this.eventStoreService.retrieveEventsByAggregateTypeAfterOffsetTxIdAndOffsetId(aggregateType, offsetTxId,
+      offsetId, partitionNumber, this.eventSubscriptionCoordinator.getPartitionCount(), limit));
+  }
+
+  private record EventPage(Long offsetTxId, Long offsetId, int limit, List<EventEntity> events) {
+
+    private boolean startsAt(Long offsetTxId, Long offsetId) {
+      return Objects.equals(this.offsetTxId, offsetTxId) && Objects.equals(this.offsetId, offsetId);
+    }
+  }
+
+  private record PageResult(int handledEvents, long handleNanos, boolean fullPage, @Nullable CompletableFuture<EventPage> prefetchedPage) {
+
+    private static final PageResult STOP = new PageResult(0, 0, false, null);
+  }
+
+  /**
+   * Sizes the pages so that handling one takes about the target duration, from a moving average of the time spent per event.
+   */
+  private static final class AdaptivePageSize {
+
+    private static final double SMOOTHING = 0.3;
+
+    private final int minPageSize;
+    private final int maxPageSize;
+    private final long targetPageNanos;
+    private double nanosPerEvent;
+    private int pageSize;
+
+    private AdaptivePageSize(SubscriptionProperties subscriptionProperties) {
+      this.minPageSize = subscriptionProperties.minPageSize();
+      this.maxPageSize = Math.max(subscriptionProperties.minPageSize(), subscriptionProperties.maxPageSize());
+      this.targetPageNanos = subscriptionProperties.targetPageDuration().toNanos();
+      this.pageSize = this.minPageSize;
+    }
+
+    private int get() {
+      return this.pageSize;
+    }
+
+    private void record(int handledEvents, long handleNanos) {
+      double sample = Math.max(1.0, (double) handleNanos / handledEvents);
+      this.nanosPerEvent = this.nanosPerEvent == 0 ? sample : SMOOTHING * sample + (1 - SMOOTHING) * this.nanosPerEvent;
+      long pageSize = (long) (this.targetPageNanos / this.nanosPerEvent);
+      this.pageSize = (int) Math.clamp(pageSize, this.minPageSize, this.maxPageSize);
+    }
   }
 }
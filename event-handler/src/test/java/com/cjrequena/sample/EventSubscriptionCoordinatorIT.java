@@ -0,0 +1,392 @@
+package com.cjrequena.sample;
+
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.SubscriptionProperties;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.SubscriptionType;
+import com.cjrequena.eventstore.sample.domain.aggregate.Aggregate;
+import com.cjrequena.eventstore.sample.entity.EventEntity;
+import com.cjrequena.eventstore.sample.entity.EventSubscriptionEntity;
+import com.cjrequena.eventstore.sample.repository.EventSubscriptionRepository;
+import com.cjrequena.eventstore.sample.service.AggregateFactory;
+import com.cjrequena.eventstore.sample.service.EventStoreService;
+import com.cjrequena.eventstore.sample.service.EventSubscriptionCoordinator;
+import com.cjrequena.sample.domain.aggregate.AggregateType;
+import com.cjrequena.sample.domain.event.AccountCreatedEvent;
+import com.cjrequena.sample.domain.event.AccountCreditedEvent;
+import com.cjrequena.sample.mapper.EventMapper;
+import com.cjrequena.sample.vo.AccountVO;
+import com.cjrequena.sample.vo.CreditVO;
+import com.cjrequena.sample.vo.EventExtensionVO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs two members of a partitioned subscription against the event store database, calling their heartbeats by hand so that every
+ * rebalance happens at a known point. The subscription of the application itself is disabled so that only these members consume.
+ */
+@SpringBootTest(properties = "eventstore.subscription.enabled=false")
+class EventSubscriptionCoordinatorIT {
+
+  private static final String AGGREGATE_TYPE = AggregateType.ACCOUNT_AGGREGATE.getType();
+  private static final int PARTITIONS = 4;
+  private static final Duration LEASE_DURATION = Duration.ofSeconds(2);
+  private static final int PAGE_SIZE = 1000;
+
+  @Autowired
+  private EventStoreService eventStoreService;
+  @Autowired
+  private EventSubscriptionRepository eventSubscriptionRepository;
+  @Autowired
+  private AggregateFactory aggregateFactory;
+  @Autowired
+  private EventMapper eventMapper;
+  @Autowired
+  @Qualifier("jdbcTemplateEventStore")
+  private JdbcTemplate jdbcTemplate;
+  @Autowired
+  @Qualifier("transactionManagerEventStore")
+  private PlatformTransactionManager transactionManager;
+
+  private final List<EventSubscriptionCoordinator> members = new ArrayList<>();
+
+  @AfterEach
+  void leaveSubscription() {
+    this.members.forEach(EventSubscriptionCoordinator::leave);
+  }
+
+  @Test
+  void registersThePartitionsOnceFromTheBeginningOfTheStream() {
+    String subscriptionName = newSubscriptionName();
+
+    assertTrue(this.eventSubscriptionRepository.registerSubscriptionPartitions(subscriptionName, 3, List.of(AGGREGATE_TYPE)));
+    assertFalse(this.eventSubscriptionRepository.registerSubscriptionPartitions(subscriptionName, 3, List.of(AGGREGATE_TYPE)));
+
+    List<Map<String, Object>> partitions = retrievePartitions(subscriptionName);
+    assertEquals(List.of(0, 1, 2), partitions.stream().map(partition -> partition.get("partition_number")).toList());
+    partitions.forEach(partition -> {
+      assertEquals(3, partition.get("partition_count"));
+      assertEquals(0L, partition.get("offset_id"));
+      assertEquals("0", partition.get("offset_txid"));
+      assertEquals("{" + AGGREGATE_TYPE + "}", partition.get("aggregate_types"));
+    });
+  }
+
+  @Test
+  void resetsEveryPartitionToTheSlowestOneWhenTheirNumberChanges() {
+    String subscriptionName = newSubscriptionName();
+    this.eventSubscriptionRepository.registerSubscriptionPartitions(subscriptionName, 3, null);
+    this.eventSubscriptionRepository.updateEventSubscription(subscriptionName, 0, 50L, 500L);
+    this.eventSubscriptionRepository.updateEventSubscription(subscriptionName, 1, 30L, 300L);
+    this.eventSubscriptionRepository.updateEventSubscription(subscriptionName, 2, 70L, 700L);
+    this.eventSubscriptionRepository.acquireSubscriptionPartitions(subscriptionName, "member", List.of(0, 1, 2), LEASE_DURATION);
+
+    assertTrue(this.eventSubscriptionRepository.registerSubscriptionPartitions(subscriptionName, 2, null));
+
+    List<Map<String, Object>> partitions = retrievePartitions(subscriptionName);
+    assertEquals(List.of(0, 1), partitions.stream().map(partition -> partition.get("partition_number")).toList());
+    partitions.forEach(partition -> {
+      assertEquals(2, partition.get("partition_count"));
+      assertEquals("30", partition.get("offset_txid"));
+      assertEquals(300L, partition.get("offset_id"));
+      assertNull(partition.get("owner"), "A reset partition keeps no lease");
+      assertNull(partition.get("aggregate_types"));
+    });
+  }
+
+  @Test
+  void skipsNoEventWhenThePartitionsAreAdded() {
+    assertNoEventIsSkippedWhenThePartitionCountChanges(2, 4);
+  }
+
+  @Test
+  void skipsNoEventWhenThePartitionsAreRemoved() {
+    assertNoEventIsSkippedWhenThePartitionCountChanges(4, 2);
+  }
+
+  @Test
+  void splitsThePartitionsBetweenTheMembersAndTakesThemBackWhenOneLeaves() {
+    String subscriptionName = newSubscriptionName();
+    EventSubscriptionCoordinator first = newMember(subscriptionName);
+    EventSubscriptionCoordinator second = newMember(subscriptionName);
+
+    first.heartbeat();
+    assertEquals(allPartitions(), first.getOwnedPartitions());
+
+    // The second member is assigned partitions still leased to the first one, it only gets them once the first one gives them up.
+    second.heartbeat();
+    assertExactlyOneOwner(subscriptionName, first, second);
+    first.heartbeat();
+    second.heartbeat();
+    assertExactlyOneOwner(subscriptionName, first, second);
+    assertFalse(first.getOwnedPartitions().isEmpty());
+    assertFalse(second.getOwnedPartitions().isEmpty());
+    assertEquals(allPartitions(), union(first.getOwnedPartitions(), second.getOwnedPartitions()));
+
+    second.leave();
+    first.heartbeat();
+    assertEquals(allPartitions(), first.getOwnedPartitions());
+    assertTrue(second.getOwnedPartitions().isEmpty());
+    assertExactlyOneOwner(subscriptionName, first, second);
+  }
+
+  @Test
+  void takesOverThePartitionsOfAMemberThatStoppedSendingHeartbeats() throws InterruptedException {
+    String subscriptionName = newSubscriptionName();
+    EventSubscriptionCoordinator first = newMember(subscriptionName);
+    EventSubscriptionCoordinator second = newMember(subscriptionName);
+    first.heartbeat();
+    second.heartbeat();
+    first.heartbeat();
+    second.heartbeat();
+    Set<Integer> abandonedPartitions = second.getOwnedPartitions();
+    assertFalse(abandonedPartitions.isEmpty());
+
+    // The second member neither renews its leases nor leaves.
+    first.heartbeat();
+    assertTrue(Collections.disjoint(first.getOwnedPartitions(), abandonedPartitions), "A partition was taken before its lease expired");
+    Thread.sleep(LEASE_DURATION.plusMillis(500).toMillis());
+    first.heartbeat();
+
+    assertEquals(allPartitions(), first.getOwnedPartitions());
+    Map<Integer, String> owners = retrieveLiveOwners(subscriptionName);
+    assertEquals(allPartitions(), owners.keySet());
+    owners.values().forEach(owner -> assertEquals(first.getMemberId(), owner));
+  }
+
+  @Test
+  void deliversEveryEventOnceAndInOrderWhileMembersJoinAndLeave() {
+    String subscriptionName = newSubscriptionName();
+    EventSubscriptionCoordinator first = newMember(subscriptionName);
+    EventSubscriptionCoordinator second = newMember(subscriptionName);
+    Map<UUID, List<Long>> consumedVersions = new HashMap<>();
+
+    List<UUID> aggregateIds = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      Aggregate account = newAccount();
+      this.eventStoreService.saveAggregate(account);
+      aggregateIds.add(account.getAggregateId());
+    }
+
+    // Alone, the first member consumes every partition.
+    first.heartbeat();
+    consume(subscriptionName, first, consumedVersions);
+    aggregateIds.forEach(this::credit);
+
+    // The second member joins halfway through the stream and the partitions are split.
+    second.heartbeat();
+    consume(subscriptionName, first, consumedVersions);
+    first.heartbeat();
+    second.heartbeat();
+    assertExactlyOneOwner(subscriptionName, first, second);
+    aggregateIds.forEach(this::credit);
+    consume(subscriptionName, second, consumedVersions);
+    consume(subscriptionName, first, consumedVersions);
+    aggregateIds.forEach(this::credit);
+
+    // The first member leaves with events still pending on its partitions.
+    first.leave();
+    second.heartbeat();
+    assertEquals(allPartitions(), second.getOwnedPartitions());
+    assertExactlyOneOwner(subscriptionName, first, second);
+    aggregateIds.forEach(this::credit);
+    consume(subscriptionName, second, consumedVersions);
+
+    for (UUID aggregateId : aggregateIds) {
+      long version = this.eventStoreService.retrieveAggregateVersion(aggregateId).orElseThrow();
+      assertEquals(LongStream.rangeClosed(1, version).boxed().toList(), consumedVersions.get(aggregateId),
+        () -> "Events of aggregate " + aggregateId + " were lost, duplicated or reordered");
+    }
+  }
+
+  /**
+   * Leaves one partition behind the others, changes the number of partitions and checks that every partition, kept or added, restarts
+   * from the offset of the slowest one. Events may then be delivered again, but none is skipped.
+   */
+  private void assertNoEventIsSkippedWhenThePartitionCountChanges(int fromPartitionCount, int toPartitionCount) {
+    String subscriptionName = newSubscriptionName();
+    EventSubscriptionCoordinator before = newMember(subscriptionName, fromPartitionCount);
+    Map<UUID, List<Long>> consumedVersions = new HashMap<>();
+
+    List<UUID> aggregateIds = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      Aggregate account = newAccount();
+      this.eventStoreService.saveAggregate(account);
+      aggregateIds.add(account.getAggregateId());
+    }
+    before.heartbeat();
+    consume(subscriptionName, before, consumedVersions);
+
+    // Only the first partition consumes the credits, the other ones stay behind.
+    aggregateIds.forEach(this::credit);
+    consume(subscriptionName, before, consumedVersions, Set.of(0));
+    Map<String, Object> slowestPartition = retrievePartitions(subscriptionName).stream()
+      .min(Comparator.comparing((Map<String, Object> partition) -> Long.parseLong((String) partition.get("offset_txid")))
+        .thenComparing(partition -> (Long) partition.get("offset_id")))
+      .orElseThrow();
+    before.leave();
+
+    EventSubscriptionCoordinator after = newMember(subscriptionName, toPartitionCount);
+    List<Map<String, Object>> partitions = retrievePartitions(subscriptionName);
+    assertEquals(toPartitionCount, partitions.size());
+    partitions.forEach(partition -> {
+      assertEquals(toPartitionCount, partition.get("partition_count"));
+      assertEquals(slowestPartition.get("offset_txid"), partition.get("offset_txid"),
+        () -> "Partition " + partition.get("partition_number") + " does not restart from the slowest offset");
+      assertEquals(slowestPartition.get("offset_id"), partition.get("offset_id"),
+        () -> "Partition " + partition.get("partition_number") + " does not restart from the slowest offset");
+    });
+
+    after.heartbeat();
+    assertEquals(allPartitions(toPartitionCount), after.getOwnedPartitions());
+    consume(subscriptionName, after, consumedVersions);
+
+    for (UUID aggregateId : aggregateIds) {
+      long version = this.eventStoreService.retrieveAggregateVersion(aggregateId).orElseThrow();
+      assertEquals(LongStream.rangeClosed(1, version).boxed().toList(), new TreeSet<>(consumedVersions.get(aggregateId)).stream().toList(),
+        () -> "Events of aggregate " + aggregateId + " were skipped");
+    }
+  }
+
+  private void consume(String subscriptionName, EventSubscriptionCoordinator member, Map<UUID, List<Long>> consumedVersions) {
+    consume(subscriptionName, member, consumedVersions, member.getOwnedPartitions());
+  }
+
+  /**
+   * Consumes the owned partitions of the member until they have caught up, one page per transaction like the event handler does.
+   */
+  private void consume(String subscriptionName, EventSubscriptionCoordinator member, Map<UUID, List<Long>> consumedVersions,
+    Set<Integer> partitionNumbers) {
+    TransactionTemplate transactionTemplate = new TransactionTemplate(this.transactionManager);
+    for (int partitionNumber : partitionNumbers) {
+      boolean fullPage;
+      do {
+        fullPage = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+          Optional<EventSubscriptionEntity> eventSubscription = this.eventStoreService.retrieveEventSubscriptionAndLockSubscriptionOffset(
+            subscriptionName, partitionNumber, member.getMemberId());
+          assertTrue(eventSubscription.isPresent(), () -> "Partition " + partitionNumber + " is not leased to " + member.getMemberId());
+          List<EventEntity> events = this.eventStoreService.retrieveEventsByAggregateTypeAfterOffsetTxIdAndOffsetId(AGGREGATE_TYPE,
+            eventSubscription.get().getOffsetTxId(), eventSubscription.get().getOffsetId(), partitionNumber, member.getPartitionCount(), PAGE_SIZE);
+          if (events.isEmpty()) {
+            return false;
+          }
+          events.forEach(event -> consumedVersions.computeIfAbsent(event.getAggregateId(), aggregateId -> new ArrayList<>())
+            .add(event.getAggregateVersion()));
+          EventEntity lastEvent = events.getLast();
+          this.eventStoreService.updateEventSubscription(subscriptionName, partitionNumber, lastEvent.getOffsetTxId(), lastEvent.getOffsetId());
+          return events.size() == PAGE_SIZE;
+        }));
+      } while (fullPage);
+    }
+  }
+
+  private void assertExactlyOneOwner(String subscriptionName, EventSubscriptionCoordinator... members) {
+    Map<Integer, String> owners = retrieveLiveOwners(subscriptionName);
+    Set<Integer> ownedPartitions = new HashSet<>();
+    for (EventSubscriptionCoordinator member : members) {
+      for (int partition : member.getOwnedPartitions()) {
+        assertTrue(ownedPartitions.add(partition), () -> "Partition " + partition + " is owned by two members");
+        assertEquals(member.getMemberId(), owners.get(partition), () -> "Partition " + partition + " is leased to another member");
+      }
+    }
+  }
+
+  private Map<Integer, String> retrieveLiveOwners(String subscriptionName) {
+    Map<Integer, String> owners = new HashMap<>();
+    this.jdbcTemplate.query("""
+        SELECT partition_number, owner
+          FROM es_event_subscription
+         WHERE subscription_name = ?
+           AND owner IS NOT NULL
+           AND lease_expires_at > NOW()
+        """,
+      (RowCallbackHandler) resultSet -> owners.put(resultSet.getInt("partition_number"), resultSet.getString("owner")), subscriptionName);
+    return owners;
+  }
+
+  private List<Map<String, Object>> retrievePartitions(String subscriptionName) {
+    return this.jdbcTemplate.queryForList("""
+      SELECT partition_number, partition_count, offset_txid::text AS offset_txid, offset_id, owner, aggregate_types::text AS aggregate_types
+        FROM es_event_subscription
+       WHERE subscription_name = ?
+       ORDER BY partition_number
+      """, subscriptionName);
+  }
+
+  private EventSubscriptionCoordinator newMember(String subscriptionName) {
+    return newMember(subscriptionName, PARTITIONS);
+  }
+
+  private EventSubscriptionCoordinator newMember(String subscriptionName, int partitionCount) {
+    EventStoreConfigurationProperties eventStoreConfigurationProperties = new EventStoreConfigurationProperties();
+    eventStoreConfigurationProperties.setSubscription(new SubscriptionProperties(true, subscriptionName, SubscriptionType.POLLING, "PT1H", "PT1H",
+      100, 5000, Duration.ofMillis(500), Duration.ofMillis(50), partitionCount, LEASE_DURATION, "PT1H"));
+    EventSubscriptionCoordinator member = new EventSubscriptionCoordinator(this.eventStoreService, eventStoreConfigurationProperties);
+    member.join(List.of(AGGREGATE_TYPE));
+    this.members.add(member);
+    return member;
+  }
+
+  private static String newSubscriptionName() {
+    return "coordinator-it-" + UUID.randomUUID();
+  }
+
+  private static Set<Integer> allPartitions() {
+    return allPartitions(PARTITIONS);
+  }
+
+  private static Set<Integer> allPartitions(int partitionCount) {
+    Set<Integer> partitions = new TreeSet<>();
+    for (int partition = 0; partition < partitionCount; partition++) {
+      partitions.add(partition);
+    }
+    return partitions;
+  }
+
+  private static Set<Integer> union(Set<Integer> first, Set<Integer> second) {
+    Set<Integer> union = new TreeSet<>(first);
+    union.addAll(second);
+    return union;
+  }
+
+  private Aggregate newAccount() {
+    UUID aggregateId = UUID.randomUUID();
+    Aggregate aggregate = this.aggregateFactory.newInstance(AggregateType.ACCOUNT_AGGREGATE.getClazz(), aggregateId);
+    aggregate.applyUnconfirmedEvent(AccountCreatedEvent.builder()
+      .aggregateId(aggregateId)
+      .aggregateVersion(1)
+      .data(AccountVO.builder().id(aggregateId).owner("Subscription").balance(BigDecimal.valueOf(100)).build())
+      .extension(newEventExtension())
+      .build());
+    return aggregate;
+  }
+
+  private void credit(UUID aggregateId) {
+    Aggregate aggregate = this.eventStoreService.reproduceAggregate(AggregateType.ACCOUNT_AGGREGATE.getClazz(), aggregateId,
+      this.eventMapper::mapToEvent);
+    aggregate.applyUnconfirmedEvent(AccountCreditedEvent.builder()
+      .aggregateId(aggregateId)
+      .aggregateVersion(aggregate.getAggregateVersion() + 1)
+      .data(CreditVO.builder().accountId(aggregateId).amount(BigDecimal.TEN).build())
+      .extension(newEventExtension())
+      .build());
+    this.eventStoreService.saveAggregate(aggregate);
+  }
+
+  private static EventExtensionVO newEventExtension() {
+    return EventExtensionVO.builder().traceId(UUID.randomUUID().toString()).build();
+  }
+}
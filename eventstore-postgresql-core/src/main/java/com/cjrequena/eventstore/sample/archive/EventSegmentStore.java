@@ -0,0 +1,386 @@
+package com.cjrequena.eventstore.sample.archive;
+
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.ArchiveProperties;
+import com.cjrequena.eventstore.sample.entity.EventEntity;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Cold storage for archived events: immutable, compressed segment files on local disk, read through memory mapping.
+ * <p>
+ * The archive is local to the processes that see its directory. Once the archiver has deleted events from ES_EVENT, a process loading
+ * aggregates without that directory cannot replay their history and fails with a missing events error.
+ * <p>
+ * A segment holds one block per aggregate, each block being the Deflate-compressed events of a contiguous version range, followed by an
+ * index of the blocks and a fixed-size footer:
+ * <pre>
+ *   [block]* [index entry]* [index offset: long][index entry count: int][magic: int]
+ *   index entry = aggregate id (2 longs), from version, to version (longs), block offset, compressed length, uncompressed length (ints)
+ * </pre>
+ * The block indexes of every segment are kept in memory, keyed by aggregate ID, so finding the archived history of an aggregate does
+ * not touch the disk. Segments are written to a temporary file, forced to disk and atomically renamed, so a reader never sees a partial
+ * segment.
+ */
+@Component
+@Log4j2
+public class EventSegmentStore {
+
+  private static final int MAGIC = 0x45534547;
+  private static final int FOOTER_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES;
+  private static final String SEGMENT_SUFFIX = ".seg";
+  private static final long MIN_REFRESH_INTERVAL_NANOS = 1_000_000_000L;
+
+  private final ArchiveProperties archiveProperties;
+  private final ConcurrentMap<UUID, List<SegmentBlock>> blocksByAggregateId = new ConcurrentHashMap<>();
+  private final Set<String> loadedSegments = ConcurrentHashMap.newKeySet();
+  private volatile long lastRefreshNanos;
+
+  @Autowired
+  public EventSegmentStore(EventStoreConfigurationProperties eventStoreConfigurationProperties) {
+    this.archiveProperties = eventStoreConfigurationProperties.getArchive();
+  }
+
+  @PostConstruct
+  public void start() throws IOException {
+    if (!isEnabled()) {
+      return;
+    }
+    Files.createDirectories(directory());
+    refresh();
+  }
+
+  public boolean isEnabled() {
+    return this.archiveProperties.enabled();
+  }
+
+  /**
+   * Loads the segments written since the last refresh, possibly by another process sharing the directory.
+   */
+  public synchronized void refresh() throws IOException {
+    this.lastRefreshNanos = System.nanoTime();
+    try (Stream<Path> paths = Files.list(directory())) {
+      List<Path> segments = paths
+        .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+        .filter(path -> !this.loadedSegments.contains(path.getFileName().toString()))
+        .sorted()
+        .toList();
+      for (Path segment : segments) {
+        loadSegment(segment);
+      }
+    }
+  }
+
+  /**
+   * Writes the given events into a new segment and indexes it.
+   *
+   * @param eventsByAggregateId the events to archive, each list ordered by version and without gaps.
+   */
+  public synchronized void write(Map<UUID, List<EventEntity>> eventsByAggregateId) throws IOException {
+    String segmentName = "segment-%020d%s".formatted(System.currentTimeMillis(), SEGMENT_SUFFIX);
+    Path temporary = directory().resolve(segmentName + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      ByteArrayOutputStream index = new ByteArrayOutputStream();
+      DataOutputStream indexOutput = new DataOutputStream(index);
+      int entries = 0;
+      for (Map.Entry<UUID, List<EventEntity>> entry : eventsByAggregateId.entrySet()) {
+        List<EventEntity> events = entry.getValue();
+        if (events.isEmpty()) {
+          continue;
+        }
+        byte[] block = encode(events);
+        byte[] compressedBlock = compress(block);
+        long blockOffset = channel.position();
+        writeFully(channel, ByteBuffer.wrap(compressedBlock));
+        indexOutput.writeLong(entry.getKey().getMostSignificantBits());
+        indexOutput.writeLong(entry.getKey().getLeastSignificantBits());
+        indexOutput.writeLong(events.get(0).getAggregateVersion());
+        indexOutput.writeLong(events.get(events.size() - 1).getAggregateVersion());
+        indexOutput.writeInt(Math.toIntExact(blockOffset));
+        indexOutput.writeInt(compressedBlock.length);
+        indexOutput.writeInt(block.length);
+        entries++;
+      }
+      long indexOffset = channel.position();
+      writeFully(channel, ByteBuffer.wrap(index.toByteArray()));
+      writeFully(channel, ByteBuffer.allocate(FOOTER_SIZE).putLong(indexOffset).putInt(entries).putInt(MAGIC).flip());
+      channel.force(true);
+    }
+    Path segment = directory().resolve(segmentName);
+    Files.move(temporary, segment, StandardCopyOption.ATOMIC_MOVE);
+    loadSegment(segment);
+  }
+
+  /**
+   * Reads the archived events of an aggregate within the given version range.
+   *
+   * @param aggregateId the aggregate.
+   * @param fromAggregateVersion exclusive lower bound, or null.
+   * @param toAggregateVersion inclusive upper bound, or null.
+   * @return the archived events, ordered by version, each version once.
+   */
+  public List<EventEntity> read(UUID aggregateId, Long fromAggregateVersion, Long toAggregateVersion) {
+    List<SegmentBlock> blocks = this.blocksByAggregateId.get(aggregateId);
+    if (blocks == null) {
+      return List.of();
+    }
+    // A version may be in several segments if the archiver stopped between writing a segment and deleting the rows.
+    TreeMap<Long, EventEntity> eventsByVersion = new TreeMap<>();
+    for (SegmentBlock block : blocks) {
+      if ((fromAggregateVersion != null && block.toVersion() <= fromAggregateVersion)
+        || (toAggregateVersion != null && block.fromVersion() > toAggregateVersion)) {
+        continue;
+      }
+      for (EventEntity event : decode(block)) {
+        long version = event.getAggregateVersion();
+        if ((fromAggregateVersion == null || version > fromAggregateVersion) && (toAggregateVersion == null || version <= toAggregateVersion)) {
+          eventsByVersion.putIfAbsent(version, event);
+        }
+      }
+    }
+    return new ArrayList<>(eventsByVersion.values());
+  }
+
+  /**
+   * Reads the archived events that fill a gap in the history of an aggregate. When the in-memory index does not hold all of them, another
+   * process may have archived them since the last refresh, so the segments written since then are loaded and the read is retried.
+   *
+   * @param aggregateId the aggregate.
+   * @param fromAggregateVersion exclusive lower bound.
+   * @param toAggregateVersion inclusive upper bound, or null when the end of the history is unknown.
+   * @return the archived events, ordered by version. They may still not cover the whole range.
+   */
+  public List<EventEntity> readGap(UUID aggregateId, long fromAggregateVersion, Long toAggregateVersion) {
+    List<EventEntity> events = read(aggregateId, fromAggregateVersion, toAggregateVersion);
+    if (toAggregateVersion == null) {
+      // An empty tail is the common case, so the refresh is rate limited.
+      return events.isEmpty() && refreshIfStale() ? read(aggregateId, fromAggregateVersion, null) : events;
+    }
+    if (events.size() < toAggregateVersion - fromAggregateVersion) {
+      try {
+        refresh();
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+      events = read(aggregateId, fromAggregateVersion, toAggregateVersion);
+    }
+    return events;
+  }
+
+  /**
+   * Merges the events read from ES_EVENT with the archived ones for the same range. ES_EVENT must be read before calling this method:
+   * the archiver indexes a segment before deleting its events, so anything missing from that read is already visible here.
+   */
+  public List<EventEntity> readThrough(UUID aggregateId, Long fromAggregateVersion, Long toAggregateVersion, List<EventEntity> hotEvents) {
+    long expectedFirstVersion = fromAggregateVersion != null ? fromAggregateVersion + 1 : 1;
+    if (!hotEvents.isEmpty() && hotEvents.get(0).getAggregateVersion() == expectedFirstVersion) {
+      // Nothing in the range has been archived.
+      return hotEvents;
+    }
+    List<EventEntity> events = merge(read(aggregateId, fromAggregateVersion, toAggregateVersion), hotEvents);
+    if (!hotEvents.isEmpty() && events.get(0).getAggregateVersion() != expectedFirstVersion && refreshIfStale()) {
+      // Another process may have archived the missing history since the last refresh.
+      events = merge(read(aggregateId, fromAggregateVersion, toAggregateVersion), hotEvents);
+    }
+    return events;
+  }
+
+  private static List<EventEntity> merge(List<EventEntity> archivedEvents, List<EventEntity> hotEvents) {
+    if (archivedEvents.isEmpty()) {
+      return hotEvents;
+    }
+    // An event may be in both places if the archiver stopped between writing the segment and deleting the rows.
+    TreeMap<Long, EventEntity> eventsByVersion = new TreeMap<>();
+    archivedEvents.forEach(event -> eventsByVersion.put(event.getAggregateVersion(), event));
+    hotEvents.forEach(event -> eventsByVersion.put(event.getAggregateVersion(), event));
+    return new ArrayList<>(eventsByVersion.values());
+  }
+
+  private boolean refreshIfStale() {
+    if (System.nanoTime() - this.lastRefreshNanos < MIN_REFRESH_INTERVAL_NANOS) {
+      return false;
+    }
+    try {
+      refresh();
+      return true;
+    } catch (IOException ex) {
+      log.warn("Unable to refresh the event archive: {}", ex.getMessage());
+      return false;
+    }
+  }
+
+  private void loadSegment(Path segment) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (buffer.capacity() < FOOTER_SIZE || buffer.getInt(buffer.capacity() - Integer.BYTES) != MAGIC) {
+      log.warn("Skipping event archive segment {} with an invalid footer", segment);
+      return;
+    }
+    int footer = buffer.capacity() - FOOTER_SIZE;
+    int indexOffset = Math.toIntExact(buffer.getLong(footer));
+    int entries = buffer.getInt(footer + Long.BYTES);
+    ByteBuffer index = buffer.duplicate().position(indexOffset);
+    for (int i = 0; i < entries; i++) {
+      SegmentBlock block = new SegmentBlock(
+        buffer, new UUID(index.getLong(), index.getLong()), index.getLong(), index.getLong(), index.getInt(), index.getInt(),
+        index.getInt());
+      this.blocksByAggregateId.computeIfAbsent(block.aggregateId(), aggregateId -> new CopyOnWriteArrayList<>()).add(block);
+    }
+    this.loadedSegments.add(segment.getFileName().toString());
+    log.info("Loaded event archive segment {} with {} blocks", segment.getFileName(), entries);
+  }
+
+  private Path directory() {
+    return Paths.get(this.archiveProperties.directory());
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static byte[] encode(List<EventEntity> events) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(bytes);
+    output.writeInt(events.size());
+    for (EventEntity event : events) {
+      output.writeLong(event.getId().getMostSignificantBits());
+      output.writeLong(event.getId().getLeastSignificantBits());
+      output.writeLong(event.getOffsetId());
+      output.writeLong(event.getOffsetTxId());
+      output.writeLong(event.getAggregateId().getMostSignificantBits());
+      output.writeLong(event.getAggregateId().getLeastSignificantBits());
+      output.writeLong(event.getAggregateVersion());
+      writeString(output, event.getEventType());
+      // 0 when the event has no type code.
+      output.writeShort(event.getEventTypeCode() != null ? event.getEventTypeCode() : 0);
+      output.writeInt(event.getEventRevision());
+      writeString(output, event.getDataContentType());
+      writeString(output, event.getData());
+      writeBytes(output, event.getDataBinary());
+      writeString(output, event.getDataBase64());
+      writeString(output, event.getExtension());
+      writeString(output, event.getTime() != null ? event.getTime().toString() : null);
+    }
+    output.flush();
+    return bytes.toByteArray();
+  }
+
+  private static List<EventEntity> decode(SegmentBlock block) {
+    byte[] compressedBlock = new byte[block.compressedLength()];
+    block.segment().get(block.offset(), compressedBlock);
+    try {
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(decompress(compressedBlock, block.uncompressedLength())));
+      int count = input.readInt();
+      List<EventEntity> events = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        EventEntity event = new EventEntity();
+        event.setId(new UUID(input.readLong(), input.readLong()));
+        event.setOffsetId(input.readLong());
+        event.setOffsetTxId(input.readLong());
+        event.setAggregateId(new UUID(input.readLong(), input.readLong()));
+        event.setAggregateVersion(input.readLong());
+        event.setEventType(readString(input));
+        short eventTypeCode = input.readShort();
+        event.setEventTypeCode(eventTypeCode != 0 ? eventTypeCode : null);
+        event.setEventRevision(input.readInt());
+        event.setDataContentType(readString(input));
+        event.setData(readString(input));
+        event.setDataBinary(readBytes(input));
+        event.setDataBase64(readString(input));
+        event.setExtension(readString(input));
+        String time = readString(input);
+        event.setTime(time != null ? OffsetDateTime.parse(time) : null);
+        events.add(event);
+      }
+      return events;
+    } catch (IOException | DataFormatException ex) {
+      throw new UncheckedIOException(new IOException("Corrupted event archive block for aggregate " + block.aggregateId(), ex));
+    }
+  }
+
+  private static void writeString(DataOutputStream output, String value) throws IOException {
+    writeBytes(output, value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+  }
+
+  private static void writeBytes(DataOutputStream output, byte[] value) throws IOException {
+    if (value == null) {
+      output.writeInt(-1);
+    } else {
+      output.writeInt(value.length);
+      output.write(value);
+    }
+  }
+
+  private static String readString(DataInputStream input) throws IOException {
+    byte[] value = readBytes(input);
+    return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+  }
+
+  private static byte[] readBytes(DataInputStream input) throws IOException {
+    int length = input.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] value = new byte[length];
+    input.readFully(value);
+    return value;
+  }
+
+  private static byte[] compress(byte[] block) {
+    Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    try {
+      deflater.setInput(block);
+      deflater.finish();
+      ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, block.length / 4));
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        output.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return output.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] decompress(byte[] compressedBlock, int uncompressedLength) throws DataFormatException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressedBlock);
+      byte[] block = new byte[uncompressedLength];
+      int length = 0;
+      while (length < uncompressedLength && !inflater.finished()) {
+        length += inflater.inflate(block, length, uncompressedLength - length);
+      }
+      return block;
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private record SegmentBlock(
+    MappedByteBuffer segment, UUID aggregateId, long fromVersion, long toVersion, int offset, int compressedLength,
+    int uncompressedLength) {
+  }
+}
@@ -0,0 +1,35 @@
+package com.cjrequena.eventstore.sample.codec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+
+/**
+ * Encodes and decodes event payloads for one content type.
+ * <p>
+ * Every {@code EventPayloadCodec} bean is registered in the {@link EventPayloadCodecRegistry} under its content type. The content type is
+ * stored with each event in {@code DATA_CONTENT_TYPE}, so events written with different codecs can live side by side.
+ */
+public interface EventPayloadCodec {
+
+  /**
+   * @return the content type recorded in {@code DATA_CONTENT_TYPE} for payloads written by this codec. Must adhere to RFC 2046 format.
+   */
+  String getContentType();
+
+  /**
+   * @return true if the encoded payload is binary and is stored in {@code DATA_BINARY}, false if it is JSON text stored in {@code DATA}.
+   */
+  boolean isBinary();
+
+  byte[] encode(Object payload) throws IOException;
+
+  <T> T decode(byte[] payload, Class<T> type) throws IOException;
+
+  /**
+   * Binds a payload tree, such as one produced by an upcaster, to the given type.
+   */
+  default <T> T decode(JsonNode payload, Class<T> type) throws IOException {
+    return decode(encode(payload), type);
+  }
+}
@@ -0,0 +1,34 @@
+package com.cjrequena.eventstore.sample.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Built-in event payload codecs. They share the configuration of the primary {@link ObjectMapper}, so the same payload is written with
+ * the same property names whatever the format.
+ */
+@Configuration
+public class EventPayloadCodecConfiguration {
+
+  public static final String APPLICATION_JSON = "application/json";
+  public static final String APPLICATION_SMILE = "application/x-jackson-smile";
+  public static final String APPLICATION_CBOR = "application/cbor";
+
+  @Bean
+  public EventPayloadCodec jsonEventPayloadCodec(ObjectMapper objectMapper) {
+    return new JacksonEventPayloadCodec(APPLICATION_JSON, false, objectMapper);
+  }
+
+  @Bean
+  public EventPayloadCodec smileEventPayloadCodec(ObjectMapper objectMapper) {
+    return new JacksonEventPayloadCodec(APPLICATION_SMILE, true, objectMapper.copyWith(new SmileFactory()));
+  }
+
+  @Bean
+  public EventPayloadCodec cborEventPayloadCodec(ObjectMapper objectMapper) {
+    return new JacksonEventPayloadCodec(APPLICATION_CBOR, true, objectMapper.copyWith(new CBORFactory()));
+  }
+}
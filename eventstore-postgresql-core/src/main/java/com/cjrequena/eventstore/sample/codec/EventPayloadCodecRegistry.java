@@ -0,0 +1,96 @@
+package com.cjrequena.eventstore.sample.codec;
+
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties;
+import com.cjrequena.eventstore.sample.entity.EventEntity;
+import com.cjrequena.eventstore.sample.upcast.EventUpcasterChain;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.SneakyThrows;
+import org.mapstruct.TargetType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.cjrequena.eventstore.sample.codec.EventPayloadCodecConfiguration.APPLICATION_JSON;
+
+/**
+ * Looks up {@link EventPayloadCodec}s by content type.
+ * <p>
+ * Writes use the content type configured for the aggregate type. Reads use the content type stored with each event, so events written
+ * before a codec change, or rows without a content type, keep decoding as JSON. Payloads written with an older revision of their event type
+ * go through the {@link EventUpcasterChain} before they are bound.
+ */
+@Component
+public class EventPayloadCodecRegistry {
+
+  private final Map<String, EventPayloadCodec> codecsByContentType;
+  private final EventStoreConfigurationProperties eventStoreConfigurationProperties;
+  private final EventUpcasterChain eventUpcasterChain;
+
+  @Autowired
+  public EventPayloadCodecRegistry(
+    List<EventPayloadCodec> codecs,
+    EventStoreConfigurationProperties eventStoreConfigurationProperties,
+    EventUpcasterChain eventUpcasterChain) {
+    Map<String, EventPayloadCodec> codecsByContentType = new HashMap<>();
+    codecs.forEach(codec -> codecsByContentType.put(codec.getContentType(), codec));
+    // Fail fast on a misconfigured content type instead of on the first append.
+    eventStoreConfigurationProperties.getPayload().contentTypes().values().forEach(contentType -> findCodec(codecsByContentType, contentType));
+    this.codecsByContentType = Map.copyOf(codecsByContentType);
+    this.eventStoreConfigurationProperties = eventStoreConfigurationProperties;
+    this.eventUpcasterChain = eventUpcasterChain;
+  }
+
+  public EventPayloadCodec getCodec(String contentType) {
+    return findCodec(this.codecsByContentType, contentType);
+  }
+
+  private static EventPayloadCodec findCodec(Map<String, EventPayloadCodec> codecsByContentType, String contentType) {
+    EventPayloadCodec codec = codecsByContentType.get(contentType == null || contentType.isBlank() ? APPLICATION_JSON : contentType);
+    if (codec == null) {
+      throw new IllegalArgumentException("No event payload codec registered for content type " + contentType);
+    }
+    return codec;
+  }
+
+  public EventPayloadCodec getCodecForAggregateType(String aggregateType) {
+    return getCodec(this.eventStoreConfigurationProperties.getPayload().contentTypes().get(aggregateType));
+  }
+
+  /**
+   * Encodes the payload into the event entity with the codec configured for the aggregate type, recording its content type and the
+   * latest revision of its event type.
+   */
+  @SneakyThrows
+  public void encodeData(EventEntity eventEntity, Object payload, String aggregateType) {
+    EventPayloadCodec codec = getCodecForAggregateType(aggregateType);
+    byte[] encodedPayload = codec.encode(payload);
+    eventEntity.setDataContentType(codec.getContentType());
+    eventEntity.setEventRevision(this.eventUpcasterChain.getLatestRevision(eventEntity.getEventType()));
+    if (codec.isBinary()) {
+      eventEntity.setData(null);
+      eventEntity.setDataBinary(encodedPayload);
+    } else {
+      eventEntity.setData(new String(encodedPayload, StandardCharsets.UTF_8));
+      eventEntity.setDataBinary(null);
+    }
+  }
+
+  /**
+   * Decodes the payload of the event entity with the codec of its content type. Used by the MapStruct event mappers.
+   */
+  @SneakyThrows
+  public <T> T decodeData(EventEntity eventEntity, @TargetType Class<T> type) {
+    EventPayloadCodec codec = getCodec(eventEntity.getDataContentType());
+    byte[] encodedPayload = codec.isBinary() ? eventEntity.getDataBinary() : eventEntity.getData().getBytes(StandardCharsets.UTF_8);
+    if (!this.eventUpcasterChain.requiresUpcast(eventEntity.getEventType(), eventEntity.getEventRevision())) {
+      return codec.decode(encodedPayload, type);
+    }
+    JsonNode payload = this.eventUpcasterChain.upcast(
+      eventEntity.getEventType(), eventEntity.getEventRevision(), codec.decode(encodedPayload, JsonNode.class));
+    return codec.decode(payload, type);
+  }
+}
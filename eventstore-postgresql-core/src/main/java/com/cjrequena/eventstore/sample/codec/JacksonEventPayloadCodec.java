@@ -0,0 +1,47 @@
+package com.cjrequena.eventstore.sample.codec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+
+/**
+ * {@link EventPayloadCodec} backed by a Jackson {@link ObjectMapper}. The data format (JSON, Smile, CBOR) is the one of the mapper.
+ */
+public class JacksonEventPayloadCodec implements EventPayloadCodec {
+
+  private final String contentType;
+  private final boolean binary;
+  private final ObjectMapper objectMapper;
+
+  public JacksonEventPayloadCodec(String contentType, boolean binary, ObjectMapper objectMapper) {
+    this.contentType = contentType;
+    this.binary = binary;
+    this.objectMapper = objectMapper;
+  }
+
+  @Override
+  public String getContentType() {
+    return this.contentType;
+  }
+
+  @Override
+  public boolean isBinary() {
+    return this.binary;
+  }
+
+  @Override
+  public byte[] encode(Object payload) throws IOException {
+    return this.objectMapper.writeValueAsBytes(payload);
+  }
+
+  @Override
+  public <T> T decode(byte[] payload, Class<T> type) throws IOException {
+    return this.objectMapper.readValue(payload, type);
+  }
+
+  @Override
+  public <T> T decode(JsonNode payload, Class<T> type) throws IOException {
+    return this.objectMapper.treeToValue(payload, type);
+  }
+}
@@ -1,15 +1,22 @@
 package com.cjrequena.eventstore.sample.configuration;
 
+import jakarta.annotation.Nullable;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Positive;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.NestedConfigurationProperty;
+import org.springframework.boot.context.properties.bind.DefaultValue;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
 import org.springframework.validation.annotation.Validated;
 
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Getter
 @Setter
@@ -18,7 +25,7 @@ import java.util.Map;
 @ConfigurationProperties(prefix = "eventstore")
 public class EventStoreConfigurationProperties {
 
-  private static final SnapshotProperties NO_SNAPSHOT = new SnapshotProperties(false, 0);
+  private static final SnapshotProperties NO_SNAPSHOT = new SnapshotProperties(false, 0, 0, null, SnapshotPolicyProperties.DEFAULT);
 
   @Valid
   @NestedConfigurationProperty
@@ -26,15 +33,250 @@ public class EventStoreConfigurationProperties {
   @Valid
   @NestedConfigurationProperty
   private SubscriptionProperties subscription;
-
+  @Valid
+  @NestedConfigurationProperty
+  private AppendProperties append = new AppendProperties(AppendMode.MULTI_STATEMENT);
+  @Valid
+  @NestedConfigurationProperty
+  private SnapshotWriterProperties snapshotWriter = new SnapshotWriterProperties(true, 1000, 1, 50);
+  @Valid
+  @NestedConfigurationProperty
+  private GroupCommitProperties groupCommit = new GroupCommitProperties(false, Duration.ofMillis(2), 64, 1000, Duration.ofMillis(200));
+  @Valid
+  @NestedConfigurationProperty
+  private PayloadProperties payload = new PayloadProperties(PayloadStorage.JSON, Map.of());
+  @Valid
+  @NestedConfigurationProperty
+  private PartitioningProperties partitioning = new PartitioningProperties(false, 16);
+  @Valid
+  @NestedConfigurationProperty
+  private ArchiveProperties archive = new ArchiveProperties(false, false, "./eventstore-archive", 10000);
+  @Valid
+  @NestedConfigurationProperty
+  private SnapshotCompactionProperties snapshotCompaction = new SnapshotCompactionProperties(false, 1000, 100);
+  @Valid
+  @NestedConfigurationProperty
+  private ReplayProperties replay = new ReplayProperties(1000);
+  @Valid
+  @NestedConfigurationProperty
+  private ExistenceIndexProperties existenceIndex = new ExistenceIndexProperties(false, 1_000_000, 0.01, 100_000, false, 10_000);
 
   public SnapshotProperties getSnapshot(String aggregateType) {
     return snapshot.getOrDefault(aggregateType, NO_SNAPSHOT);
   }
 
-  public record SnapshotProperties(boolean enabled, int interval) {
+  public Set<String> snapshotAggregateTypes() {
+    return snapshot.keySet();
+  }
+
+  /**
+   * @param enabled when true, snapshots are taken when one of the policy strategies asks for it.
+   * @param interval the number of events after the latest snapshot that triggers a new one, used by the {@code event-count} strategy.
+   * @param keepLast the number of most recent snapshots kept per aggregate by the compactor, 0 to keep them all.
+   * @param maxAge the age beyond which the compactor deletes a snapshot, unless it is the latest one of its aggregate. Null to disable.
+   * @param policy the strategies deciding when to take a snapshot.
+   */
+  public record SnapshotProperties(
+    boolean enabled,
+    int interval,
+    @DefaultValue("0") int keepLast,
+    @Nullable Duration maxAge,
+    @DefaultValue SnapshotPolicyProperties policy) {
+
+    public boolean hasRetention() {
+      return keepLast > 0 || maxAge != null;
+    }
+  }
+
+  /**
+   * @param mode how {@code saveAggregate} talks to the database. {@code multi-statement} issues the aggregate upsert, the version check,
+   *             the event insert and the snapshot insert as separate statements. {@code single-statement} does all of them in one call
+   *             to the {@code ES_APPEND_AGGREGATE_EVENTS} database function.
+   */
+  public record AppendProperties(@DefaultValue("multi-statement") AppendMode mode) {
+  }
+
+  /**
+   * @param async when true, snapshots are written after the command transaction commits by a background worker pool instead of inside
+   *              the command transaction.
+   * @param queueCapacity the maximum number of aggregates waiting for a snapshot. Requests beyond it are dropped and counted.
+   * @param workers the number of worker threads writing snapshots.
+   * @param batchSize the maximum number of snapshots inserted with a single JDBC batch.
+   */
+  public record SnapshotWriterProperties(
+    @DefaultValue("true") boolean async,
+    @DefaultValue("1000") @Positive int queueCapacity,
+    @DefaultValue("1") @Positive int workers,
+    @DefaultValue("50") @Positive int batchSize) {
+  }
+
+  /**
+   * @param enabled when true, appends from concurrent callers are collected and committed together in one transaction, each append in
+   *                its own savepoint so a conflict only fails its own caller. That transaction is not the caller's: once
+   *                {@code saveAggregate} returns the events are committed, even if a transaction the caller opened around it later
+   *                rolls back. Only enable it when nothing else the caller writes has to commit or roll back with the events.
+   * @param window how long the dispatcher waits for more appends after the first one of a group arrives.
+   * @param maxSize the maximum number of appends committed in one transaction.
+   * @param queueCapacity the maximum number of appends waiting for a group. Callers beyond it wait up to {@code handoffTimeout} for room.
+   * @param handoffTimeout how long a caller waits for the dispatcher to take its append into a group transaction. Past it, for instance
+   *                       when the pool has no connection left for the dispatcher, the caller withdraws its append and runs it in its own
+   *                       transaction.
+   */
+  public record GroupCommitProperties(
+    @DefaultValue("false") boolean enabled,
+    @DefaultValue("2ms") Duration window,
+    @DefaultValue("64") @Positive int maxSize,
+    @DefaultValue("1000") @Positive int queueCapacity,
+    @DefaultValue("200ms") Duration handoffTimeout) {
+  }
+
+  /**
+   * @param storage how the event payload is stored. {@code json} stores it once, in the {@code DATA} or {@code DATA_BINARY} column.
+   *                {@code json-and-base64} also stores the Base64 encoding of the same encoded payload in {@code DATA_BASE64}, for
+   *                consumers that still read it.
+   * @param contentTypes the content type of the codec used to encode the event payloads, keyed by aggregate type. Aggregate types
+   *                     not listed use {@code application/json}.
+   */
+  public record PayloadProperties(@DefaultValue("json") PayloadStorage storage, Map<String, String> contentTypes) {
+    public PayloadProperties {
+      contentTypes = contentTypes != null ? contentTypes : Map.of();
+    }
+  }
+
+  public enum PayloadStorage {
+    JSON,
+    JSON_AND_BASE64
+  }
+
+  /**
+   * Partition maintenance for an ES_EVENT table partitioned by hash of AGGREGATE_ID with the optional V1.3 script.
+   *
+   * @param enabled when true, missing partitions are created at startup and then periodically.
+   * @param hashPartitions the number of hash partitions, the modulus of the existing partitions.
+   */
+  public record PartitioningProperties(
+    @DefaultValue("false") boolean enabled,
+    @DefaultValue("16") @Positive int hashPartitions) {
+  }
+
+  /**
+   * @param strategies the names of the {@code SnapshotPolicy} beans consulted, any of them can trigger a snapshot. Built in:
+   *                   {@code event-count}, {@code replay-time}, {@code payload-size} and {@code read-triggered}.
+   * @param maxReplayTime the estimated time to replay the events after the latest snapshot that triggers a new one.
+   * @param maxPayloadSize the encoded size of the events after the latest snapshot that triggers a new one.
+   * @param readTriggerEvents the number of events a load had to replay after the latest snapshot that triggers a new one.
+   */
+  public record SnapshotPolicyProperties(
+    @DefaultValue("event-count") List<String> strategies,
+    @Nullable Duration maxReplayTime,
+    @Nullable DataSize maxPayloadSize,
+    @DefaultValue("0") int readTriggerEvents) {
+
+    public static final SnapshotPolicyProperties DEFAULT = new SnapshotPolicyProperties(List.of("event-count"), null, null, 0);
+  }
+
+  /**
+   * @param enabled when true, snapshots beyond the retention of their aggregate type are periodically deleted.
+   * @param batchSize the maximum number of snapshots deleted per statement, each in its own short transaction.
+   * @param maxBatchesPerRun the maximum number of batches per aggregate type and run.
+   */
+  public record SnapshotCompactionProperties(
+    @DefaultValue("false") boolean enabled,
+    @DefaultValue("1000") @Positive int batchSize,
+    @DefaultValue("100") @Positive int maxBatchesPerRun) {
+  }
+
+  /**
+   * @param enabled when true, event reads merge the archived history of an aggregate with the events still in ES_EVENT.
+   * @param archiverEnabled when true, this process periodically moves the events covered by the latest snapshot of their aggregate, and
+   *                        already consumed by every registered subscription, from ES_EVENT into segment files. Subscriptions never
+   *                        read the archive, so a stopped subscription holds events back until it is deregistered with
+   *                        {@code EventStoreService#deregisterSubscription}. Enable it on a single process.
+   * @param directory the local directory holding the segment files. The archive is local to the processes that see this directory: once
+   *                  events are archived, a process loading aggregates without it fails their replay with a missing events error, so
+   *                  every such process must mount the same directory.
+   * @param batchSize the maximum number of events moved by one archiver run.
+   */
+  public record ArchiveProperties(
+    @DefaultValue("false") boolean enabled,
+    @DefaultValue("false") boolean archiverEnabled,
+    @DefaultValue("./eventstore-archive") String directory,
+    @DefaultValue("10000") @Positive int batchSize) {
+  }
+
+  /**
+   * @param fetchSize the number of events fetched per round trip while an aggregate is reproduced. The events are folded into the
+   *                  aggregate as they arrive, so this bounds the memory used by a replay whatever the length of the stream.
+   */
+  public record ReplayProperties(@DefaultValue("1000") @Positive int fetchSize) {
+  }
+
+  /**
+   * @param enabled when true, aggregate existence checks are first answered from an in-memory cache of the aggregates recently seen to
+   *                exist, kept up to date by the appends of this process.
+   * @param expectedAggregates the number of aggregates the Bloom filter of the authoritative mode is sized for. It grows beyond it, at
+   *                           some cost in memory and lookup time.
+   * @param falsePositiveRate the target probability that the Bloom filter reports an absent aggregate as possibly present.
+   * @param exactCacheSize the maximum number of aggregate IDs known for certain to exist, for which the database is not queried.
+   * @param authoritative when true, a Bloom filter is filled from ES_AGGREGATE at startup and an aggregate it has never seen is reported
+   *                      absent without querying the database. Only safe when this process is the only one creating aggregates,
+   *                      otherwise those created elsewhere after startup would be rejected. When false, only the exact cache is used.
+   * @param loadFetchSize the number of aggregate IDs fetched per round trip while the Bloom filter is filled at startup.
+   */
+  public record ExistenceIndexProperties(
+    @DefaultValue("false") boolean enabled,
+    @DefaultValue("1000000") @Positive long expectedAggregates,
+    @DefaultValue("0.01") @Positive double falsePositiveRate,
+    @DefaultValue("100000") @Positive long exactCacheSize,
+    @DefaultValue("false") boolean authoritative,
+    @DefaultValue("10000") @Positive int loadFetchSize) {
+  }
+
+  public enum AppendMode {
+    MULTI_STATEMENT,
+    SINGLE_STATEMENT
+  }
+
+  /**
+   * @param enabled when true, the subscription handlers are run.
+   * @param name the name of the subscription, whose offsets are stored in ES_EVENT_SUBSCRIPTION, one per partition.
+   * @param type {@code polling} runs the handlers every {@code pollingInterval}. {@code postgres-channel} also runs them as soon as events
+   *             of their aggregate type are committed, notified through PostgreSQL LISTEN/NOTIFY, and keeps the polling as a fallback
+   *             for notifications missed while the listener was reconnecting.
+   * @param pollingInitialDelay the delay before the first poll.
+   * @param pollingInterval the delay between two polls.
+   * @param minPageSize the smallest number of events read and handled per transaction.
+   * @param maxPageSize the largest number of events read and handled per transaction.
+   * @param targetPageDuration how long handling a page should take. The page size follows the measured handler throughput to match it,
+   *                           within {@code minPageSize} and {@code maxPageSize}.
+   * @param horizonRetryDelay events are read only below the oldest transaction still in progress, so a run can stop short of events
+   *                          already committed. Such a run is requested again after this delay, as no other notification may come for
+   *                          them, e.g. when that older transaction rolls back.
+   * @param partitions the number of partitions the subscription is split into, by hash of the aggregate ID. Each partition is consumed
+   *                   by one process at a time, and the partitions are spread over the live processes of the subscription. Changing it
+   *                   makes every partition start again from the slowest one.
+   * @param leaseDuration how long a process keeps its partitions without a heartbeat. Also how long a process that stopped sending
+   *                      heartbeats is considered alive.
+   * @param heartbeatInterval the delay between two heartbeats, when the partitions are rebalanced and the leases renewed. Must be well
+   *                          below {@code leaseDuration}.
+   */
+  public record SubscriptionProperties(
+    boolean enabled,
+    String name,
+    @DefaultValue("polling") SubscriptionType type,
+    String pollingInitialDelay,
+    String pollingInterval,
+    @DefaultValue("100") @Positive int minPageSize,
+    @DefaultValue("5000") @Positive int maxPageSize,
+    @DefaultValue("500ms") Duration targetPageDuration,
+    @DefaultValue("50ms") Duration horizonRetryDelay,
+    @DefaultValue("1") @Positive int partitions,
+    @DefaultValue("PT10S") Duration leaseDuration,
+    @DefaultValue("PT3S") String heartbeatInterval) {
   }
 
-  public record SubscriptionProperties(boolean enabled, String name, String pollingInitialDelay, String pollingInterval) {
+  public enum SubscriptionType {
+    POLLING,
+    POSTGRES_CHANNEL
   }
 }
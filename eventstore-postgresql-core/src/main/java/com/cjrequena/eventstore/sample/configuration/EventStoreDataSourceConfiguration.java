@@ -10,6 +10,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -53,4 +54,9 @@ public class EventStoreDataSourceConfiguration {
     @Qualifier("entityManagerFactoryEventStore") EntityManagerFactory entityManagerFactoryEventStore) {
     return new JpaTransactionManager(entityManagerFactoryEventStore);
   }
+
+  @Bean(name = "jdbcTemplateEventStore")
+  public JdbcTemplate jdbcTemplateEventStore(@Qualifier("dataSourceEventStore") DataSource dataSource) {
+    return new JdbcTemplate(dataSource);
+  }
 }
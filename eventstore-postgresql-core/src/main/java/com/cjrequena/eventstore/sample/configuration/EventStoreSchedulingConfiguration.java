@@ -0,0 +1,12 @@
+package com.cjrequena.eventstore.sample.configuration;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables the scheduled maintenance tasks of the event store, whether or not the application enables scheduling itself.
+ */
+@Configuration
+@EnableScheduling
+public class EventStoreSchedulingConfiguration {
+}
@@ -8,8 +8,6 @@ import jakarta.annotation.Nonnull;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -25,6 +23,10 @@ import java.util.UUID;
 @Slf4j
 public abstract class Aggregate {
 
+  // Dispatch tables of the applyEvent and applyCommand methods of the concrete aggregate classes.
+  private static final AggregateHandlers EVENT_HANDLERS = new AggregateHandlers("applyEvent", Event.class);
+  private static final AggregateHandlers COMMAND_HANDLERS = new AggregateHandlers("applyCommand", Command.class);
+
   @JsonProperty("aggregate_id")
   protected final UUID aggregateId;
 
@@ -40,6 +42,24 @@ public abstract class Aggregate {
 
   @JsonIgnore
   protected List<Event> unconfirmedEventsPool;
+
+  @JsonIgnore
+  @Setter
+  protected long snapshotAggregateVersion; // The version of the latest known snapshot of the aggregate, 0 if none.
+
+  @JsonIgnore
+  protected long payloadBytesSinceSnapshot; // The encoded size of the known events after the latest snapshot.
+
+  @JsonIgnore
+  protected long replayedEventCount; // The number of events applied by reproduceFromEvents.
+
+  @JsonIgnore
+  protected long replayNanos; // The time spent applying those events.
+
+  @JsonIgnore
+  @Setter
+  protected boolean snapshotRequested; // Whether the next save should take a snapshot regardless of the snapshot policies.
+
   /**
    * Constructs an instance of the Aggregate class.
    *
@@ -63,24 +83,36 @@ public abstract class Aggregate {
    * @throws IllegalArgumentException if any event's aggregate version is not greater than the current version.
    */
   public void reproduceFromEvents(List<Event> events) {
+    for (Event event : events) {
+      reproduceFromEvent(event);
+    }
+  }
+
+  /**
+   * Applies a single confirmed event to the aggregate, so the history can be folded into it as it is read instead of being loaded first.
+   * Events must be given in ascending aggregate version order.
+   *
+   * @param event The event to apply.
+   * @throws IllegalStateException if there are uncommitted changes.
+   * @throws IllegalArgumentException if the event's aggregate version is not greater than the current version.
+   */
+  public void reproduceFromEvent(Event event) {
     // Guard clause to check for unsaved changes
     if (!unconfirmedEventsPool.isEmpty()) {
       throw new IllegalStateException("Cannot reproduce from history. The aggregate has unconfirmed events.");
     }
+    // Validate the event aggregate version before applying
+    if (event.getAggregateVersion() <= aggregateVersion) {
+      throw new IllegalArgumentException(
+        "Event aggregate version (%s) must be greater than the current aggregate version (%s).".formatted(event.getAggregateVersion(), aggregateVersion));
+    }
+
+    long replayStartNanos = System.nanoTime();
+    applyEvent(event);
+    replayNanos += System.nanoTime() - replayStartNanos;
+    replayedEventCount++;
 
-    // Validate and apply events using Stream API
-    events.stream()
-      .peek(event -> {
-        // Validate the event aggregate version before applying
-        if (event.getAggregateVersion() <= aggregateVersion) {
-          throw new IllegalArgumentException(
-            "Event aggregate version (%s) must be greater than the current aggregate version (%s).".formatted(event.getAggregateVersion(), aggregateVersion));
-        }
-      })
-      .forEach(this::applyEvent);  // Apply each valid event to the aggregate's state
-
-    // Update currentAggregateVersion and reproducedAggregateVersion if events are applied successfully
-    events.stream().reduce((first, second) -> second).ifPresent(lastEvent -> reproducedAggregateVersion = aggregateVersion = lastEvent.getAggregateVersion());
+    reproducedAggregateVersion = aggregateVersion = event.getAggregateVersion();
   }
 
   /**
@@ -103,12 +135,12 @@ public abstract class Aggregate {
    */
   private void applyEvent(Event event) {
     log.info("Applying event {}", event);
-    invoke(event, "applyEvent");
+    EVENT_HANDLERS.invoke(this, event);
   }
 
   public void applyCommand(Command command) {
     log.info("Applying command {}", command);
-    invoke(command, "applyCommand");
+    COMMAND_HANDLERS.invoke(this, command);
   }
 
   /**
@@ -135,35 +167,53 @@ public abstract class Aggregate {
 
   /**
    * Marks the unconfirmed events as confirmed, clearing the unconfirmed events pool.
+   * The current version becomes the reproduced version, so the aggregate can keep handling commands without being reloaded.
    */
   public void markUnconfirmedEventsAsConfirmed() {
     this.unconfirmedEventsPool.clear();
+    this.reproducedAggregateVersion = this.aggregateVersion;
+  }
+
+  /**
+   * Records the encoded size of events appended or loaded after the latest snapshot.
+   *
+   * @param payloadBytes the size in bytes.
+   */
+  public void addPayloadBytesSinceSnapshot(long payloadBytes) {
+    this.payloadBytesSinceSnapshot += payloadBytes;
+  }
+
+  /**
+   * Records that a snapshot of the current version has been requested, resetting the counters measured since the previous one.
+   */
+  public void markSnapshotTaken() {
+    this.snapshotAggregateVersion = this.aggregateVersion;
+    this.payloadBytesSinceSnapshot = 0;
+    this.snapshotRequested = false;
+  }
+
+  /**
+   * Gets the average time spent applying one event while reproducing the aggregate.
+   *
+   * @return The average time in nanoseconds, 0 if no event has been replayed.
+   */
+  @JsonIgnore
+  public long getAverageReplayNanos() {
+    return replayedEventCount > 0 ? replayNanos / replayedEventCount : 0;
   }
 
   /**
-   * Invokes a method on the aggregate with the specified parameter.
+   * Builds and validates the event and command dispatch tables of the aggregate class, so that a broken handler fails at startup instead
+   * of on the first event or command of that aggregate.
    *
-   * @param parameter The parameter to pass to the method.
-   * @param methodName The name of the method to invoke.
-   * @throws UnsupportedOperationException if the method is not supported or accessible.
-   * @throws RuntimeException if invocation fails due to an exception thrown by the invoked method.
+   * @param aggregateClass the concrete aggregate class.
+   * @throws IllegalStateException if a handler is invalid, or if the aggregate class declares no {@code applyEvent} method.
    */
-  @SneakyThrows
-  private void invoke(Object parameter, String methodName) {
-    Class<?> parameterType = parameter.getClass();
-    try {
-      Method method = this.getClass().getMethod(methodName, parameterType);
-      method.invoke(this, parameter);
-    } catch (NoSuchMethodException e) {
-      throw new UnsupportedOperationException(
-        String.format("Aggregate %s doesn't support method %s(%s).", this.getClass().getSimpleName(), methodName, parameterType.getSimpleName()), e);
-    } catch (IllegalAccessException e) {
-      throw new UnsupportedOperationException(
-        String.format("Method %s in aggregate %s is not accessible.", methodName, this.getClass().getSimpleName()), e);
-    } catch (InvocationTargetException e) {
-      throw new RuntimeException(
-        String.format("Invocation of method %s failed due to: %s", methodName, e.getCause().getMessage()), e.getCause());
+  public static void prepareHandlers(Class<? extends Aggregate> aggregateClass) {
+    if (EVENT_HANDLERS.get(aggregateClass).isEmpty()) {
+      throw new IllegalStateException(String.format("Aggregate %s declares no public applyEvent method.", aggregateClass.getSimpleName()));
     }
+    COMMAND_HANDLERS.get(aggregateClass);
   }
 
   /**
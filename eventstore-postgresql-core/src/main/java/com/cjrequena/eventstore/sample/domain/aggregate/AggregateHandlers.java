@@ -0,0 +1,95 @@
+package com.cjrequena.eventstore.sample.domain.aggregate;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Dispatch table of the handler methods with a given name, such as {@code applyEvent}, of every aggregate class.
+ * <p>
+ * The table of an aggregate class is built from its public single-argument methods with that name, keyed by their exact parameter
+ * type, when {@code AggregateFactory} prepares the aggregate classes at startup, or otherwise the first time the class is used. Each handler is called through a function generated with {@link LambdaMetafactory}, so
+ * dispatching costs a map lookup and an interface call instead of a reflective method lookup and invocation.
+ */
+final class AggregateHandlers extends ClassValue<Map<Class<?>, BiConsumer<Aggregate, Object>>> {
+
+  private static final MethodType HANDLER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+  private final String methodName;
+  private final Class<?> parameterType;
+
+  /**
+   * @param methodName the name of the handler methods.
+   * @param parameterType the type every handler parameter must extend, such as {@code Event} for {@code applyEvent}.
+   */
+  AggregateHandlers(String methodName, Class<?> parameterType) {
+    this.methodName = methodName;
+    this.parameterType = parameterType;
+  }
+
+  /**
+   * Calls the handler of the aggregate for the type of the given parameter.
+   *
+   * @param aggregate the aggregate.
+   * @param parameter the event or command to handle.
+   * @throws UnsupportedOperationException if the aggregate has no handler for the exact type of the parameter.
+   */
+  void invoke(Aggregate aggregate, Object parameter) {
+    BiConsumer<Aggregate, Object> handler = get(aggregate.getClass()).get(parameter.getClass());
+    if (handler == null) {
+      throw new UnsupportedOperationException(
+        String.format("Aggregate %s doesn't support method %s(%s).", aggregate.getClass().getSimpleName(), this.methodName,
+          parameter.getClass().getSimpleName()));
+    }
+    handler.accept(aggregate, parameter);
+  }
+
+  /**
+   * @throws IllegalStateException if a handler method of the aggregate class takes a parameter that does not extend the parameter type of
+   *                               this table, or cannot be bound.
+   */
+  @Override
+  protected Map<Class<?>, BiConsumer<Aggregate, Object>> computeValue(Class<?> aggregateClass) {
+    Map<Class<?>, BiConsumer<Aggregate, Object>> handlers = new HashMap<>();
+    for (Method method : aggregateClass.getMethods()) {
+      // The generic handlers declared by Aggregate itself dispatch through this table, so they are never targets.
+      if (method.getName().equals(this.methodName)
+        && method.getParameterCount() == 1
+        && !Modifier.isStatic(method.getModifiers())
+        && !method.isBridge()
+        && method.getDeclaringClass() != Aggregate.class) {
+        if (!this.parameterType.isAssignableFrom(method.getParameterTypes()[0])) {
+          throw new IllegalStateException(String.format("Method %s of aggregate %s must take a parameter of type %s.", method, aggregateClass.getSimpleName(),
+            this.parameterType.getSimpleName()));
+        }
+        handlers.put(method.getParameterTypes()[0], createHandler(method));
+      }
+    }
+    return Map.copyOf(handlers);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static BiConsumer<Aggregate, Object> createHandler(Method method) {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup());
+      MethodHandle implementation = lookup.unreflect(method);
+      CallSite callSite = LambdaMetafactory.metafactory(
+        lookup,
+        "accept",
+        MethodType.methodType(BiConsumer.class),
+        HANDLER_TYPE,
+        implementation,
+        MethodType.methodType(void.class, method.getDeclaringClass(), method.getParameterTypes()[0]));
+      return (BiConsumer<Aggregate, Object>) callSite.getTarget().invokeExact();
+    } catch (Throwable ex) {
+      throw new IllegalStateException(String.format("Unable to create the handler for method %s.", method), ex);
+    }
+  }
+}
@@ -1,14 +1,11 @@
 package com.cjrequena.eventstore.sample.domain.event;
 
-import com.cjrequena.eventstore.sample.entity.AbstractEventEntity;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import lombok.SneakyThrows;
 import lombok.ToString;
 import lombok.experimental.SuperBuilder;
 import lombok.extern.log4j.Log4j2;
 
-import java.lang.reflect.Method;
 import java.time.OffsetDateTime;
 import java.util.UUID;
 
@@ -49,16 +46,17 @@ public abstract class Event {
   // The time the event occurred
   protected OffsetDateTime time;
 
-  public AbstractEventEntity mapToEventEntity() {
-    log.info("Mapping to event entity {}", this);
-    return invoke();
-  }
-
-  @SneakyThrows
-  private AbstractEventEntity invoke() {
-    Class<?> parameterType = this.getClass();
-    Method method = this.getClass().getMethod("mapToEventEntity");
-    return (AbstractEventEntity) method.invoke(this);
+  /**
+   * @return the event payload. It is encoded by the event store with the codec configured for the aggregate type.
+   */
+  public abstract Object getData();
+
+  /**
+   * @return the stable code of the event type, stored with the event so it can be decoded without its type name. Codes are positive and
+   *         never reused. Null if the event type has no code.
+   */
+  public Short getEventTypeCode() {
+    return null;
   }
 
 }
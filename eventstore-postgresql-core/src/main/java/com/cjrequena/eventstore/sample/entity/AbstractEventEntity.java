@@ -47,12 +47,21 @@ public abstract class AbstractEventEntity {
   @Column(name = "event_type", nullable = false)
   protected String eventType;
 
+  // The stable code of the event type, positive and never reused. Null for event types without a code and for older events.
+  @Column(name = "event_type_code")
+  protected Short eventTypeCode;
+
+  // The revision of the event type the payload was written with, see EventUpcaster.
+  @Builder.Default
+  @Column(name = "event_revision", nullable = false)
+  protected int eventRevision = 1;
+
   // The content type of the event data. Must adhere to RFC 2046 format.
   @Column(name = "data_content_type", nullable = false)
   public String dataContentType;
 
-  // Base64 encoded event payload. Must adhere to RFC4648.
-  @Column(name = "data_base64", nullable = false)
+  // Base64 encoded event payload. Must adhere to RFC4648. Only stored when the payload storage is json-and-base64.
+  @Column(name = "data_base64")
   protected String dataBase64;
 
   // A URI describing the schema for the event data
@@ -6,6 +6,7 @@ import lombok.*;
 import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.type.SqlTypes;
 
+import java.time.OffsetDateTime;
 import java.util.UUID;
 
 @Getter
@@ -42,10 +43,26 @@ public class AggregateSnapshotEntity {
   @JsonProperty(value = "aggregate_type")
   private String aggregateType;
 
-  // The actual event data, the event payload.
+  // The aggregate state as JSON, only for snapshots taken before the binary format.
   @JdbcTypeCode(SqlTypes.JSON)
-  @Column(name = "data", columnDefinition = "json", nullable = false)
+  @Column(name = "data", columnDefinition = "json")
   @JsonProperty(value = "data")
   private String data;
 
+  // The aggregate state encoded by the snapshot codec.
+  @Column(name = "data_binary")
+  @JsonProperty(value = "data_binary")
+  @ToString.Exclude
+  private byte[] dataBinary;
+
+  // The fingerprint of the aggregate schema the snapshot was taken with.
+  @Column(name = "schema_fingerprint")
+  @JsonProperty(value = "schema_fingerprint")
+  private String schemaFingerprint;
+
+  // When the snapshot was taken, set by the database.
+  @Column(name = "creation_date", insertable = false, updatable = false)
+  @JsonProperty(value = "creation_date")
+  private OffsetDateTime creationDate;
+
 }
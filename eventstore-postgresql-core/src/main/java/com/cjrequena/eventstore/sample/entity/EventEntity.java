@@ -14,13 +14,27 @@ import org.hibernate.type.SqlTypes;
 @Table(name = "es_event")
 public class EventEntity extends AbstractEventEntity {
 
-  // The actual event data, the event payload.
+  // The actual event data, the event payload, when it is encoded as JSON.
   @JdbcTypeCode(SqlTypes.JSON)
   @Column(name = "data", columnDefinition = "json")
   private String data;
 
+  // The actual event data, the event payload, when it is encoded with a binary codec such as Smile or CBOR.
+  @Column(name = "data_binary")
+  private byte[] dataBinary;
+
   // // Custom metadata extensions
   @JdbcTypeCode(SqlTypes.JSON)
   @Column(name = "extension", columnDefinition = "json")
   protected String extension;
+
+  /**
+   * @return the size of the encoded payload, counting JSON characters rather than bytes to avoid encoding it again.
+   */
+  public int payloadSize() {
+    if (dataBinary != null) {
+      return dataBinary.length;
+    }
+    return data != null ? data.length() : 0;
+  }
 }
@@ -3,6 +3,7 @@ package com.cjrequena.eventstore.sample.entity;
 import jakarta.persistence.*;
 import lombok.*;
 
+import java.time.OffsetDateTime;
 import java.util.UUID;
 
 @Getter
@@ -34,4 +35,20 @@ public class EventSubscriptionEntity {
   @Column(name = "offset_id", nullable = false)
   protected long offsetId;
 
+  // The partition of the subscription this offset belongs to
+  @Column(name = "partition_number", nullable = false)
+  protected int partitionNumber;
+
+  // The number of partitions the subscription is split into
+  @Column(name = "partition_count", nullable = false)
+  protected int partitionCount;
+
+  // The member currently holding the lease on the partition
+  @Column(name = "owner")
+  protected String owner;
+
+  // The instant the lease of the owner expires unless renewed
+  @Column(name = "lease_expires_at")
+  protected OffsetDateTime leaseExpiresAt;
+
 }
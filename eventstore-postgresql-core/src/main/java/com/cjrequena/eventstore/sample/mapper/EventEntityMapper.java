@@ -0,0 +1,33 @@
+package com.cjrequena.eventstore.sample.mapper;
+
+import com.cjrequena.eventstore.sample.domain.event.Event;
+import com.cjrequena.eventstore.sample.entity.AbstractEventEntity;
+
+import java.util.function.Function;
+
+/**
+ * Maps the events of one class to the entities appended to the event store. Register one bean per event class, they are collected by the
+ * {@link EventEntityMapperRegistry} at startup.
+ *
+ * @param <E> the event class.
+ */
+public interface EventEntityMapper<E extends Event> {
+
+  Class<E> getEventClass();
+
+  AbstractEventEntity mapToEventEntity(E event);
+
+  static <E extends Event> EventEntityMapper<E> of(Class<E> eventClass, Function<E, ? extends AbstractEventEntity> mapper) {
+    return new EventEntityMapper<>() {
+      @Override
+      public Class<E> getEventClass() {
+        return eventClass;
+      }
+
+      @Override
+      public AbstractEventEntity mapToEventEntity(E event) {
+        return mapper.apply(event);
+      }
+    };
+  }
+}
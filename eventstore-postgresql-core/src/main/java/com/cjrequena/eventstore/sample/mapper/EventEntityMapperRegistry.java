@@ -0,0 +1,48 @@
+package com.cjrequena.eventstore.sample.mapper;
+
+import com.cjrequena.eventstore.sample.domain.event.Event;
+import com.cjrequena.eventstore.sample.entity.AbstractEventEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps events to the entities appended to the event store, with the {@link EventEntityMapper} registered for their exact class.
+ * <p>
+ * The mappers are indexed once at startup, so events stay plain data: mapping one costs a map lookup instead of a container lookup when
+ * the event is built and a reflective call when it is appended.
+ */
+@Component
+public class EventEntityMapperRegistry {
+
+  private final Map<Class<?>, EventEntityMapper<?>> mappersByEventClass;
+
+  @Autowired
+  public EventEntityMapperRegistry(List<EventEntityMapper<?>> eventEntityMappers) {
+    Map<Class<?>, EventEntityMapper<?>> mappers = new HashMap<>();
+    for (EventEntityMapper<?> eventEntityMapper : eventEntityMappers) {
+      if (mappers.putIfAbsent(eventEntityMapper.getEventClass(), eventEntityMapper) != null) {
+        throw new IllegalStateException("More than one event entity mapper registered for event class %s"
+          .formatted(eventEntityMapper.getEventClass().getName()));
+      }
+    }
+    this.mappersByEventClass = Map.copyOf(mappers);
+  }
+
+  /**
+   * @param event the event to map.
+   * @return the entity to append.
+   * @throws IllegalStateException if no mapper is registered for the class of the event.
+   */
+  @SuppressWarnings("unchecked")
+  public <E extends Event> AbstractEventEntity mapToEventEntity(E event) {
+    EventEntityMapper<E> eventEntityMapper = (EventEntityMapper<E>) this.mappersByEventClass.get(event.getClass());
+    if (eventEntityMapper == null) {
+      throw new IllegalStateException("No event entity mapper registered for event class %s".formatted(event.getClass().getName()));
+    }
+    return eventEntityMapper.mapToEventEntity(event);
+  }
+}
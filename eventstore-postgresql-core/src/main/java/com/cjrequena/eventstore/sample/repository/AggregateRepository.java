@@ -13,7 +13,7 @@ import java.util.UUID;
 
 @Repository
 @Transactional
-public interface AggregateRepository extends CrudRepository<AggregateEntity, UUID> {
+public interface AggregateRepository extends CrudRepository<AggregateEntity, UUID>, AggregateRepositoryCustom {
 
   // Native SQL query to insert if not exists (using PostgreSQL's ON CONFLICT DO NOTHING)
   @Modifying
@@ -40,6 +40,13 @@ public interface AggregateRepository extends CrudRepository<AggregateEntity, UUI
     @Param("newAggregateVersion") long newAggregateVersion
   );
 
+  @Query(value = """
+    SELECT aggregate_version
+      FROM es_aggregate
+     WHERE id = :aggregateId
+    """, nativeQuery = true)
+  Optional<Long> retrieveAggregateVersion(@Param("aggregateId") UUID aggregateId);
+
   @Query(value = """ 
     SELECT CASE
     WHEN COUNT(A)> 0 THEN TRUE ELSE FALSE END
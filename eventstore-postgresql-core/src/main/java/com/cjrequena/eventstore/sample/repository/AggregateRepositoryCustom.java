@@ -0,0 +1,67 @@
+package com.cjrequena.eventstore.sample.repository;
+
+import com.cjrequena.eventstore.sample.entity.AggregateSnapshotEntity;
+import com.cjrequena.eventstore.sample.entity.EventEntity;
+import jakarta.annotation.Nullable;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+public interface AggregateRepositoryCustom {
+
+  /**
+   * Appends the events of an aggregate in a single round trip by calling the {@code ES_APPEND_AGGREGATE_EVENTS} database function.
+   * The function creates the aggregate if it does not exist, verifies that its version matches {@code expectedAggregateVersion},
+   * bumps it to {@code newAggregateVersion}, and inserts the optional snapshot and the events.
+   *
+   * @param aggregateId the unique identifier of the aggregate.
+   * @param aggregateType the aggregate type.
+   * @param expectedAggregateVersion the version the aggregate must have in the database for the append to succeed.
+   * @param newAggregateVersion the version of the aggregate once the events are appended.
+   * @param eventEntities the events to append. Entities without an id get a random UUID assigned.
+   * @param aggregateSnapshotEntity the snapshot of the aggregate at {@code newAggregateVersion}, or null if no snapshot must be taken.
+   *                                Only its binary state and schema fingerprint are used.
+   *
+   * @return the appended events with their generated offsets populated, or an empty {@link Optional} if the aggregate version in the
+   *         database does not match {@code expectedAggregateVersion}.
+   */
+  Optional<List<EventEntity>> appendAggregateEvents(
+    UUID aggregateId,
+    String aggregateType,
+    long expectedAggregateVersion,
+    long newAggregateVersion,
+    List<EventEntity> eventEntities,
+    @Nullable AggregateSnapshotEntity aggregateSnapshotEntity
+  );
+
+  /**
+   * Streams the latest snapshot of an aggregate taken with the given schema fingerprint, followed by all the events appended after it,
+   * from a single query. When there is no such snapshot every event of the aggregate is streamed. Rows are read through a server-side
+   * cursor {@code fetchSize} at a time, which needs an open transaction.
+   *
+   * @param aggregateId the unique identifier of the aggregate.
+   * @param schemaFingerprint the fingerprint of the current aggregate schema, see {@code AggregateSnapshotCodec}.
+   * @param fetchSize the number of rows fetched per round trip.
+   * @param snapshotConsumer receives the snapshot, if any, before any event.
+   * @param eventConsumer receives the events after the snapshot, ordered by {@code aggregate_version}.
+   */
+  void streamAggregateSnapshotAndEvents(
+    UUID aggregateId,
+    String schemaFingerprint,
+    int fetchSize,
+    Consumer<AggregateSnapshotEntity> snapshotConsumer,
+    Consumer<EventEntity> eventConsumer
+  );
+
+  /**
+   * Streams the ID and type of every aggregate. Rows are read through a server-side cursor {@code fetchSize} at a time, which needs an
+   * open transaction.
+   *
+   * @param fetchSize the number of rows fetched per round trip.
+   * @param aggregateConsumer receives the ID and the type of each aggregate.
+   */
+  void streamAggregateIds(int fetchSize, BiConsumer<UUID, String> aggregateConsumer);
+}
@@ -0,0 +1,201 @@
+package com.cjrequena.eventstore.sample.repository;
+
+import com.cjrequena.eventstore.sample.common.util.JsonUtil;
+import com.cjrequena.eventstore.sample.entity.AggregateSnapshotEntity;
+import com.cjrequena.eventstore.sample.entity.EventEntity;
+import jakarta.annotation.Nullable;
+import lombok.SneakyThrows;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+public class AggregateRepositoryCustomImpl implements AggregateRepositoryCustom {
+
+  // SQLSTATE raised by ES_APPEND_AGGREGATE_EVENTS when the expected aggregate version does not match.
+  private static final String OPTIMISTIC_CONCURRENCY_CONFLICT_SQL_STATE = "ES409";
+
+  private static final String APPEND_AGGREGATE_EVENTS = """
+    SELECT id, offset_id, offset_txid, offset_date_time
+      FROM ES_APPEND_AGGREGATE_EVENTS(?, ?, ?, ?, ?::json, ?, ?)
+    """;
+
+  // The snapshot row, if any, comes first. Columns that only exist on one side of the union are null on the other.
+  private static final String STREAM_AGGREGATE_SNAPSHOT_AND_EVENTS = """
+    WITH snapshot AS (
+      SELECT id, aggregate_id, aggregate_version, aggregate_type, data, data_binary, schema_fingerprint, creation_date
+        FROM es_aggregate_snapshot
+       WHERE aggregate_id = ?
+         AND schema_fingerprint = ?
+       ORDER BY aggregate_version DESC
+       LIMIT 1
+    )
+    SELECT TRUE AS is_snapshot,
+           id,
+           aggregate_id,
+           aggregate_version,
+           aggregate_type,
+           schema_fingerprint,
+           NULL::text AS event_type,
+           NULL::smallint AS event_type_code,
+           NULL::int AS event_revision,
+           NULL::text AS data_content_type,
+           data::text AS data,
+           data_binary,
+           NULL::text AS data_base64,
+           NULL::bigint AS offset_id,
+           NULL::text AS offset_txid,
+           creation_date AS offset_date_time,
+           NULL::text AS extension
+      FROM snapshot
+    UNION ALL
+    SELECT FALSE,
+           id,
+           aggregate_id,
+           aggregate_version,
+           NULL,
+           NULL,
+           event_type,
+           event_type_code,
+           event_revision,
+           data_content_type,
+           data::text,
+           data_binary,
+           data_base64,
+           offset_id,
+           offset_txid::text,
+           offset_date_time,
+           extension::text
+      FROM es_event
+     WHERE aggregate_id = ?
+       AND aggregate_version > COALESCE((SELECT aggregate_version FROM snapshot), 0)
+     ORDER BY is_snapshot DESC, aggregate_version ASC
+    """;
+
+  private static final String STREAM_AGGREGATE_IDS = """
+    SELECT id, aggregate_type
+      FROM es_aggregate
+    """;
+
+  private final JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  public AggregateRepositoryCustomImpl(@Qualifier("jdbcTemplateEventStore") JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public Optional<List<EventEntity>> appendAggregateEvents(
+    UUID aggregateId,
+    String aggregateType,
+    long expectedAggregateVersion,
+    long newAggregateVersion,
+    List<EventEntity> eventEntities,
+    @Nullable AggregateSnapshotEntity aggregateSnapshotEntity) {
+
+    Map<UUID, EventEntity> eventEntitiesById = new HashMap<>(eventEntities.size() * 2);
+    for (EventEntity eventEntity : eventEntities) {
+      if (eventEntity.getId() == null) {
+        eventEntity.setId(UUID.randomUUID());
+      }
+      eventEntitiesById.put(eventEntity.getId(), eventEntity);
+    }
+    String events = toJson(eventEntities);
+
+    try {
+      this.jdbcTemplate.query(APPEND_AGGREGATE_EVENTS, preparedStatement -> {
+        preparedStatement.setObject(1, aggregateId);
+        preparedStatement.setString(2, aggregateType);
+        preparedStatement.setLong(3, expectedAggregateVersion);
+        preparedStatement.setLong(4, newAggregateVersion);
+        preparedStatement.setString(5, events);
+        preparedStatement.setBytes(6, aggregateSnapshotEntity != null ? aggregateSnapshotEntity.getDataBinary() : null);
+        preparedStatement.setString(7, aggregateSnapshotEntity != null ? aggregateSnapshotEntity.getSchemaFingerprint() : null);
+      }, resultSet -> {
+        EventEntity eventEntity = eventEntitiesById.get(resultSet.getObject("id", UUID.class));
+        eventEntity.setOffsetId(resultSet.getLong("offset_id"));
+        eventEntity.setOffsetTxId(Long.parseLong(resultSet.getString("offset_txid")));
+        eventEntity.setTime(resultSet.getObject("offset_date_time", OffsetDateTime.class));
+      });
+    } catch (DataAccessException ex) {
+      if (ex.getMostSpecificCause() instanceof SQLException sqlException
+        && OPTIMISTIC_CONCURRENCY_CONFLICT_SQL_STATE.equals(sqlException.getSQLState())) {
+        return Optional.empty();
+      }
+      throw ex;
+    }
+    return Optional.of(eventEntities);
+  }
+
+  @Override
+  public void streamAggregateSnapshotAndEvents(
+    UUID aggregateId,
+    String schemaFingerprint,
+    int fetchSize,
+    Consumer<AggregateSnapshotEntity> snapshotConsumer,
+    Consumer<EventEntity> eventConsumer) {
+    this.jdbcTemplate.query(connection -> {
+      PreparedStatement preparedStatement = connection.prepareStatement(
+        STREAM_AGGREGATE_SNAPSHOT_AND_EVENTS, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      preparedStatement.setFetchSize(fetchSize);
+      preparedStatement.setObject(1, aggregateId);
+      preparedStatement.setString(2, schemaFingerprint);
+      preparedStatement.setObject(3, aggregateId);
+      return preparedStatement;
+    }, (RowCallbackHandler) resultSet -> {
+      if (!resultSet.getBoolean("is_snapshot")) {
+        eventConsumer.accept(EventRepositoryCustomImpl.mapEventEntity(resultSet));
+        return;
+      }
+      snapshotConsumer.accept(AggregateSnapshotEntity.builder()
+        .id(resultSet.getObject("id", UUID.class))
+        .aggregateId(resultSet.getObject("aggregate_id", UUID.class))
+        .aggregateVersion(resultSet.getLong("aggregate_version"))
+        .aggregateType(resultSet.getString("aggregate_type"))
+        .data(resultSet.getString("data"))
+        .dataBinary(resultSet.getBytes("data_binary"))
+        .schemaFingerprint(resultSet.getString("schema_fingerprint"))
+        .creationDate(resultSet.getObject("offset_date_time", OffsetDateTime.class))
+        .build());
+    });
+  }
+
+  @Override
+  public void streamAggregateIds(int fetchSize, BiConsumer<UUID, String> aggregateConsumer) {
+    this.jdbcTemplate.query(connection -> {
+      PreparedStatement preparedStatement = connection.prepareStatement(STREAM_AGGREGATE_IDS, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      preparedStatement.setFetchSize(fetchSize);
+      return preparedStatement;
+    }, (RowCallbackHandler) resultSet -> aggregateConsumer.accept(resultSet.getObject("id", UUID.class), resultSet.getString("aggregate_type")));
+  }
+
+  @SneakyThrows
+  private static String toJson(List<EventEntity> eventEntities) {
+    List<Map<String, Object>> events = new ArrayList<>(eventEntities.size());
+    for (EventEntity eventEntity : eventEntities) {
+      Map<String, Object> event = new LinkedHashMap<>();
+      event.put("id", eventEntity.getId());
+      event.put("aggregate_version", eventEntity.getAggregateVersion());
+      event.put("event_type", eventEntity.getEventType());
+      event.put("event_type_code", eventEntity.getEventTypeCode());
+      event.put("event_revision", eventEntity.getEventRevision());
+      event.put("data_content_type", eventEntity.getDataContentType());
+      event.put("data", eventEntity.getData());
+      // Serialized as a Base64 string, decoded back to BYTEA by the database function.
+      event.put("data_binary", eventEntity.getDataBinary());
+      event.put("data_base64", eventEntity.getDataBase64());
+      event.put("extension", eventEntity.getExtension());
+      events.add(event);
+    }
+    return JsonUtil.objectToJsonString(events);
+  }
+}
@@ -8,21 +8,41 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.UUID;
 
 @Repository
 @Transactional
-public interface AggregateSnapshotRepository extends CrudRepository<AggregateSnapshotEntity, UUID> {
+public interface AggregateSnapshotRepository extends CrudRepository<AggregateSnapshotEntity, UUID>, AggregateSnapshotRepositoryCustom {
 
   @Query(value = """
     SELECT *
       FROM es_aggregate_snapshot
      WHERE aggregate_id = :aggregateId
+       AND schema_fingerprint = :schemaFingerprint
        AND (:aggregateVersion IS NULL OR aggregate_version <= :aggregateVersion)
      ORDER BY aggregate_version DESC
      LIMIT 1
     """, nativeQuery = true)
-  AggregateSnapshotEntity retrieveAggregateSnapshot(@Param("aggregateId") UUID aggregateId, @Param("aggregateVersion") @Nullable Long aggregateVersion);
+  AggregateSnapshotEntity retrieveAggregateSnapshot(
+    @Param("aggregateId") UUID aggregateId,
+    @Param("aggregateVersion") @Nullable Long aggregateVersion,
+    @Param("schemaFingerprint") String schemaFingerprint);
+
+  /**
+   * Retrieves, in a single query, the latest snapshot taken with the given schema fingerprint of each of the given aggregates. Aggregates
+   * without such a snapshot are missing from the result.
+   */
+  @Query(value = """
+    SELECT DISTINCT ON (aggregate_id) *
+      FROM es_aggregate_snapshot
+     WHERE aggregate_id IN :aggregateIds
+       AND schema_fingerprint = :schemaFingerprint
+     ORDER BY aggregate_id, aggregate_version DESC
+    """, nativeQuery = true)
+  List<AggregateSnapshotEntity> retrieveLatestAggregateSnapshots(
+    @Param("aggregateIds") List<UUID> aggregateIds,
+    @Param("schemaFingerprint") String schemaFingerprint);
 
   // Native query to fetch the aggregate snapshot with a limit of 1
 //  @Query(value = """
@@ -0,0 +1,37 @@
+package com.cjrequena.eventstore.sample.repository;
+
+import com.cjrequena.eventstore.sample.entity.AggregateSnapshotEntity;
+import jakarta.annotation.Nullable;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public interface AggregateSnapshotRepositoryCustom {
+
+  /**
+   * Inserts the given snapshots with a single JDBC batch. Snapshots that already exist for the same aggregate id and version are skipped.
+   *
+   * @param aggregateSnapshotEntities the snapshots to insert.
+   * @return the number of snapshots actually inserted.
+   */
+  int saveAggregateSnapshots(List<AggregateSnapshotEntity> aggregateSnapshotEntities);
+
+  /**
+   * Deletes one batch of snapshots of the given aggregate type that are beyond its retention. The latest snapshot of every aggregate is
+   * always kept. Only the aggregates from {@code fromAggregateId} on, in ascending ID order, are examined, and among them only those with
+   * more than one snapshot and either more than {@code keepLast} snapshots or an expired one, so a batch never ranks the whole type.
+   *
+   * @param aggregateType the aggregate type.
+   * @param fromAggregateId the aggregate ID the batch starts from, the nil UUID for the first batch.
+   * @param keepLast the number of most recent snapshots to keep per aggregate, 0 to keep them all.
+   * @param createdBefore snapshots created before this instant are deleted, or null to ignore their age.
+   * @param batchSize the maximum number of snapshots to delete.
+   * @return the number of snapshots deleted, the size of their rows and the greatest aggregate ID among them, where the next batch starts.
+   */
+  SnapshotCompactionResult deleteExpiredAggregateSnapshots(String aggregateType, UUID fromAggregateId, int keepLast,
+    @Nullable OffsetDateTime createdBefore, int batchSize);
+
+  record SnapshotCompactionResult(long rows, long bytes, @Nullable UUID lastAggregateId) {
+  }
+}
@@ -0,0 +1,95 @@
+package com.cjrequena.eventstore.sample.repository;
+
+import com.cjrequena.eventstore.sample.entity.AggregateSnapshotEntity;
+import jakarta.annotation.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+public class AggregateSnapshotRepositoryCustomImpl implements AggregateSnapshotRepositoryCustom {
+
+  private static final String INSERT_SNAPSHOT = """
+    INSERT INTO es_aggregate_snapshot (aggregate_id, aggregate_version, aggregate_type, data_binary, schema_fingerprint)
+    VALUES (?, ?, ?, ?, ?)
+    ON CONFLICT (aggregate_id, aggregate_version) DO NOTHING
+    """;
+
+  // Walks the aggregates of the type from a cursor and picks the next ones holding snapshots beyond the retention, so that only their
+  // snapshots are ranked from the newest. A batch of those beyond the retention is locked, skipping rows locked by a concurrent
+  // compactor, and deleted; the count, the on-disk size and the last aggregate of the deleted rows are reported. The creation date
+  // cutoff is cast because it is bound as an untyped null when there is no age limit.
+  private static final String DELETE_EXPIRED_SNAPSHOTS = """
+    WITH candidates AS (
+      SELECT aggregate_id
+        FROM es_aggregate_snapshot
+       WHERE aggregate_type = ?
+         AND aggregate_id >= ?
+       GROUP BY aggregate_id
+      HAVING COUNT(*) > 1
+         AND ((? > 0 AND COUNT(*) > ?) OR MIN(creation_date) < ?::timestamptz)
+       ORDER BY aggregate_id
+       LIMIT ?
+    ), ranked AS (
+      SELECT snapshot.id,
+             snapshot.aggregate_id,
+             snapshot.creation_date,
+             ROW_NUMBER() OVER (PARTITION BY snapshot.aggregate_id ORDER BY snapshot.aggregate_version DESC) AS rank
+        FROM es_aggregate_snapshot snapshot
+        JOIN candidates ON candidates.aggregate_id = snapshot.aggregate_id
+       WHERE snapshot.aggregate_type = ?
+    ), expired AS (
+      SELECT snapshot.id
+        FROM es_aggregate_snapshot snapshot
+        JOIN ranked ON ranked.id = snapshot.id
+       WHERE ranked.rank > 1
+         AND ((? > 0 AND ranked.rank > ?) OR ranked.creation_date < ?::timestamptz)
+       ORDER BY ranked.aggregate_id
+       LIMIT ?
+         FOR UPDATE OF snapshot SKIP LOCKED
+    ), deleted AS (
+      DELETE FROM es_aggregate_snapshot snapshot
+       USING expired
+       WHERE snapshot.id = expired.id
+      RETURNING snapshot.aggregate_id, pg_column_size(snapshot.*) AS bytes
+    )
+    SELECT COUNT(*) AS rows,
+           COALESCE(SUM(bytes), 0) AS bytes,
+           (SELECT aggregate_id FROM deleted ORDER BY aggregate_id DESC LIMIT 1) AS last_aggregate_id
+      FROM deleted
+    """;
+
+  private final JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  public AggregateSnapshotRepositoryCustomImpl(@Qualifier("jdbcTemplateEventStore") JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public int saveAggregateSnapshots(List<AggregateSnapshotEntity> aggregateSnapshotEntities) {
+    int[][] rowsInserted = this.jdbcTemplate.batchUpdate(INSERT_SNAPSHOT, aggregateSnapshotEntities, aggregateSnapshotEntities.size(),
+      (preparedStatement, aggregateSnapshotEntity) -> {
+        preparedStatement.setObject(1, aggregateSnapshotEntity.getAggregateId());
+        preparedStatement.setLong(2, aggregateSnapshotEntity.getAggregateVersion());
+        preparedStatement.setString(3, aggregateSnapshotEntity.getAggregateType());
+        preparedStatement.setBytes(4, aggregateSnapshotEntity.getDataBinary());
+        preparedStatement.setString(5, aggregateSnapshotEntity.getSchemaFingerprint());
+      });
+    return Arrays.stream(rowsInserted).flatMapToInt(Arrays::stream).map(rows -> Math.max(rows, 0)).sum();
+  }
+
+  @Override
+  public SnapshotCompactionResult deleteExpiredAggregateSnapshots(String aggregateType, UUID fromAggregateId, int keepLast,
+    @Nullable OffsetDateTime createdBefore, int batchSize) {
+    return this.jdbcTemplate.queryForObject(DELETE_EXPIRED_SNAPSHOTS,
+      (resultSet, rowNum) -> new SnapshotCompactionResult(resultSet.getLong("rows"), resultSet.getLong("bytes"),
+        resultSet.getObject("last_aggregate_id", UUID.class)),
+      aggregateType, fromAggregateId, keepLast, keepLast, createdBefore, batchSize,
+      aggregateType, keepLast, keepLast, createdBefore, batchSize);
+  }
+}
@@ -3,6 +3,7 @@ package com.cjrequena.eventstore.sample.repository;
 import com.cjrequena.eventstore.sample.entity.AbstractEventEntity;
 import com.cjrequena.eventstore.sample.entity.EventEntity;
 import jakarta.validation.constraints.NotNull;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
@@ -14,7 +15,7 @@ import java.util.UUID;
 
 @Repository
 @Transactional
-public interface EventRepository extends CrudRepository<AbstractEventEntity, UUID> {
+public interface EventRepository extends CrudRepository<AbstractEventEntity, UUID>, EventRepositoryCustom {
 
   /**
    * Retrieves a list of {@link EventEntity} instances associated with a specific aggregate ID.
@@ -63,8 +64,11 @@ public interface EventRepository extends CrudRepository<AbstractEventEntity, UUI
         event.aggregate_id, 
         event.aggregate_version, 
         event.event_type, 
+        event.event_type_code, 
+        event.event_revision, 
         event.data_content_type, 
         event.data, 
+        event.data_binary, 
         event.data_base64, 
         event.offset_date_time, 
         event.extension
@@ -73,12 +77,35 @@ public interface EventRepository extends CrudRepository<AbstractEventEntity, UUI
     WHERE aggregate.aggregate_type = :aggregateType
       AND (event.offset_txid, event.offset_id) > (:offsetTxId ::text::xid8, :offsetId)
       AND event.offset_txid < pg_snapshot_xmin(pg_current_snapshot())
+      AND (:partitionCount = 1 OR ES_SUBSCRIPTION_PARTITION(event.aggregate_id, :partitionCount) = :partitionNumber)
     ORDER BY event.offset_txid ASC, event.offset_id ASC
+    LIMIT :limit
     """, nativeQuery = true)
   List<EventEntity> retrieveEventsByAggregateTypeAfterOffsetTxIdAndOffsetId(
     @Param("aggregateType") @NotNull String aggregateType,
     @Param("offsetTxId") @NotNull Long offsetTxId,
-    @Param("offsetId") @NotNull Long offsetId);
+    @Param("offsetId") @NotNull Long offsetId,
+    @Param("partitionNumber") int partitionNumber,
+    @Param("partitionCount") int partitionCount,
+    @Param("limit") int limit);
+
+  /**
+   * Tells whether committed events of the given aggregate type are held back from
+   * {@link #retrieveEventsByAggregateTypeAfterOffsetTxIdAndOffsetId} because an older transaction is still in progress.
+   */
+  @Query(value = """
+    SELECT EXISTS (
+        SELECT 1
+        FROM ES_EVENT event
+        JOIN ES_AGGREGATE aggregate on aggregate.id = event.aggregate_id
+        WHERE aggregate.aggregate_type = :aggregateType
+          AND event.offset_txid >= pg_snapshot_xmin(pg_current_snapshot())
+          AND (:partitionCount = 1 OR ES_SUBSCRIPTION_PARTITION(event.aggregate_id, :partitionCount) = :partitionNumber))
+    """, nativeQuery = true)
+  boolean existsEventsByAggregateTypeBeyondSnapshotXmin(
+    @Param("aggregateType") @NotNull String aggregateType,
+    @Param("partitionNumber") int partitionNumber,
+    @Param("partitionCount") int partitionCount);
 
   @Query(value = """
     SELECT *
@@ -90,8 +117,11 @@ public interface EventRepository extends CrudRepository<AbstractEventEntity, UUI
             event.aggregate_id, 
             event.aggregate_version, 
             event.event_type, 
+            event.event_type_code, 
+            event.event_revision, 
             event.data_content_type, 
             event.data, 
+            event.data_binary, 
             event.data_base64, 
             event.offset_date_time, 
             event.extension,
@@ -121,8 +151,11 @@ public interface EventRepository extends CrudRepository<AbstractEventEntity, UUI
             event.aggregate_id, 
             event.aggregate_version, 
             event.event_type, 
+            event.event_type_code, 
+            event.event_revision, 
             event.data_content_type, 
             event.data, 
+            event.data_binary, 
             event.data_base64, 
             event.offset_date_time, 
             event.extension,
@@ -139,5 +172,80 @@ public interface EventRepository extends CrudRepository<AbstractEventEntity, UUI
     @Param("aggregateType") @NotNull String aggregateType
   );
 
+  /**
+   * Retrieves the next aggregates whose latest snapshot may cover events still in ES_EVENT, in ascending ID order after the given one.
+   *
+   * @param afterAggregateId the ID the page starts after, the nil UUID for the first page.
+   * @param limit the maximum number of aggregate IDs to return.
+   * @return the aggregate IDs.
+   */
+  @Query(value = """
+    SELECT candidate.aggregate_id
+      FROM ES_EVENT_ARCHIVE_CANDIDATE candidate
+     WHERE candidate.aggregate_id > :afterAggregateId
+     ORDER BY candidate.aggregate_id ASC
+     LIMIT :limit
+    """, nativeQuery = true)
+  List<UUID> retrieveArchiveCandidates(@Param("afterAggregateId") @NotNull UUID afterAggregateId, @Param("limit") int limit);
+
+  /**
+   * Retrieves the events of the given aggregates that can be moved to the archive: events covered by the latest snapshot of their
+   * aggregate and already consumed by every subscription of the aggregate type, that is by the partition of each subscription the
+   * aggregate belongs to. Subscriptions do not read the archive, so a registered subscription holds events back however long it has been
+   * stopped. Only a prefix of the stream of each aggregate is returned, up to its first unconsumed event, ordered by aggregate and
+   * version.
+   *
+   * @param aggregateIds the IDs of the candidate aggregates.
+   * @param limit the maximum number of events to return.
+   * @return the archivable events.
+   */
+  @Query(value = """
+    SELECT event.*
+      FROM ES_EVENT_ARCHIVE_CANDIDATE candidate
+      JOIN ES_AGGREGATE aggregate ON aggregate.id = candidate.aggregate_id
+      LEFT JOIN LATERAL (SELECT subscription.offset_txid, subscription.offset_id
+                           FROM ES_EVENT_SUBSCRIPTION subscription
+                          WHERE (subscription.aggregate_types IS NULL OR aggregate.aggregate_type = ANY (subscription.aggregate_types))
+                            AND (subscription.partition_count = 1
+                                 OR ES_SUBSCRIPTION_PARTITION(candidate.aggregate_id, subscription.partition_count) = subscription.partition_number)
+                          ORDER BY subscription.offset_txid ASC, subscription.offset_id ASC
+                          LIMIT 1) slowest ON TRUE
+      LEFT JOIN LATERAL (SELECT MIN(pending.aggregate_version) AS aggregate_version
+                           FROM ES_EVENT pending
+                          WHERE pending.aggregate_id = candidate.aggregate_id
+                            AND pending.aggregate_version <= candidate.snapshot_version
+                            AND (pending.offset_txid, pending.offset_id) > (slowest.offset_txid, slowest.offset_id)) unconsumed ON TRUE
+      JOIN ES_EVENT event ON event.aggregate_id = candidate.aggregate_id
+     WHERE candidate.aggregate_id IN :aggregateIds
+       AND event.aggregate_version <= candidate.snapshot_version
+       AND (unconsumed.aggregate_version IS NULL OR event.aggregate_version < unconsumed.aggregate_version)
+     ORDER BY event.aggregate_id ASC, event.aggregate_version ASC
+     LIMIT :limit
+    """, nativeQuery = true)
+  List<EventEntity> retrieveArchivableEvents(
+    @Param("aggregateIds") @NotNull List<UUID> aggregateIds,
+    @Param("limit") int limit);
+
+  /**
+   * Removes the given aggregates from the archive candidates once ES_EVENT holds no event their latest snapshot covers. A snapshot
+   * written meanwhile adds them back.
+   */
+  @Modifying
+  @Query(value = """
+    DELETE FROM ES_EVENT_ARCHIVE_CANDIDATE candidate
+     WHERE candidate.aggregate_id IN :aggregateIds
+       AND NOT EXISTS (SELECT 1
+                         FROM ES_EVENT event
+                        WHERE event.aggregate_id = candidate.aggregate_id
+                          AND event.aggregate_version <= candidate.snapshot_version)
+    """, nativeQuery = true)
+  int deleteArchivedCandidates(@Param("aggregateIds") @NotNull List<UUID> aggregateIds);
+
+  @Modifying
+  @Query(value = """
+    DELETE FROM ES_EVENT
+     WHERE id IN :ids
+    """, nativeQuery = true)
+  int deleteEventsByIds(@Param("ids") @NotNull List<UUID> ids);
 
 }
@@ -0,0 +1,55 @@
+package com.cjrequena.eventstore.sample.repository;
+
+import com.cjrequena.eventstore.sample.entity.EventEntity;
+import jakarta.annotation.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+public interface EventRepositoryCustom {
+
+  /**
+   * Appends the given {@link EventEntity} instances to the `es_event` table in as few round trips as possible.
+   * The events are written with multi-row {@code INSERT ... RETURNING} statements, so an aggregate that emits
+   * several events in a single command pays one round trip instead of one per event.
+   * <p>
+   * The values generated by the database ({@code offset_id}, {@code offset_txid} and {@code offset_date_time})
+   * are copied back into the given entities, which are returned in the same order they were received.
+   *
+   * @param eventEntities the events to append. Entities without an id get a random UUID assigned.
+   * @return the appended events with their generated offsets populated.
+   */
+  List<EventEntity> appendEvents(List<EventEntity> eventEntities);
+
+  /**
+   * Streams the events of an aggregate, ordered by {@code aggregate_version}, to the given consumer as they are fetched. Rows are read
+   * through a server-side cursor {@code fetchSize} at a time, so only one fetch is held in memory however long the stream is. The cursor
+   * needs an open transaction; without one the driver fetches every row at once.
+   *
+   * @param aggregateId the unique identifier of the aggregate.
+   * @param fromAggregateVersion only events with a greater version are streamed, or all of them if null.
+   * @param toAggregateVersion only events with a lower or equal version are streamed, or all of them if null.
+   * @param fetchSize the number of rows fetched per round trip.
+   * @param eventConsumer receives each event.
+   */
+  void streamEventsByAggregateId(
+    UUID aggregateId,
+    @Nullable Long fromAggregateVersion,
+    @Nullable Long toAggregateVersion,
+    int fetchSize,
+    Consumer<EventEntity> eventConsumer
+  );
+
+  /**
+   * Streams the events of several aggregates with a single query, each of them from its own version. The events are grouped by
+   * {@code aggregate_id} and, within an aggregate, ordered by {@code aggregate_version}. Rows are read through a server-side cursor
+   * {@code fetchSize} at a time, which needs an open transaction.
+   *
+   * @param fromAggregateVersions the version after which the events of each aggregate are streamed, 0 for all of them.
+   * @param fetchSize the number of rows fetched per round trip.
+   * @param eventConsumer receives each event.
+   */
+  void streamEventsByAggregateIds(Map<UUID, Long> fromAggregateVersions, int fetchSize, Consumer<EventEntity> eventConsumer);
+}
@@ -0,0 +1,169 @@
+package com.cjrequena.eventstore.sample.repository;
+
+import com.cjrequena.eventstore.sample.entity.EventEntity;
+import jakarta.annotation.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+
+public class EventRepositoryCustomImpl implements EventRepositoryCustom {
+
+  // Keeps every statement well below the 65535 bind parameters allowed by the PostgreSQL protocol.
+  private static final int MAX_ROWS_PER_STATEMENT = 500;
+
+  private static final String INSERT_EVENTS = """
+    INSERT INTO es_event (id, aggregate_id, aggregate_version, event_type, event_type_code, event_revision, data_content_type, data, data_binary,
+                          data_base64, extension)
+    VALUES %s
+    RETURNING id, offset_id, offset_txid::text, offset_date_time
+    """;
+
+  private static final String INSERT_EVENTS_ROW = "(?, ?, ?, ?, ?, ?, ?, ?::json, ?, ?, ?::json)";
+
+  private static final String RETRIEVE_EVENTS_BY_AGGREGATE_ID = """
+    SELECT id, offset_id, offset_txid::text AS offset_txid, aggregate_id, aggregate_version, event_type, event_type_code, event_revision,
+           data_content_type, data::text AS data, data_binary, data_base64, offset_date_time, extension::text AS extension
+      FROM es_event
+     WHERE aggregate_id = ?
+       AND (?::bigint IS NULL OR aggregate_version > ?)
+       AND (?::bigint IS NULL OR aggregate_version <= ?)
+     ORDER BY aggregate_version ASC
+    """;
+
+  // Pairs every aggregate id with the version its events are read from, so the tails of many aggregates come back in one result set.
+  private static final String RETRIEVE_EVENTS_BY_AGGREGATE_IDS = """
+    SELECT event.id, event.offset_id, event.offset_txid::text AS offset_txid, event.aggregate_id, event.aggregate_version, event.event_type,
+           event.event_type_code, event.event_revision, event.data_content_type, event.data::text AS data, event.data_binary,
+           event.data_base64, event.offset_date_time, event.extension::text AS extension
+      FROM UNNEST(?::uuid[], ?::bigint[]) AS tail(aggregate_id, from_aggregate_version)
+      JOIN es_event event
+        ON event.aggregate_id = tail.aggregate_id
+       AND event.aggregate_version > tail.from_aggregate_version
+     ORDER BY event.aggregate_id, event.aggregate_version ASC
+    """;
+
+  private final JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  public EventRepositoryCustomImpl(@Qualifier("jdbcTemplateEventStore") JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public List<EventEntity> appendEvents(List<EventEntity> eventEntities) {
+    for (int from = 0; from < eventEntities.size(); from += MAX_ROWS_PER_STATEMENT) {
+      appendChunk(eventEntities.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, eventEntities.size())));
+    }
+    return eventEntities;
+  }
+
+  @Override
+  public void streamEventsByAggregateId(
+    UUID aggregateId,
+    @Nullable Long fromAggregateVersion,
+    @Nullable Long toAggregateVersion,
+    int fetchSize,
+    Consumer<EventEntity> eventConsumer) {
+    this.jdbcTemplate.query(connection -> {
+      PreparedStatement preparedStatement = connection.prepareStatement(
+        RETRIEVE_EVENTS_BY_AGGREGATE_ID, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      preparedStatement.setFetchSize(fetchSize);
+      preparedStatement.setObject(1, aggregateId);
+      preparedStatement.setObject(2, fromAggregateVersion, Types.BIGINT);
+      preparedStatement.setObject(3, fromAggregateVersion, Types.BIGINT);
+      preparedStatement.setObject(4, toAggregateVersion, Types.BIGINT);
+      preparedStatement.setObject(5, toAggregateVersion, Types.BIGINT);
+      return preparedStatement;
+    }, (RowCallbackHandler) resultSet -> eventConsumer.accept(mapEventEntity(resultSet)));
+  }
+
+  @Override
+  public void streamEventsByAggregateIds(Map<UUID, Long> fromAggregateVersions, int fetchSize, Consumer<EventEntity> eventConsumer) {
+    if (fromAggregateVersions.isEmpty()) {
+      return;
+    }
+    UUID[] aggregateIds = new UUID[fromAggregateVersions.size()];
+    Long[] fromVersions = new Long[fromAggregateVersions.size()];
+    int index = 0;
+    for (Map.Entry<UUID, Long> fromAggregateVersion : fromAggregateVersions.entrySet()) {
+      aggregateIds[index] = fromAggregateVersion.getKey();
+      fromVersions[index++] = fromAggregateVersion.getValue();
+    }
+    this.jdbcTemplate.query(connection -> {
+      PreparedStatement preparedStatement = connection.prepareStatement(
+        RETRIEVE_EVENTS_BY_AGGREGATE_IDS, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      preparedStatement.setFetchSize(fetchSize);
+      preparedStatement.setArray(1, connection.createArrayOf("uuid", aggregateIds));
+      preparedStatement.setArray(2, connection.createArrayOf("bigint", fromVersions));
+      return preparedStatement;
+    }, (RowCallbackHandler) resultSet -> eventConsumer.accept(mapEventEntity(resultSet)));
+  }
+
+  /**
+   * Maps the current row to an {@link EventEntity}. JSON columns must be selected as text and {@code offset_txid} as its text form.
+   */
+  static EventEntity mapEventEntity(ResultSet resultSet) throws SQLException {
+    EventEntity eventEntity = new EventEntity();
+    eventEntity.setId(resultSet.getObject("id", UUID.class));
+    eventEntity.setOffsetId(resultSet.getLong("offset_id"));
+    eventEntity.setOffsetTxId(Long.parseLong(resultSet.getString("offset_txid")));
+    eventEntity.setAggregateId(resultSet.getObject("aggregate_id", UUID.class));
+    eventEntity.setAggregateVersion(resultSet.getLong("aggregate_version"));
+    eventEntity.setEventType(resultSet.getString("event_type"));
+    short eventTypeCode = resultSet.getShort("event_type_code");
+    eventEntity.setEventTypeCode(resultSet.wasNull() ? null : eventTypeCode);
+    eventEntity.setEventRevision(resultSet.getInt("event_revision"));
+    eventEntity.setDataContentType(resultSet.getString("data_content_type"));
+    eventEntity.setData(resultSet.getString("data"));
+    eventEntity.setDataBinary(resultSet.getBytes("data_binary"));
+    eventEntity.setDataBase64(resultSet.getString("data_base64"));
+    eventEntity.setTime(resultSet.getObject("offset_date_time", OffsetDateTime.class));
+    eventEntity.setExtension(resultSet.getString("extension"));
+    return eventEntity;
+  }
+
+  private void appendChunk(List<EventEntity> chunk) {
+    Map<UUID, EventEntity> eventEntitiesById = new HashMap<>(chunk.size() * 2);
+    for (EventEntity eventEntity : chunk) {
+      if (eventEntity.getId() == null) {
+        eventEntity.setId(UUID.randomUUID());
+      }
+      eventEntitiesById.put(eventEntity.getId(), eventEntity);
+    }
+
+    String sql = INSERT_EVENTS.formatted(String.join(", ", Collections.nCopies(chunk.size(), INSERT_EVENTS_ROW)));
+    this.jdbcTemplate.query(sql, preparedStatement -> bindEvents(preparedStatement, chunk), resultSet -> {
+      // The order of the returned rows is not guaranteed, so the generated values are matched by id.
+      EventEntity eventEntity = eventEntitiesById.get(resultSet.getObject("id", UUID.class));
+      eventEntity.setOffsetId(resultSet.getLong("offset_id"));
+      eventEntity.setOffsetTxId(Long.parseLong(resultSet.getString("offset_txid")));
+      eventEntity.setTime(resultSet.getObject("offset_date_time", OffsetDateTime.class));
+    });
+  }
+
+  private static void bindEvents(PreparedStatement preparedStatement, List<EventEntity> chunk) throws SQLException {
+    int index = 1;
+    for (EventEntity eventEntity : chunk) {
+      preparedStatement.setObject(index++, eventEntity.getId());
+      preparedStatement.setObject(index++, eventEntity.getAggregateId());
+      preparedStatement.setLong(index++, eventEntity.getAggregateVersion());
+      preparedStatement.setString(index++, eventEntity.getEventType());
+      preparedStatement.setObject(index++, eventEntity.getEventTypeCode(), Types.SMALLINT);
+      preparedStatement.setInt(index++, eventEntity.getEventRevision());
+      preparedStatement.setString(index++, eventEntity.getDataContentType());
+      preparedStatement.setString(index++, eventEntity.getData());
+      preparedStatement.setBytes(index++, eventEntity.getDataBinary());
+      preparedStatement.setString(index++, eventEntity.getDataBase64());
+      preparedStatement.setString(index++, eventEntity.getExtension());
+    }
+  }
+}
@@ -15,33 +15,37 @@ import java.util.UUID;
 
 @Repository
 @Transactional
-public interface EventSubscriptionRepository extends CrudRepository<EventSubscriptionEntity, UUID> {
+public interface EventSubscriptionRepository extends CrudRepository<EventSubscriptionEntity, UUID>, EventSubscriptionRepositoryCustom {
 
-  @Modifying
+  /**
+   * Locks the offset of a partition of the subscription for the current transaction, provided the given member holds an unexpired lease
+   * on it. Returns nothing when the partition is locked by another transaction or leased to another member.
+   */
   @Query(value = """
-    INSERT INTO ES_EVENT_SUBSCRIPTION (SUBSCRIPTION_NAME, OFFSET_TXID, OFFSET_ID)
-    VALUES (:subscriptionName, '0'::xid8, 0)
-    ON CONFLICT DO NOTHING
-    """, nativeQuery = true)
-  void registerNewSubscriptionIfAbsent(@Param("subscriptionName") String subscriptionName);
-
-  @Query(value = """
-    SELECT ID, SUBSCRIPTION_NAME, OFFSET_TXID, OFFSET_ID
+    SELECT ID, SUBSCRIPTION_NAME, OFFSET_TXID, OFFSET_ID, PARTITION_NUMBER, PARTITION_COUNT, OWNER, LEASE_EXPIRES_AT
       FROM ES_EVENT_SUBSCRIPTION
      WHERE SUBSCRIPTION_NAME = :subscriptionName
+       AND PARTITION_NUMBER = :partitionNumber
+       AND OWNER = :owner
+       AND LEASE_EXPIRES_AT > NOW()
        FOR UPDATE SKIP LOCKED
     """,
     nativeQuery = true)
-  Optional<EventSubscriptionEntity> retrieveEventSubscriptionAndLockSubscriptionOffset(@Param("subscriptionName") @Nonnull String subscriptionName);
+  Optional<EventSubscriptionEntity> retrieveEventSubscriptionAndLockSubscriptionOffset(
+    @Param("subscriptionName") @Nonnull String subscriptionName,
+    @Param("partitionNumber") int partitionNumber,
+    @Param("owner") @Nonnull String owner);
 
   @Modifying
   @Query(value = """
     UPDATE ES_EVENT_SUBSCRIPTION
     SET OFFSET_TXID = :offsetTxId ::text::xid8, OFFSET_ID = :offsetId
     WHERE SUBSCRIPTION_NAME = :subscriptionName
+      AND PARTITION_NUMBER = :partitionNumber
     """, nativeQuery = true)
   int updateEventSubscription(
     @Param("subscriptionName") @Nonnull String subscriptionName,
+    @Param("partitionNumber") int partitionNumber,
     @Param("offsetTxId") @Nonnull Long offsetTxId,
     @Param("offsetId") @Nonnull Long offsetId
   );
@@ -0,0 +1,51 @@
+package com.cjrequena.eventstore.sample.repository;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+public interface EventSubscriptionRepositoryCustom {
+
+  /**
+   * Makes sure the subscription has exactly {@code partitionCount} partitions, numbered from 0. New subscriptions start from the
+   * beginning of the stream. When the subscription was split into another number of partitions, the events of an aggregate may move to
+   * another partition, so every partition is reset to the offset of the partition that was furthest behind and their leases are dropped:
+   * some events are handled again, none is skipped. Also records the aggregate types the subscription consumes, so that the archiver
+   * does not wait for it on events of other types.
+   *
+   * @param subscriptionName the name of the subscription.
+   * @param partitionCount the number of partitions.
+   * @param aggregateTypes the aggregate types consumed by the subscription, or null for every type.
+   * @return true if partitions were created or reset.
+   */
+  boolean registerSubscriptionPartitions(String subscriptionName, int partitionCount, Collection<String> aggregateTypes);
+
+  /**
+   * Records a heartbeat of the given member and removes the members whose latest heartbeat is older than {@code memberTimeout}.
+   *
+   * @return the IDs of the live members of the subscription, sorted.
+   */
+  List<String> heartbeatSubscriptionMember(String subscriptionName, String memberId, Duration memberTimeout);
+
+  /**
+   * Takes or renews the lease of the given member on the given partitions, for those that are free, already its own or whose lease has
+   * expired, and gives up the leases it holds on any other partition.
+   *
+   * @return the partitions leased to the member.
+   */
+  Set<Integer> acquireSubscriptionPartitions(String subscriptionName, String memberId, Collection<Integer> partitionNumbers, Duration leaseDuration);
+
+  /**
+   * Gives up every lease held by the given member and removes it from the members of the subscription.
+   */
+  void leaveSubscription(String subscriptionName, String memberId);
+
+  /**
+   * Removes every partition and member of the subscription. Until then the subscription holds back archiving of the events it has not
+   * consumed, however long it has been stopped.
+   *
+   * @return true if the subscription was registered.
+   */
+  boolean deregisterSubscription(String subscriptionName);
+}
@@ -0,0 +1,205 @@
+package com.cjrequena.eventstore.sample.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class EventSubscriptionRepositoryCustomImpl implements EventSubscriptionRepositoryCustom {
+
+  // Serializes the registrations of a subscription, including the first one when there is no row to lock yet.
+  private static final String LOCK_SUBSCRIPTION = "SELECT PG_ADVISORY_XACT_LOCK(HASHTEXTEXTENDED(?, 0))";
+
+  private static final String RETRIEVE_PARTITION_COUNTS = """
+    SELECT PARTITION_COUNT
+      FROM ES_EVENT_SUBSCRIPTION
+     WHERE SUBSCRIPTION_NAME = ?
+    """;
+
+  private static final String RESET_PARTITIONS = """
+    WITH SLOWEST AS (
+      SELECT OFFSET_TXID, OFFSET_ID
+        FROM ES_EVENT_SUBSCRIPTION
+       WHERE SUBSCRIPTION_NAME = ?
+       ORDER BY OFFSET_TXID ASC, OFFSET_ID ASC
+       LIMIT 1
+    )
+    UPDATE ES_EVENT_SUBSCRIPTION SUBSCRIPTION
+       SET OFFSET_TXID = SLOWEST.OFFSET_TXID,
+           OFFSET_ID = SLOWEST.OFFSET_ID,
+           PARTITION_COUNT = ?,
+           OWNER = NULL,
+           LEASE_EXPIRES_AT = NULL
+      FROM SLOWEST
+     WHERE SUBSCRIPTION.SUBSCRIPTION_NAME = ?
+    """;
+
+  private static final String DELETE_EXTRA_PARTITIONS = """
+    DELETE FROM ES_EVENT_SUBSCRIPTION
+     WHERE SUBSCRIPTION_NAME = ?
+       AND PARTITION_NUMBER >= ?
+    """;
+
+  // Missing partitions start from the slowest existing one, all of them are at the same offset after a reset, or from the beginning of
+  // the stream.
+  private static final String INSERT_MISSING_PARTITIONS = """
+    INSERT INTO ES_EVENT_SUBSCRIPTION (SUBSCRIPTION_NAME, PARTITION_NUMBER, PARTITION_COUNT, OFFSET_TXID, OFFSET_ID)
+    SELECT ?, PARTITION_NUMBER, ?, COALESCE(SLOWEST.OFFSET_TXID, '0'::xid8), COALESCE(SLOWEST.OFFSET_ID, 0)
+      FROM GENERATE_SERIES(0, ? - 1) AS PARTITION_NUMBER
+      LEFT JOIN (SELECT OFFSET_TXID, OFFSET_ID
+                   FROM ES_EVENT_SUBSCRIPTION
+                  WHERE SUBSCRIPTION_NAME = ?
+                  ORDER BY OFFSET_TXID ASC, OFFSET_ID ASC
+                  LIMIT 1) SLOWEST ON TRUE
+    ON CONFLICT (SUBSCRIPTION_NAME, PARTITION_NUMBER) DO NOTHING
+    """;
+
+  private static final String UPDATE_AGGREGATE_TYPES = """
+    UPDATE ES_EVENT_SUBSCRIPTION
+       SET AGGREGATE_TYPES = ?
+     WHERE SUBSCRIPTION_NAME = ?
+    """;
+
+  private static final String UPSERT_MEMBER = """
+    INSERT INTO ES_EVENT_SUBSCRIPTION_MEMBER (SUBSCRIPTION_NAME, MEMBER_ID, HEARTBEAT_AT)
+    VALUES (?, ?, NOW())
+    ON CONFLICT (SUBSCRIPTION_NAME, MEMBER_ID) DO UPDATE SET HEARTBEAT_AT = NOW()
+    """;
+
+  private static final String DELETE_EXPIRED_MEMBERS = """
+    DELETE FROM ES_EVENT_SUBSCRIPTION_MEMBER
+     WHERE SUBSCRIPTION_NAME = ?
+       AND HEARTBEAT_AT < NOW() - ? * INTERVAL '1 millisecond'
+    """;
+
+  private static final String RETRIEVE_MEMBERS = """
+    SELECT MEMBER_ID
+      FROM ES_EVENT_SUBSCRIPTION_MEMBER
+     WHERE SUBSCRIPTION_NAME = ?
+     ORDER BY MEMBER_ID
+    """;
+
+  private static final String RELEASE_UNASSIGNED_PARTITIONS = """
+    UPDATE ES_EVENT_SUBSCRIPTION
+       SET OWNER = NULL, LEASE_EXPIRES_AT = NULL
+     WHERE SUBSCRIPTION_NAME = ?
+       AND OWNER = ?
+       AND PARTITION_NUMBER <> ALL (?)
+    """;
+
+  private static final String ACQUIRE_PARTITIONS = """
+    UPDATE ES_EVENT_SUBSCRIPTION
+       SET OWNER = ?, LEASE_EXPIRES_AT = NOW() + ? * INTERVAL '1 millisecond'
+     WHERE SUBSCRIPTION_NAME = ?
+       AND PARTITION_NUMBER = ANY (?)
+       AND (OWNER IS NULL OR OWNER = ? OR LEASE_EXPIRES_AT < NOW())
+    RETURNING PARTITION_NUMBER
+    """;
+
+  private static final String RELEASE_PARTITIONS = """
+    UPDATE ES_EVENT_SUBSCRIPTION
+       SET OWNER = NULL, LEASE_EXPIRES_AT = NULL
+     WHERE SUBSCRIPTION_NAME = ?
+       AND OWNER = ?
+    """;
+
+  private static final String DELETE_MEMBER = """
+    DELETE FROM ES_EVENT_SUBSCRIPTION_MEMBER
+     WHERE SUBSCRIPTION_NAME = ?
+       AND MEMBER_ID = ?
+    """;
+
+  private static final String DELETE_SUBSCRIPTION_PARTITIONS = """
+    DELETE FROM ES_EVENT_SUBSCRIPTION
+     WHERE SUBSCRIPTION_NAME = ?
+    """;
+
+  private static final String DELETE_SUBSCRIPTION_MEMBERS = """
+    DELETE FROM ES_EVENT_SUBSCRIPTION_MEMBER
+     WHERE SUBSCRIPTION_NAME = ?
+    """;
+
+  private final JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  public EventSubscriptionRepositoryCustomImpl(@Qualifier("jdbcTemplateEventStore") JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public boolean registerSubscriptionPartitions(String subscriptionName, int partitionCount, Collection<String> aggregateTypes) {
+    this.jdbcTemplate.query(LOCK_SUBSCRIPTION, (RowCallbackHandler) resultSet -> {
+    }, subscriptionName);
+    List<Integer> partitionCounts = this.jdbcTemplate.queryForList(RETRIEVE_PARTITION_COUNTS, Integer.class, subscriptionName);
+    boolean changed = partitionCounts.size() != partitionCount || partitionCounts.stream().anyMatch(count -> count != partitionCount);
+    if (partitionCounts.stream().anyMatch(count -> count != partitionCount)) {
+      this.jdbcTemplate.update(RESET_PARTITIONS, subscriptionName, partitionCount, subscriptionName);
+      this.jdbcTemplate.update(DELETE_EXTRA_PARTITIONS, subscriptionName, partitionCount);
+    }
+    if (changed) {
+      this.jdbcTemplate.update(INSERT_MISSING_PARTITIONS, subscriptionName, partitionCount, partitionCount, subscriptionName);
+    }
+    this.jdbcTemplate.update(connection -> {
+      PreparedStatement preparedStatement = connection.prepareStatement(UPDATE_AGGREGATE_TYPES);
+      preparedStatement.setArray(1, aggregateTypes == null ? null : connection.createArrayOf("text", aggregateTypes.toArray(String[]::new)));
+      preparedStatement.setString(2, subscriptionName);
+      return preparedStatement;
+    });
+    return changed;
+  }
+
+  @Override
+  public List<String> heartbeatSubscriptionMember(String subscriptionName, String memberId, Duration memberTimeout) {
+    this.jdbcTemplate.update(UPSERT_MEMBER, subscriptionName, memberId);
+    this.jdbcTemplate.update(DELETE_EXPIRED_MEMBERS, subscriptionName, memberTimeout.toMillis());
+    return this.jdbcTemplate.queryForList(RETRIEVE_MEMBERS, String.class, subscriptionName);
+  }
+
+  @Override
+  public Set<Integer> acquireSubscriptionPartitions(String subscriptionName, String memberId, Collection<Integer> partitionNumbers,
+    Duration leaseDuration) {
+    Integer[] partitions = partitionNumbers.toArray(Integer[]::new);
+    this.jdbcTemplate.update(connection -> {
+      PreparedStatement preparedStatement = connection.prepareStatement(RELEASE_UNASSIGNED_PARTITIONS);
+      preparedStatement.setString(1, subscriptionName);
+      preparedStatement.setString(2, memberId);
+      preparedStatement.setArray(3, connection.createArrayOf("integer", partitions));
+      return preparedStatement;
+    });
+    if (partitions.length == 0) {
+      return Set.of();
+    }
+    Set<Integer> acquiredPartitions = new HashSet<>();
+    this.jdbcTemplate.query(connection -> {
+      PreparedStatement preparedStatement = connection.prepareStatement(ACQUIRE_PARTITIONS);
+      preparedStatement.setString(1, memberId);
+      preparedStatement.setLong(2, leaseDuration.toMillis());
+      preparedStatement.setString(3, subscriptionName);
+      preparedStatement.setArray(4, connection.createArrayOf("integer", partitions));
+      preparedStatement.setString(5, memberId);
+      return preparedStatement;
+    }, (RowCallbackHandler) resultSet -> acquiredPartitions.add(resultSet.getInt("partition_number")));
+    return acquiredPartitions;
+  }
+
+  @Override
+  public void leaveSubscription(String subscriptionName, String memberId) {
+    this.jdbcTemplate.update(RELEASE_PARTITIONS, subscriptionName, memberId);
+    this.jdbcTemplate.update(DELETE_MEMBER, subscriptionName, memberId);
+  }
+
+  @Override
+  public boolean deregisterSubscription(String subscriptionName) {
+    this.jdbcTemplate.query(LOCK_SUBSCRIPTION, (RowCallbackHandler) resultSet -> {
+    }, subscriptionName);
+    this.jdbcTemplate.update(DELETE_SUBSCRIPTION_MEMBERS, subscriptionName);
+    return this.jdbcTemplate.update(DELETE_SUBSCRIPTION_PARTITIONS, subscriptionName) > 0;
+  }
+}
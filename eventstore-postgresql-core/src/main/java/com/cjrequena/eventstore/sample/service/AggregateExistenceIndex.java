@@ -0,0 +1,191 @@
+package com.cjrequena.eventstore.sample.service;
+
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.ExistenceIndexProperties;
+import com.cjrequena.eventstore.sample.repository.AggregateRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Answers aggregate existence checks from memory when it can, so that commands on existing aggregates do not pay an extra query.
+ * <p>
+ * An exact cache holds the IDs of aggregates recently seen to exist, a hit there is trusted without asking the database. Anything else
+ * is checked against the database and remembered when found. In authoritative mode a scalable Bloom filter also holds every aggregate ID
+ * read from ES_AGGREGATE at startup, by a background loader, and every aggregate appended by this process since; once the loader has
+ * finished, an ID the filter has never seen is reported absent without a query. Without authoritative mode the filter could never
+ * answer on its own, so neither the filter nor the loader exist.
+ */
+@Component
+@Log4j2
+public class AggregateExistenceIndex {
+
+  private final AggregateRepository aggregateRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final ExistenceIndexProperties existenceIndexProperties;
+  private final ScalableBloomFilter bloomFilter;
+  private final Cache<UUID, String> knownAggregates;
+  private final Counter exactHitCounter;
+  private final Counter absentCounter;
+  private final Counter queriedCounter;
+  private volatile boolean loaded;
+
+  @Autowired
+  public AggregateExistenceIndex(
+    AggregateRepository aggregateRepository,
+    @Qualifier("transactionManagerEventStore") PlatformTransactionManager transactionManager,
+    EventStoreConfigurationProperties eventStoreConfigurationProperties,
+    MeterRegistry meterRegistry) {
+    this.aggregateRepository = aggregateRepository;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.transactionTemplate.setReadOnly(true);
+    ExistenceIndexProperties existenceIndexProperties = eventStoreConfigurationProperties.getExistenceIndex();
+    this.existenceIndexProperties = existenceIndexProperties;
+    this.knownAggregates = existenceIndexProperties.enabled()
+      ? Caffeine.newBuilder().maximumSize(existenceIndexProperties.exactCacheSize()).build()
+      : null;
+    boolean authoritative = existenceIndexProperties.enabled() && existenceIndexProperties.authoritative();
+    if (authoritative) {
+      this.bloomFilter = new ScalableBloomFilter(existenceIndexProperties.expectedAggregates(), existenceIndexProperties.falsePositiveRate());
+      Gauge.builder("eventstore.existence-index.size", this.bloomFilter, ScalableBloomFilter::size)
+        .description("Aggregate IDs held by the existence Bloom filter")
+        .register(meterRegistry);
+    } else {
+      this.bloomFilter = null;
+    }
+    this.exactHitCounter = existenceCheckCounter(meterRegistry, "exact-hit");
+    this.absentCounter = existenceCheckCounter(meterRegistry, "absent");
+    this.queriedCounter = existenceCheckCounter(meterRegistry, "queried");
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!isAuthoritative()) {
+      return;
+    }
+    Thread.ofPlatform().name("eventstore-existence-index-loader").daemon(true).start(this::load);
+  }
+
+  public boolean isEnabled() {
+    return this.existenceIndexProperties.enabled();
+  }
+
+  private boolean isAuthoritative() {
+    return isEnabled() && this.existenceIndexProperties.authoritative();
+  }
+
+  /**
+   * @param aggregateId the unique identifier of the aggregate.
+   * @param aggregateType the aggregate type.
+   * @param existenceQuery asks the database, used when the index cannot answer on its own.
+   * @return true if the aggregate exists with the given type.
+   */
+  public boolean verifyIfAggregateExist(UUID aggregateId, String aggregateType, BooleanSupplier existenceQuery) {
+    if (!isEnabled()) {
+      return existenceQuery.getAsBoolean();
+    }
+    if (aggregateType.equals(this.knownAggregates.getIfPresent(aggregateId))) {
+      this.exactHitCounter.increment();
+      return true;
+    }
+    if (this.loaded && !mightContain(aggregateId, aggregateType)) {
+      this.absentCounter.increment();
+      return false;
+    }
+    this.queriedCounter.increment();
+    boolean exists = existenceQuery.getAsBoolean();
+    if (exists) {
+      record(aggregateId, aggregateType);
+    }
+    return exists;
+  }
+
+  /**
+   * Records an appended aggregate once the current transaction commits. If the transaction rolls back, nothing is recorded.
+   */
+  public void recordAfterCommit(UUID aggregateId, String aggregateType) {
+    if (!isEnabled()) {
+      return;
+    }
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          record(aggregateId, aggregateType);
+        }
+      });
+    } else {
+      record(aggregateId, aggregateType);
+    }
+  }
+
+  private void load() {
+    long startTime = System.nanoTime();
+    try {
+      this.transactionTemplate.executeWithoutResult(status -> this.aggregateRepository.streamAggregateIds(
+        this.existenceIndexProperties.loadFetchSize(), (aggregateId, aggregateType) -> putInBloomFilter(aggregateId, aggregateType)));
+      this.loaded = true;
+      log.info("Aggregate existence index loaded with {} aggregates in {} ms", this.bloomFilter.size(), (System.nanoTime() - startTime) / 1_000_000);
+    } catch (RuntimeException ex) {
+      // Existence checks keep going to the database.
+      log.warn("Aggregate existence index could not be loaded", ex);
+    }
+  }
+
+  private void record(UUID aggregateId, String aggregateType) {
+    if (this.bloomFilter != null) {
+      putInBloomFilter(aggregateId, aggregateType);
+    }
+    this.knownAggregates.put(aggregateId, aggregateType);
+  }
+
+  private void putInBloomFilter(UUID aggregateId, String aggregateType) {
+    long typeHash = typeHash(aggregateType);
+    this.bloomFilter.put(mix(aggregateId.getMostSignificantBits() ^ typeHash), mix(aggregateId.getLeastSignificantBits() + typeHash) | 1);
+  }
+
+  private boolean mightContain(UUID aggregateId, String aggregateType) {
+    long typeHash = typeHash(aggregateType);
+    return this.bloomFilter.mightContain(mix(aggregateId.getMostSignificantBits() ^ typeHash), mix(aggregateId.getLeastSignificantBits() + typeHash) | 1);
+  }
+
+  private static long typeHash(String aggregateType) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : aggregateType.getBytes(StandardCharsets.UTF_8)) {
+      hash = (hash ^ b) * 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  // The 64-bit finalizer of MurmurHash3, spreads every input bit over the whole output.
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  private static Counter existenceCheckCounter(MeterRegistry meterRegistry, String result) {
+    return Counter.builder("eventstore.existence-index.checks")
+      .description("Aggregate existence checks, by how they were answered")
+      .tag("result", result)
+      .register(meterRegistry);
+  }
+}
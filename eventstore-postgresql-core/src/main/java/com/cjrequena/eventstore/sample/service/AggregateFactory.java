@@ -1,16 +1,54 @@
 package com.cjrequena.eventstore.sample.service;
 
 import com.cjrequena.eventstore.sample.domain.aggregate.Aggregate;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackages;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AssignableTypeFilter;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
 
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.UUID;
 
 @Component
 @RequiredArgsConstructor
+@Log4j2
 public class AggregateFactory {
 
+    private final BeanFactory beanFactory;
+
+    /**
+     * Builds the dispatch tables of every concrete aggregate class of the application, so that an aggregate with a broken handler stops the
+     * service at startup.
+     */
+    @PostConstruct
+    @SneakyThrows(ClassNotFoundException.class)
+    public void prepareAggregateClasses() {
+        Set<String> basePackages = new LinkedHashSet<>();
+        if (AutoConfigurationPackages.has(this.beanFactory)) {
+            basePackages.addAll(AutoConfigurationPackages.get(this.beanFactory));
+        }
+        basePackages.add(ClassUtils.getPackageName(Aggregate.class));
+
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AssignableTypeFilter(Aggregate.class));
+        int aggregateClassCount = 0;
+        for (String basePackage : basePackages) {
+            for (BeanDefinition candidate : scanner.findCandidateComponents(basePackage)) {
+                Class<?> aggregateClass = ClassUtils.forName(candidate.getBeanClassName(), getClass().getClassLoader());
+                Aggregate.prepareHandlers(aggregateClass.asSubclass(Aggregate.class));
+                aggregateClassCount++;
+            }
+        }
+        log.info("Prepared the handlers of {} aggregate classes in {}", aggregateClassCount, basePackages);
+    }
 
     @SneakyThrows(ReflectiveOperationException.class)
     @SuppressWarnings("unchecked")
@@ -0,0 +1,106 @@
+package com.cjrequena.eventstore.sample.service;
+
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.SnapshotCompactionProperties;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.SnapshotProperties;
+import com.cjrequena.eventstore.sample.repository.AggregateSnapshotRepository;
+import com.cjrequena.eventstore.sample.repository.AggregateSnapshotRepositoryCustom.SnapshotCompactionResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Deletes the snapshots that are beyond the retention of their aggregate type.
+ * <p>
+ * Only the newest snapshot of an aggregate is read when it is loaded, so older ones are only kept for loads at a past version. The
+ * compactor deletes them in small batches, each in its own transaction, so row locks are held briefly and never block appends. Rows
+ * deleted and bytes reclaimed are logged and counted per aggregate type. Each aggregate type is walked in aggregate ID order from a cursor
+ * kept across runs, so a batch only ranks the snapshots of the next aggregates with something to delete, and a run capped by
+ * {@code max-batches-per-run} resumes where the previous one stopped.
+ */
+@Component
+@Log4j2
+public class AggregateSnapshotCompactor {
+
+  private static final UUID FIRST_AGGREGATE_ID = new UUID(0, 0);
+
+  private final AggregateSnapshotRepository aggregateSnapshotRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final EventStoreConfigurationProperties eventStoreConfigurationProperties;
+  private final SnapshotCompactionProperties snapshotCompactionProperties;
+  private final MeterRegistry meterRegistry;
+  // The aggregate ID the next batch of each aggregate type starts from. Accessed by the scheduler thread only.
+  private final Map<String, UUID> cursors = new HashMap<>();
+
+  @Autowired
+  public AggregateSnapshotCompactor(
+    AggregateSnapshotRepository aggregateSnapshotRepository,
+    @Qualifier("transactionManagerEventStore") PlatformTransactionManager transactionManager,
+    EventStoreConfigurationProperties eventStoreConfigurationProperties,
+    MeterRegistry meterRegistry) {
+    this.aggregateSnapshotRepository = aggregateSnapshotRepository;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.eventStoreConfigurationProperties = eventStoreConfigurationProperties;
+    this.snapshotCompactionProperties = eventStoreConfigurationProperties.getSnapshotCompaction();
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Scheduled(initialDelayString = "${eventstore.snapshot-compaction.interval:PT15M}", fixedDelayString = "${eventstore.snapshot-compaction.interval:PT15M}")
+  public void compact() {
+    if (!this.snapshotCompactionProperties.enabled()) {
+      return;
+    }
+    for (String aggregateType : this.eventStoreConfigurationProperties.snapshotAggregateTypes()) {
+      SnapshotProperties snapshotProperties = this.eventStoreConfigurationProperties.getSnapshot(aggregateType);
+      if (!snapshotProperties.hasRetention()) {
+        continue;
+      }
+      try {
+        compact(aggregateType, snapshotProperties);
+      } catch (Exception ex) {
+        // Retried on the next run.
+        log.error("Unable to compact snapshots of aggregate type {}: {}", aggregateType, ex.getMessage(), ex);
+      }
+    }
+  }
+
+  private void compact(String aggregateType, SnapshotProperties snapshotProperties) {
+    OffsetDateTime createdBefore = snapshotProperties.maxAge() != null ? OffsetDateTime.now().minus(snapshotProperties.maxAge()) : null;
+    int batchSize = this.snapshotCompactionProperties.batchSize();
+    long rows = 0;
+    long bytes = 0;
+    for (int batch = 0; batch < this.snapshotCompactionProperties.maxBatchesPerRun(); batch++) {
+      UUID fromAggregateId = this.cursors.getOrDefault(aggregateType, FIRST_AGGREGATE_ID);
+      SnapshotCompactionResult result = this.transactionTemplate.execute(status -> this.aggregateSnapshotRepository.deleteExpiredAggregateSnapshots(
+        aggregateType, fromAggregateId, snapshotProperties.keepLast(), createdBefore, batchSize));
+      if (result == null) {
+        break;
+      }
+      rows += result.rows();
+      bytes += result.bytes();
+      if (result.rows() < batchSize) {
+        // Past the last aggregate with snapshots beyond the retention, the next run starts over.
+        this.cursors.remove(aggregateType);
+        break;
+      }
+      // The last aggregate may still hold snapshots beyond the retention, so the next batch starts from it.
+      this.cursors.put(aggregateType, result.lastAggregateId());
+    }
+    if (rows > 0) {
+      Counter.builder("eventstore.snapshot.compaction.rows").tag("aggregate_type", aggregateType).register(this.meterRegistry).increment(rows);
+      Counter.builder("eventstore.snapshot.compaction.bytes").tag("aggregate_type", aggregateType).register(this.meterRegistry).increment(bytes);
+      log.info("Compacted {} snapshots of aggregate type {}, reclaiming {} bytes", rows, aggregateType, bytes);
+    }
+  }
+}
@@ -0,0 +1,274 @@
+package com.cjrequena.eventstore.sample.service;
+
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.SnapshotWriterProperties;
+import com.cjrequena.eventstore.sample.domain.aggregate.Aggregate;
+import com.cjrequena.eventstore.sample.entity.AggregateSnapshotEntity;
+import com.cjrequena.eventstore.sample.repository.AggregateSnapshotRepository;
+import com.cjrequena.eventstore.sample.snapshot.AggregateSnapshotCodec;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Nullable;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Writes aggregate snapshots in the background, outside the command transaction.
+ * <p>
+ * Snapshot requests are coalesced per aggregate: while an aggregate is waiting in the queue, newer requests for it replace the pending
+ * aggregate instead of taking another queue slot, so only the latest version is written. Workers drain the queue in batches, serialize
+ * the aggregates and insert them with a single JDBC batch. A full queue drops the request, an aggregate that cannot be serialized is
+ * logged and left out of its batch, and a failed insert is logged and discarded; none of them ever reaches the command.
+ * <p>
+ * The aggregate handed to {@link #submitAfterCommit(Aggregate)} is serialized later on a worker thread, so the caller must not mutate it
+ * while {@link #isPending(Aggregate)} returns true, or it must {@link #detach(Aggregate)} it first. {@link #submitNow(Aggregate)}
+ * serializes on the calling thread instead, for callers that keep using the aggregate.
+ */
+@Component
+@Log4j2
+public class AggregateSnapshotWriter {
+
+  private final AggregateSnapshotRepository aggregateSnapshotRepository;
+  private final AggregateSnapshotCodec aggregateSnapshotCodec;
+  private final TransactionTemplate transactionTemplate;
+  private final SnapshotWriterProperties snapshotWriterProperties;
+  private final BlockingQueue<UUID> queue;
+  private final ConcurrentMap<UUID, PendingSnapshot> pendingSnapshots = new ConcurrentHashMap<>();
+  // Aggregates handed off and not yet serialized, compared by identity.
+  private final Set<Aggregate> handedOffAggregates = Collections.newSetFromMap(Collections.synchronizedMap(new IdentityHashMap<>()));
+  private final Counter droppedCounter;
+  private final Counter writtenCounter;
+  private final Counter failedCounter;
+  private ExecutorService executorService;
+  private volatile boolean running;
+
+  @Autowired
+  public AggregateSnapshotWriter(
+    AggregateSnapshotRepository aggregateSnapshotRepository,
+    AggregateSnapshotCodec aggregateSnapshotCodec,
+    @Qualifier("transactionManagerEventStore") PlatformTransactionManager transactionManager,
+    EventStoreConfigurationProperties eventStoreConfigurationProperties,
+    MeterRegistry meterRegistry) {
+    this.aggregateSnapshotRepository = aggregateSnapshotRepository;
+    this.aggregateSnapshotCodec = aggregateSnapshotCodec;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.snapshotWriterProperties = eventStoreConfigurationProperties.getSnapshotWriter();
+    this.queue = new LinkedBlockingQueue<>(this.snapshotWriterProperties.queueCapacity());
+    Gauge.builder("eventstore.snapshot.queue.depth", this.queue, BlockingQueue::size)
+      .description("Aggregates waiting for a snapshot to be written")
+      .register(meterRegistry);
+    this.droppedCounter = Counter.builder("eventstore.snapshot.dropped")
+      .description("Snapshot requests dropped because the queue was full")
+      .register(meterRegistry);
+    this.writtenCounter = Counter.builder("eventstore.snapshot.written")
+      .description("Snapshots written")
+      .register(meterRegistry);
+    this.failedCounter = Counter.builder("eventstore.snapshot.failed")
+      .description("Snapshots that could not be written")
+      .register(meterRegistry);
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!this.snapshotWriterProperties.async()) {
+      return;
+    }
+    this.running = true;
+    ThreadFactory threadFactory = Thread.ofPlatform().name("eventstore-snapshot-writer-", 0).daemon(true).factory();
+    this.executorService = Executors.newFixedThreadPool(this.snapshotWriterProperties.workers(), threadFactory);
+    for (int i = 0; i < this.snapshotWriterProperties.workers(); i++) {
+      this.executorService.execute(this::drainQueue);
+    }
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    if (this.executorService == null) {
+      return;
+    }
+    this.running = false;
+    this.executorService.shutdown();
+    if (!this.executorService.awaitTermination(5, TimeUnit.SECONDS)) {
+      log.warn("Snapshot writer stopped with {} snapshots still pending", this.queue.size());
+      this.executorService.shutdownNow();
+    }
+  }
+
+  public boolean isAsync() {
+    return this.snapshotWriterProperties.async();
+  }
+
+  /**
+   * @return true if the given aggregate instance has been handed off for a snapshot that has not been serialized yet.
+   */
+  public boolean isPending(Aggregate aggregate) {
+    return this.handedOffAggregates.contains(aggregate);
+  }
+
+  /**
+   * Requests a snapshot of the given aggregate once the current transaction commits. If the transaction rolls back, nothing is written.
+   *
+   * @param aggregate the aggregate to snapshot. It must not be mutated afterwards.
+   */
+  public void submitAfterCommit(Aggregate aggregate) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          submit(aggregate);
+        }
+      });
+    } else {
+      submit(aggregate);
+    }
+  }
+
+  /**
+   * Requests a snapshot of the given aggregate, serializing it right away so the caller can keep mutating it. Meant for aggregates that
+   * are already persisted, such as one that has just been loaded.
+   *
+   * @param aggregate the aggregate to snapshot, without unconfirmed events.
+   */
+  public void submitNow(Aggregate aggregate) {
+    submit(new PendingSnapshot(aggregate.getAggregateId(), aggregate.getAggregateType(), aggregate.getAggregateVersion(), null,
+      this.aggregateSnapshotCodec.encode(aggregate)));
+  }
+
+  /**
+   * Serializes the queued snapshot of the given aggregate instance on the calling thread, so the caller can mutate the aggregate again
+   * while the snapshot is still written in the background.
+   *
+   * @param aggregate the aggregate handed to {@link #submitAfterCommit(Aggregate)}.
+   * @return true if the aggregate is no longer pending, false if a worker is serializing it at the moment or it cannot be serialized.
+   */
+  public boolean detach(Aggregate aggregate) {
+    if (!isPending(aggregate)) {
+      return true;
+    }
+    AggregateSnapshotEntity encoded;
+    try {
+      encoded = this.aggregateSnapshotCodec.encode(aggregate);
+    } catch (RuntimeException ex) {
+      log.debug("Unable to encode snapshot for {} with aggregate ID '{}' version {}: {}", aggregate.getAggregateType(), aggregate.getAggregateId(),
+        aggregate.getAggregateVersion(), ex.getMessage());
+      return false;
+    }
+    PendingSnapshot detached = new PendingSnapshot(aggregate.getAggregateId(), aggregate.getAggregateType(), aggregate.getAggregateVersion(), null,
+      encoded);
+    this.pendingSnapshots.computeIfPresent(aggregate.getAggregateId(), (id, pendingSnapshot) -> {
+      if (pendingSnapshot.aggregate() != aggregate) {
+        return pendingSnapshot;
+      }
+      release(pendingSnapshot);
+      return detached;
+    });
+    return !isPending(aggregate);
+  }
+
+  private void submit(Aggregate aggregate) {
+    this.handedOffAggregates.add(aggregate);
+    submit(new PendingSnapshot(aggregate.getAggregateId(), aggregate.getAggregateType(), aggregate.getAggregateVersion(), aggregate, null));
+  }
+
+  private void submit(PendingSnapshot snapshot) {
+    UUID aggregateId = snapshot.aggregateId();
+    boolean[] enqueue = {false};
+    this.pendingSnapshots.compute(aggregateId, (id, pendingSnapshot) -> {
+      if (pendingSnapshot == null) {
+        enqueue[0] = true;
+        return snapshot;
+      }
+      // Already queued, keep whichever is the latest version.
+      if (pendingSnapshot.aggregateVersion() >= snapshot.aggregateVersion()) {
+        release(snapshot);
+        return pendingSnapshot;
+      }
+      release(pendingSnapshot);
+      return snapshot;
+    });
+    if (enqueue[0] && !this.queue.offer(aggregateId)) {
+      Optional.ofNullable(this.pendingSnapshots.remove(aggregateId)).ifPresent(this::release);
+      this.droppedCounter.increment();
+      log.debug("Snapshot queue is full, dropping snapshot for {} with aggregate ID '{}' version {}",
+        snapshot.aggregateType(), aggregateId, snapshot.aggregateVersion());
+    }
+  }
+
+  private void release(PendingSnapshot snapshot) {
+    if (snapshot.aggregate() != null) {
+      this.handedOffAggregates.remove(snapshot.aggregate());
+    }
+  }
+
+  private void drainQueue() {
+    List<UUID> aggregateIds = new ArrayList<>(this.snapshotWriterProperties.batchSize());
+    while (this.running || !this.queue.isEmpty()) {
+      try {
+        UUID aggregateId = this.queue.poll(1, TimeUnit.SECONDS);
+        if (aggregateId == null) {
+          continue;
+        }
+        aggregateIds.add(aggregateId);
+        this.queue.drainTo(aggregateIds, this.snapshotWriterProperties.batchSize() - 1);
+        writeSnapshots(aggregateIds);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception ex) {
+        log.warn("Unable to write snapshots: {}", ex.getMessage(), ex);
+      } finally {
+        aggregateIds.clear();
+      }
+    }
+  }
+
+  private void writeSnapshots(List<UUID> aggregateIds) {
+    List<AggregateSnapshotEntity> aggregateSnapshotEntities = new ArrayList<>(aggregateIds.size());
+    for (UUID aggregateId : aggregateIds) {
+      PendingSnapshot snapshot = this.pendingSnapshots.remove(aggregateId);
+      if (snapshot == null) {
+        continue;
+      }
+      try {
+        log.info("Creating snapshot for {} with aggregate ID '{}' version {}", snapshot.aggregateType(), aggregateId, snapshot.aggregateVersion());
+        aggregateSnapshotEntities.add(snapshot.encoded() != null ? snapshot.encoded() : this.aggregateSnapshotCodec.encode(snapshot.aggregate()));
+      } catch (Exception ex) {
+        // Already removed from the pending snapshots, so only this aggregate is lost, the rest of the batch is still written.
+        this.failedCounter.increment();
+        log.warn("Unable to encode snapshot for {} with aggregate ID '{}' version {}: {}", snapshot.aggregateType(), aggregateId,
+          snapshot.aggregateVersion(), ex.getMessage(), ex);
+      } finally {
+        release(snapshot);
+      }
+    }
+    if (aggregateSnapshotEntities.isEmpty()) {
+      return;
+    }
+    try {
+      Integer rowsInserted = this.transactionTemplate.execute(status -> this.aggregateSnapshotRepository.saveAggregateSnapshots(aggregateSnapshotEntities));
+      this.writtenCounter.increment(rowsInserted != null ? rowsInserted : 0);
+    } catch (RuntimeException ex) {
+      this.failedCounter.increment(aggregateSnapshotEntities.size());
+      log.warn("Unable to write {} snapshots: {}", aggregateSnapshotEntities.size(), ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * A queued snapshot request, holding either the aggregate to encode or its already encoded snapshot.
+   */
+  private record PendingSnapshot(UUID aggregateId, String aggregateType, long aggregateVersion, @Nullable Aggregate aggregate,
+                                 @Nullable AggregateSnapshotEntity encoded) {
+  }
+}
@@ -0,0 +1,105 @@
+package com.cjrequena.eventstore.sample.service;
+
+import com.cjrequena.eventstore.sample.archive.EventSegmentStore;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.ArchiveProperties;
+import com.cjrequena.eventstore.sample.entity.EventEntity;
+import com.cjrequena.eventstore.sample.repository.EventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+/**
+ * Moves old event history out of ES_EVENT into the {@link EventSegmentStore}.
+ * <p>
+ * An event is archived once the latest snapshot of its aggregate covers it and every registered subscription of its aggregate type
+ * has consumed it, so neither aggregate loads from the snapshot nor subscriptions read it from ES_EVENT any more. A run only looks at the
+ * aggregates in ES_EVENT_ARCHIVE_CANDIDATE, recorded when their snapshot moves, a page of them at a time from a cursor kept across runs;
+ * an aggregate leaves the candidates once everything its snapshot covers is archived. Each run writes and indexes a segment first and
+ * only then deletes the archived rows, so a crash in between leaves the events in both places, which reads tolerate.
+ */
+@Component
+@Log4j2
+public class EventArchiver {
+
+  private static final int DELETE_CHUNK_SIZE = 1000;
+  private static final int CANDIDATE_PAGE_SIZE = 1000;
+  private static final UUID FIRST_CANDIDATE = new UUID(0, 0);
+
+  private final EventRepository eventRepository;
+  private final EventSegmentStore eventSegmentStore;
+  private final TransactionTemplate transactionTemplate;
+  private final ArchiveProperties archiveProperties;
+  private final Counter archivedCounter;
+  // Accessed by the scheduler thread only.
+  private UUID cursor = FIRST_CANDIDATE;
+
+  @Autowired
+  public EventArchiver(
+    EventRepository eventRepository,
+    EventSegmentStore eventSegmentStore,
+    @Qualifier("transactionManagerEventStore") PlatformTransactionManager transactionManager,
+    EventStoreConfigurationProperties eventStoreConfigurationProperties,
+    MeterRegistry meterRegistry) {
+    this.eventRepository = eventRepository;
+    this.eventSegmentStore = eventSegmentStore;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.archiveProperties = eventStoreConfigurationProperties.getArchive();
+    this.archivedCounter = Counter.builder("eventstore.archive.events")
+      .description("Events moved from ES_EVENT to the archive")
+      .register(meterRegistry);
+  }
+
+  @Scheduled(initialDelayString = "${eventstore.archive.interval:PT1H}", fixedDelayString = "${eventstore.archive.interval:PT1H}")
+  public void archive() {
+    if (!this.archiveProperties.enabled() || !this.archiveProperties.archiverEnabled()) {
+      return;
+    }
+    try {
+      List<UUID> candidates = this.transactionTemplate.execute(
+        status -> this.eventRepository.retrieveArchiveCandidates(this.cursor, CANDIDATE_PAGE_SIZE));
+      if (candidates == null || candidates.isEmpty()) {
+        this.cursor = FIRST_CANDIDATE;
+        return;
+      }
+      int batchSize = this.archiveProperties.batchSize();
+      List<EventEntity> events = this.transactionTemplate.execute(
+        status -> this.eventRepository.retrieveArchivableEvents(candidates, batchSize));
+      boolean truncated = events != null && events.size() == batchSize;
+      List<UUID> ids = events == null ? List.of() : events.stream().map(EventEntity::getId).toList();
+      Map<UUID, List<EventEntity>> eventsByAggregateId = new LinkedHashMap<>();
+      if (events != null) {
+        events.forEach(event -> eventsByAggregateId.computeIfAbsent(event.getAggregateId(), aggregateId -> new ArrayList<>()).add(event));
+      }
+      if (!eventsByAggregateId.isEmpty()) {
+        this.eventSegmentStore.write(eventsByAggregateId);
+      }
+      // Candidates whose covered events are all gone, archived now or earlier, are dropped along with the archived rows.
+      this.transactionTemplate.executeWithoutResult(status -> {
+        for (int from = 0; from < ids.size(); from += DELETE_CHUNK_SIZE) {
+          this.eventRepository.deleteEventsByIds(ids.subList(from, Math.min(from + DELETE_CHUNK_SIZE, ids.size())));
+        }
+        this.eventRepository.deleteArchivedCandidates(candidates);
+      });
+      if (!ids.isEmpty()) {
+        this.archivedCounter.increment(ids.size());
+        log.info("Archived {} events of {} aggregates", ids.size(), eventsByAggregateId.size());
+      }
+      // A truncated batch leaves events of these candidates behind, the next run picks them up from the same cursor.
+      if (!truncated) {
+        this.cursor = candidates.size() < CANDIDATE_PAGE_SIZE ? FIRST_CANDIDATE : candidates.get(candidates.size() - 1);
+      }
+    } catch (Exception ex) {
+      // Retried on the next run; events stay in ES_EVENT until their segment is written.
+      log.error("Unable to archive events: {}", ex.getMessage(), ex);
+    }
+  }
+}
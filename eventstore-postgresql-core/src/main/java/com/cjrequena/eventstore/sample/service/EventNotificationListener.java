@@ -0,0 +1,130 @@
+package com.cjrequena.eventstore.sample.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Listens for the notifications sent by the {@code ES_EVENT_NOTIFY} trigger when events are committed, one channel per aggregate type.
+ * <p>
+ * A single connection, taken from the event store pool and switched to auto-commit, is held by a background thread for as long as there
+ * are listeners. The listeners are called on that thread and must return quickly, typically by handing the work to another thread. When
+ * the connection is lost it is reopened, and every listener is called once since notifications may have been missed in between.
+ */
+@Component
+@Log4j2
+public class EventNotificationListener {
+
+  private static final String CHANNEL_PREFIX = "es_event_";
+  private static final int NOTIFICATION_TIMEOUT_MILLIS = 500;
+  private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+  private final DataSource dataSource;
+  private final Map<String, List<Runnable>> listenersByChannel = new ConcurrentHashMap<>();
+  private Thread listenerThread;
+  private volatile boolean running;
+  private volatile boolean channelsChanged;
+
+  @Autowired
+  public EventNotificationListener(@Qualifier("dataSourceEventStore") DataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  /**
+   * @return the channel the events of the given aggregate type are notified on.
+   */
+  public static String channel(String aggregateType) {
+    return CHANNEL_PREFIX + aggregateType.toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Calls the given listener every time events of the given aggregate type are committed. Notifications sent by one transaction are
+   * folded into one.
+   */
+  public synchronized void listen(String aggregateType, Runnable listener) {
+    this.listenersByChannel.computeIfAbsent(channel(aggregateType), channel -> new CopyOnWriteArrayList<>()).add(listener);
+    this.channelsChanged = true;
+    if (this.listenerThread == null) {
+      this.running = true;
+      this.listenerThread = Thread.ofPlatform().name("eventstore-notification-listener").daemon(true).start(this::run);
+    }
+  }
+
+  @PreDestroy
+  public synchronized void stop() throws InterruptedException {
+    if (this.listenerThread == null) {
+      return;
+    }
+    this.running = false;
+    this.listenerThread.interrupt();
+    this.listenerThread.join(NOTIFICATION_TIMEOUT_MILLIS * 2L);
+  }
+
+  private void run() {
+    while (this.running) {
+      try (Connection connection = this.dataSource.getConnection()) {
+        connection.setAutoCommit(true);
+        listenToChannels(connection);
+        // Anything committed while there was no connection has not been notified.
+        this.listenersByChannel.values().forEach(this::notifyListeners);
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        while (this.running) {
+          if (this.channelsChanged) {
+            listenToChannels(connection);
+          }
+          PGNotification[] notifications = pgConnection.getNotifications(NOTIFICATION_TIMEOUT_MILLIS);
+          if (notifications != null) {
+            for (PGNotification notification : notifications) {
+              notifyListeners(this.listenersByChannel.getOrDefault(notification.getName(), List.of()));
+            }
+          }
+        }
+      } catch (SQLException ex) {
+        if (!this.running) {
+          return;
+        }
+        log.warn("Event notification connection lost, reconnecting in {} ms", RECONNECT_DELAY_MILLIS, ex);
+        try {
+          Thread.sleep(RECONNECT_DELAY_MILLIS);
+        } catch (InterruptedException interruptedException) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  private void listenToChannels(Connection connection) throws SQLException {
+    this.channelsChanged = false;
+    try (Statement statement = connection.createStatement()) {
+      for (String channel : this.listenersByChannel.keySet()) {
+        // LISTEN takes an identifier, not a bind parameter. Listening twice to the same channel is a no-op.
+        statement.execute("LISTEN \"" + channel.replace("\"", "\"\"") + "\"");
+      }
+    }
+  }
+
+  private void notifyListeners(List<Runnable> listeners) {
+    for (Runnable listener : listeners) {
+      try {
+        listener.run();
+      } catch (RuntimeException ex) {
+        log.warn("Event notification listener failed", ex);
+      }
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.cjrequena.eventstore.sample.service;
+
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.PartitioningProperties;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Creates the ES_EVENT partitions that do not exist yet.
+ * <p>
+ * For a table partitioned by hash of AGGREGATE_ID, it makes sure every remainder of the configured modulus has its partition. A modulus
+ * that differs from the one of the existing partitions is refused: maintenance stops instead of failing on every run. On an unpartitioned
+ * table it does nothing.
+ */
+@Component
+@Log4j2
+public class EventPartitionMaintenance {
+
+  private static final String PARTITION_STRATEGY = """
+    SELECT partstrat::text
+      FROM pg_partitioned_table
+     WHERE partrelid = to_regclass('es_event')
+    """;
+
+  private static final String HASH_PARTITION_MODULI = """
+    SELECT DISTINCT substring(pg_get_expr(c.relpartbound, c.oid) FROM 'modulus (\\d+)')::int
+      FROM pg_inherits i
+      JOIN pg_class c ON c.oid = i.inhrelid
+     WHERE i.inhparent = to_regclass('es_event')
+    """;
+
+  private final JdbcTemplate jdbcTemplate;
+  private final PartitioningProperties partitioningProperties;
+  private volatile boolean refused;
+
+  @Autowired
+  public EventPartitionMaintenance(
+    @Qualifier("jdbcTemplateEventStore") JdbcTemplate jdbcTemplate,
+    EventStoreConfigurationProperties eventStoreConfigurationProperties) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.partitioningProperties = eventStoreConfigurationProperties.getPartitioning();
+  }
+
+  @Scheduled(initialDelay = 0, fixedDelayString = "${eventstore.partitioning.maintenance-interval:PT1H}")
+  public void createMissingPartitions() {
+    if (!this.partitioningProperties.enabled() || this.refused) {
+      return;
+    }
+    try {
+      List<String> strategies = this.jdbcTemplate.queryForList(PARTITION_STRATEGY, String.class);
+      if (strategies.isEmpty()) {
+        log.warn("Partition maintenance is enabled but ES_EVENT is not partitioned");
+        return;
+      }
+      if (!"h".equals(strategies.get(0))) {
+        this.refused = true;
+        log.error("Unsupported partitioning strategy '{}' for ES_EVENT, partition maintenance stopped", strategies.get(0));
+        return;
+      }
+      createHashPartitions();
+    } catch (Exception ex) {
+      // Retried on the next run; appends keep working on the existing partitions.
+      log.error("Unable to create ES_EVENT partitions: {}", ex.getMessage(), ex);
+    }
+  }
+
+  private void createHashPartitions() {
+    int modulus = this.partitioningProperties.hashPartitions();
+    List<Integer> existingModuli = this.jdbcTemplate.queryForList(HASH_PARTITION_MODULI, Integer.class);
+    if (existingModuli.stream().anyMatch(existingModulus -> existingModulus != modulus)) {
+      // The partitions of another modulus overlap the ones this one would create, so every run would fail.
+      this.refused = true;
+      log.error("ES_EVENT partitions use modulus {} but eventstore.partitioning.hash-partitions is {}, partition maintenance stopped",
+        existingModuli, modulus);
+      return;
+    }
+    for (int remainder = 0; remainder < modulus; remainder++) {
+      this.jdbcTemplate.execute(
+        "CREATE TABLE IF NOT EXISTS es_event_p%d PARTITION OF es_event FOR VALUES WITH (MODULUS %d, REMAINDER %d)".formatted(remainder, modulus, remainder));
+    }
+  }
+}
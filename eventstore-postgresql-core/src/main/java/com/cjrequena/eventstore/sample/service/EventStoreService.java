@@ -1,8 +1,10 @@
 package com.cjrequena.eventstore.sample.service;
 
-import com.cjrequena.eventstore.sample.common.util.JsonUtil;
+import com.cjrequena.eventstore.sample.archive.EventSegmentStore;
+import com.cjrequena.eventstore.sample.codec.EventPayloadCodecRegistry;
 import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties;
-import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.SnapshotProperties;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.AppendMode;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.PayloadStorage;
 import com.cjrequena.eventstore.sample.domain.aggregate.Aggregate;
 import com.cjrequena.eventstore.sample.domain.event.Event;
 import com.cjrequena.eventstore.sample.entity.AbstractEventEntity;
@@ -10,12 +12,16 @@ import com.cjrequena.eventstore.sample.entity.AggregateSnapshotEntity;
 import com.cjrequena.eventstore.sample.entity.EventEntity;
 import com.cjrequena.eventstore.sample.entity.EventSubscriptionEntity;
 import com.cjrequena.eventstore.sample.exception.service.EventStoreOptimisticConcurrencyServiceException;
+import com.cjrequena.eventstore.sample.mapper.EventEntityMapperRegistry;
 import com.cjrequena.eventstore.sample.repository.AggregateRepository;
 import com.cjrequena.eventstore.sample.repository.AggregateSnapshotRepository;
 import com.cjrequena.eventstore.sample.repository.EventRepository;
 import com.cjrequena.eventstore.sample.repository.EventSubscriptionRepository;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.cjrequena.eventstore.sample.snapshot.AggregateSnapshotCodec;
+import com.cjrequena.eventstore.sample.snapshot.SnapshotPolicyEvaluator;
 import jakarta.annotation.Nullable;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
@@ -24,9 +30,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service
 @Transactional
@@ -39,51 +56,111 @@ public class EventStoreService {
   private final EventRepository eventRepository;
   private final EventSubscriptionRepository eventSubscriptionRepository;
   private final EventStoreConfigurationProperties eventStoreConfigurationProperties;
-  private final ObjectMapper objectMapper;
+  private final AggregateSnapshotWriter aggregateSnapshotWriter;
+  private final GroupCommitDispatcher groupCommitDispatcher;
+  private final EventPayloadCodecRegistry eventPayloadCodecRegistry;
+  private final EventSegmentStore eventSegmentStore;
+  private final SnapshotPolicyEvaluator snapshotPolicyEvaluator;
+  private final AggregateSnapshotCodec aggregateSnapshotCodec;
+  private final AggregateFactory aggregateFactory;
+  private final EventEntityMapperRegistry eventEntityMapperRegistry;
+  private final AggregateExistenceIndex aggregateExistenceIndex;
+
+  @PersistenceContext(unitName = "eventstore")
+  private EntityManager entityManager;
 
   @SneakyThrows
   public void saveAggregate(Aggregate aggregate) throws EventStoreOptimisticConcurrencyServiceException {
     String aggregateType = aggregate.getAggregateType();
-    UUID aggregateId = aggregate.getAggregateId();
 
-    // Create new aggregate if it does not exist.
-    this.aggregateRepository.createAggregateIfAbsent(aggregateId, aggregateType);
+    List<Event> unconfirmedEventsPool = aggregate.getUnconfirmedEventsPool();
+    List<AbstractEventEntity> eventEntities = new ArrayList<>(unconfirmedEventsPool.size());
+    for (Event event : unconfirmedEventsPool) {
+      log.info("Appending {} event: {}", aggregateType, event);
+      AbstractEventEntity eventEntity = this.eventEntityMapperRegistry.mapToEventEntity(event);
+      if (eventEntity instanceof EventEntity encodableEventEntity) {
+        this.eventPayloadCodecRegistry.encodeData(encodableEventEntity, event.getData(), aggregateType);
+      }
+      applyPayloadStorage(eventEntity);
+      eventEntities.add(eventEntity);
+    }
+
+    boolean shouldCreateSnapshot = this.snapshotPolicyEvaluator.shouldSnapshotOnSave(aggregate, eventEntities);
+    // Asynchronous snapshots are written by a background worker once the transaction commits.
+    boolean shouldCreateSnapshotAsync = shouldCreateSnapshot && this.aggregateSnapshotWriter.isAsync();
+    boolean shouldCreateSnapshotInline = shouldCreateSnapshot && !shouldCreateSnapshotAsync;
+
+    if (this.groupCommitDispatcher.isEnabled()) {
+      // Blocks until the group containing this append has been committed, independently of any transaction of the caller.
+      this.groupCommitDispatcher.append(() -> appendAggregate(aggregate, eventEntities, shouldCreateSnapshotInline));
+    } else {
+      appendAggregate(aggregate, eventEntities, shouldCreateSnapshotInline);
+    }
+
+    this.aggregateExistenceIndex.recordAfterCommit(aggregate.getAggregateId(), aggregateType);
+    if (shouldCreateSnapshotAsync) {
+      this.aggregateSnapshotWriter.submitAfterCommit(aggregate);
+    }
+  }
 
+  @SneakyThrows
+  private void appendAggregate(Aggregate aggregate, List<AbstractEventEntity> eventEntities, boolean shouldCreateSnapshot) {
+    String aggregateType = aggregate.getAggregateType();
+    UUID aggregateId = aggregate.getAggregateId();
     long expectedAggregateVersion = aggregate.getReproducedAggregateVersion();
     long newAggregateVersion = aggregate.getAggregateVersion();
 
+    if (eventStoreConfigurationProperties.getAppend().mode() == AppendMode.SINGLE_STATEMENT
+      && eventEntities.stream().allMatch(EventEntity.class::isInstance)) {
+      // Verify the version, append the events and take the snapshot in a single round trip
+      AggregateSnapshotEntity aggregateSnapshotEntity = null;
+      if (shouldCreateSnapshot) {
+        log.info("Creating snapshot for {} with aggregate ID '{}' version {}", aggregateType, aggregateId, newAggregateVersion);
+        aggregateSnapshotEntity = this.aggregateSnapshotCodec.encode(aggregate);
+      }
+      List<EventEntity> batchableEventEntities = eventEntities.stream().map(EventEntity.class::cast).toList();
+      Optional<List<EventEntity>> appendedEventEntities = this.aggregateRepository.appendAggregateEvents(
+        aggregateId, aggregateType, expectedAggregateVersion, newAggregateVersion, batchableEventEntities, aggregateSnapshotEntity);
+      if (appendedEventEntities.isEmpty()) {
+        throw optimisticConcurrencyConflict(aggregateType, aggregateId, expectedAggregateVersion);
+      }
+      return;
+    }
+
+    // Create new aggregate if it does not exist.
+    this.aggregateRepository.createAggregateIfAbsent(aggregateId, aggregateType);
+
     Optional<Integer> isVersionUpdated = aggregateRepository.verifyAndUpdateAggregateVersionIfMatch(aggregateId, expectedAggregateVersion, newAggregateVersion);
     if (isVersionUpdated.isEmpty()) {
-      String errorMessage = String.format(
-        "Optimistic concurrency conflict detected for aggregate '%s' with ID '%s'. The current expected version does not match the version '%s'.",
-        aggregateType,
-        aggregateId,
-        expectedAggregateVersion
-      );
-      log.warn(errorMessage);
-      throw new EventStoreOptimisticConcurrencyServiceException(errorMessage);
+      throw optimisticConcurrencyConflict(aggregateType, aggregateId, expectedAggregateVersion);
     }
 
-    // Append new events
-    List<Event> unconfirmedEventsPool = aggregate.getUnconfirmedEventsPool();
-    for (Event event : unconfirmedEventsPool) {
-      log.info("Appending {} event: {}", aggregateType, event);
-      AbstractEventEntity eventEntity = event.mapToEventEntity();
-      eventRepository.save(eventEntity);
+    // Append new events, batching all the events of the aggregate into a single round trip
+    List<EventEntity> batchableEventEntities = new ArrayList<>(eventEntities.size());
+    boolean pendingEntityWrites = false;
+    for (AbstractEventEntity eventEntity : eventEntities) {
+      if (eventEntity instanceof EventEntity batchableEventEntity) {
+        batchableEventEntities.add(batchableEventEntity);
+      } else {
+        eventRepository.save(eventEntity);
+        pendingEntityWrites = true;
+      }
+    }
+    if (!batchableEventEntities.isEmpty()) {
+      eventRepository.appendEvents(batchableEventEntities);
     }
 
     // Create snapshot
-    SnapshotProperties snapshotProperties = eventStoreConfigurationProperties.getSnapshot(aggregateType);
-    boolean shouldCreateSnapshot = aggregate.getAggregateVersion() % snapshotProperties.interval() == 0 || unconfirmedEventsPool.size() >= snapshotProperties.interval();
     if (shouldCreateSnapshot) {
-      log.info("Creating snapshot for {} with aggregate ID '{}' version {}", aggregate.getAggregateType(), aggregate.getAggregateId(), aggregate.getAggregateVersion());
-      AggregateSnapshotEntity aggregateSnapshotEntity = AggregateSnapshotEntity.builder()
-        .aggregateId(aggregate.getAggregateId())
-        .aggregateVersion(aggregate.getAggregateVersion())
-        .aggregateType(aggregate.getAggregateType())
-        .data(this.objectMapper.writeValueAsString(aggregate))
-        .build();
-      this.aggregateSnapshotRepository.save(aggregateSnapshotEntity);
+      log.info("Creating snapshot for {} with aggregate ID '{}' version {}", aggregateType, aggregateId, newAggregateVersion);
+      this.aggregateSnapshotRepository.save(this.aggregateSnapshotCodec.encode(aggregate));
+      pendingEntityWrites = true;
+    }
+
+    if (pendingEntityWrites) {
+      // Write the entities now, so a failure belongs to this append, and to its savepoint under group commit, instead of to whichever
+      // statement or commit flushes the persistence context later.
+      this.entityManager.flush();
     }
   }
 
@@ -91,8 +168,95 @@ public class EventStoreService {
   public Optional<Aggregate> retrieveAggregateSnapshot(Class<? extends Aggregate> aggregateClass, UUID aggregateId, @Nullable Long aggregateVersion) {
     log.info("Retrieving aggregate snapshot for aggregate {} with ID '{}'", aggregateClass, aggregateId);
 
-    return Optional.ofNullable(aggregateSnapshotRepository.retrieveAggregateSnapshot(aggregateId, aggregateVersion))
-      .map(aggregateSnapshotEntity -> fromSnapshotToAggregate(aggregateSnapshotEntity, aggregateClass));
+    // Snapshots taken with another version of the aggregate class are skipped, the aggregate is then reproduced from its events.
+    String schemaFingerprint = this.aggregateSnapshotCodec.getSchemaFingerprint(aggregateClass);
+    return Optional.ofNullable(aggregateSnapshotRepository.retrieveAggregateSnapshot(aggregateId, aggregateVersion, schemaFingerprint))
+      .flatMap(aggregateSnapshotEntity -> fromSnapshotToAggregate(aggregateSnapshotEntity, aggregateClass));
+  }
+
+  /**
+   * Reproduces an aggregate from its latest usable snapshot and the events after it, both read with a single query. The events are
+   * folded into the aggregate as they are fetched, so the memory used does not grow with the length of the stream.
+   *
+   * @param aggregateClass the aggregate class, used to pick snapshots taken with its current schema.
+   * @param aggregateId the unique identifier of the aggregate.
+   * @param eventMapper maps each event entity to the domain event applied to the aggregate.
+   * @return the reproduced aggregate, at version 0 if it has no history.
+   */
+  @Transactional(readOnly = true)
+  public Aggregate reproduceAggregate(Class<? extends Aggregate> aggregateClass, @NotNull UUID aggregateId, Function<EventEntity, Event> eventMapper) {
+    log.info("Reproducing aggregate {} with ID '{}' from its latest snapshot and events", aggregateClass, aggregateId);
+
+    String schemaFingerprint = this.aggregateSnapshotCodec.getSchemaFingerprint(aggregateClass);
+    SnapshotAndEventReplay snapshotAndEventReplay = new SnapshotAndEventReplay(aggregateClass, aggregateId, eventMapper);
+    this.aggregateRepository.streamAggregateSnapshotAndEvents(aggregateId, schemaFingerprint, eventStoreConfigurationProperties.getReplay().fetchSize(),
+      snapshotAndEventReplay::acceptSnapshot, snapshotAndEventReplay::acceptEvent);
+    return snapshotAndEventReplay.complete();
+  }
+
+  /**
+   * Reproduces several aggregates of the same class at once, with one query for their latest usable snapshots and one for the events
+   * after them, instead of two queries per aggregate. The events are folded into their aggregate as they are fetched.
+   *
+   * @param aggregateClass the aggregate class, used to pick snapshots taken with its current schema.
+   * @param aggregateIds the unique identifiers of the aggregates.
+   * @param fromSnapshots whether to start from the latest snapshots, or to replay every event.
+   * @param eventMapper maps each event entity to the domain event applied to its aggregate.
+   * @return the reproduced aggregates by aggregate ID, in the iteration order of {@code aggregateIds}. Aggregates without history are at
+   *         version 0.
+   */
+  @Transactional(readOnly = true)
+  public Map<UUID, Aggregate> reproduceAggregates(Class<? extends Aggregate> aggregateClass, Collection<UUID> aggregateIds, boolean fromSnapshots,
+    Function<EventEntity, Event> eventMapper) {
+    log.info("Reproducing {} aggregates {} from {}", aggregateIds.size(), aggregateClass, fromSnapshots ? "their latest snapshots and events" : "events");
+    if (aggregateIds.isEmpty()) {
+      return Map.of();
+    }
+
+    Map<UUID, Aggregate> snapshotAggregates = new HashMap<>();
+    if (fromSnapshots) {
+      String schemaFingerprint = this.aggregateSnapshotCodec.getSchemaFingerprint(aggregateClass);
+      // A snapshot that cannot be decoded is ignored, its aggregate is then reproduced from all of its events.
+      this.aggregateSnapshotRepository.retrieveLatestAggregateSnapshots(List.copyOf(aggregateIds), schemaFingerprint)
+        .forEach(aggregateSnapshotEntity -> fromSnapshotToAggregate(aggregateSnapshotEntity, aggregateClass)
+          .ifPresent(aggregate -> snapshotAggregates.put(aggregate.getAggregateId(), aggregate)));
+    }
+
+    Map<UUID, EventReplay> eventReplays = new LinkedHashMap<>();
+    Map<UUID, Long> fromAggregateVersions = new HashMap<>();
+    for (UUID aggregateId : aggregateIds) {
+      Aggregate aggregate = snapshotAggregates.get(aggregateId);
+      if (aggregate == null) {
+        aggregate = this.aggregateFactory.newInstance(aggregateClass, aggregateId);
+      }
+      eventReplays.put(aggregateId, new EventReplay(aggregate, eventMapper));
+      fromAggregateVersions.put(aggregateId, aggregate.getAggregateVersion());
+    }
+
+    this.eventRepository.streamEventsByAggregateIds(fromAggregateVersions, eventStoreConfigurationProperties.getReplay().fetchSize(),
+      eventEntity -> eventReplays.get(eventEntity.getAggregateId()).accept(eventEntity));
+
+    Map<UUID, Aggregate> aggregates = new LinkedHashMap<>();
+    eventReplays.forEach((aggregateId, eventReplay) -> aggregates.put(aggregateId, eventReplay.complete()));
+    return aggregates;
+  }
+
+  /**
+   * Folds the events of an aggregate after the given version into it, as they are fetched, and lets the snapshot policies know the cost
+   * of the replay so a snapshot can be queued when it was too expensive.
+   *
+   * @param aggregate the aggregate to reproduce.
+   * @param fromAggregateVersion only events with a greater version are applied, or all of them if null.
+   * @param eventMapper maps each event entity to the domain event applied to the aggregate.
+   */
+  @Transactional(readOnly = true)
+  public void reproduceAggregateFromEvents(Aggregate aggregate, @Nullable Long fromAggregateVersion, Function<EventEntity, Event> eventMapper) {
+    log.info("Reproducing aggregate with ID '{}' from version {}", aggregate.getAggregateId(), fromAggregateVersion);
+
+    EventReplay eventReplay = new EventReplay(aggregate, eventMapper);
+    this.eventRepository.streamEventsByAggregateId(aggregate.getAggregateId(), fromAggregateVersion, null,
+      eventStoreConfigurationProperties.getReplay().fetchSize(), eventReplay);
+    eventReplay.complete();
   }
 
   @Transactional(readOnly = true)
@@ -111,26 +275,98 @@ public class EventStoreService {
       throw new IllegalArgumentException("aggregateId cannot be null");
     }
     // Query the repository, with optional parameters for version range
-    return eventRepository.retrieveEventsByAggregateId(aggregateId, fromAggregateVersion, toAggregateVersion);
+    List<EventEntity> eventEntities = eventRepository.retrieveEventsByAggregateId(aggregateId, fromAggregateVersion, toAggregateVersion);
+    if (!eventSegmentStore.isEnabled()) {
+      return eventEntities;
+    }
+    // Fill in the history already moved to the archive
+    return eventSegmentStore.readThrough(aggregateId, fromAggregateVersion, toAggregateVersion, eventEntities);
+  }
+
+  /**
+   * @return the current version of the aggregate, or an empty {@link Optional} if it does not exist.
+   */
+  @Transactional(readOnly = true)
+  public Optional<Long> retrieveAggregateVersion(@NotNull UUID aggregateId) {
+    return this.aggregateRepository.retrieveAggregateVersion(aggregateId);
   }
 
   @Transactional(readOnly = true)
   public boolean verifyIfAggregateExist(@NotNull UUID aggregateId, @NotNull String aggregateType) {
-    return this.aggregateRepository.verifyIfAggregateExist(aggregateId, aggregateType);
+    return this.aggregateExistenceIndex.verifyIfAggregateExist(aggregateId, aggregateType,
+      () -> this.aggregateRepository.verifyIfAggregateExist(aggregateId, aggregateType));
+  }
+
+  /**
+   * Creates the partitions of the subscription, or resets them when their number changed, see
+   * {@link EventSubscriptionRepository#registerSubscriptionPartitions(String, int, Collection)}.
+   */
+  public void registerSubscriptionPartitions(@NotNull String subscriptionName, int partitionCount, @Nullable Collection<String> aggregateTypes) {
+    if (this.eventSubscriptionRepository.registerSubscriptionPartitions(subscriptionName, partitionCount, aggregateTypes)) {
+      log.info("Subscription {} registered with {} partitions", subscriptionName, partitionCount);
+    }
+  }
+
+  /**
+   * @return the IDs of the live members of the subscription, sorted, including the given one.
+   */
+  public List<String> heartbeatSubscriptionMember(@NotNull String subscriptionName, @NotNull String memberId, @NotNull Duration memberTimeout) {
+    return this.eventSubscriptionRepository.heartbeatSubscriptionMember(subscriptionName, memberId, memberTimeout);
+  }
+
+  /**
+   * @return the partitions of the subscription leased to the member, among the requested ones.
+   */
+  public Set<Integer> acquireSubscriptionPartitions(@NotNull String subscriptionName, @NotNull String memberId, @NotNull Collection<Integer> partitionNumbers,
+    @NotNull Duration leaseDuration) {
+    return this.eventSubscriptionRepository.acquireSubscriptionPartitions(subscriptionName, memberId, partitionNumbers, leaseDuration);
+  }
+
+  public void leaveSubscription(@NotNull String subscriptionName, @NotNull String memberId) {
+    this.eventSubscriptionRepository.leaveSubscription(subscriptionName, memberId);
   }
 
-  public void registerNewSubscriptionIfAbsent(@NotNull String subscriptionName) {
-    this.eventSubscriptionRepository.registerNewSubscriptionIfAbsent(subscriptionName);
+  /**
+   * Removes a retired subscription, see {@link EventSubscriptionRepository#deregisterSubscription(String)}. Registered subscriptions
+   * hold back archiving until they are deregistered, since they only read ES_EVENT.
+   */
+  public void deregisterSubscription(@NotNull String subscriptionName) {
+    if (this.eventSubscriptionRepository.deregisterSubscription(subscriptionName)) {
+      log.info("Subscription {} deregistered", subscriptionName);
+    }
+  }
+
+  /**
+   * Locks the offset of a partition of the subscription until the end of the current transaction, if the given member holds its lease.
+   */
+  public Optional<EventSubscriptionEntity> retrieveEventSubscriptionAndLockSubscriptionOffset(@NotNull String subscriptionName, int partitionNumber,
+    @NotNull String memberId) {
+    return this.eventSubscriptionRepository.retrieveEventSubscriptionAndLockSubscriptionOffset(subscriptionName, partitionNumber, memberId);
   }
 
+  /**
+   * Retrieves a page of the events of the given aggregate type committed after the given offset, in commit order. Pages are read by
+   * keyset, so the cost of a page does not depend on how far into the stream it is.
+   *
+   * @param partitionNumber only the events of the aggregates in this partition of the subscription are returned.
+   * @param partitionCount the number of partitions of the subscription, 1 for all the events.
+   * @param limit the maximum number of events returned. Fewer events mean the end of the committed stream has been reached.
+   */
   @Transactional(readOnly = true)
-  public Optional<EventSubscriptionEntity> retrieveEventSubscriptionAndLockSubscriptionOffset(String subscriptionName) {
-    return this.eventSubscriptionRepository.retrieveEventSubscriptionAndLockSubscriptionOffset(subscriptionName);
+  public List<EventEntity> retrieveEventsByAggregateTypeAfterOffsetTxIdAndOffsetId(@NotNull String aggregateType, @NotNull Long offsetTxId, Long offsetId,
+    int partitionNumber, int partitionCount, int limit) {
+    return this.eventRepository.retrieveEventsByAggregateTypeAfterOffsetTxIdAndOffsetId(aggregateType, offsetTxId, offsetId, partitionNumber,
+      partitionCount, limit);
   }
 
+  /**
+   * Tells whether committed events of the given aggregate type are not returned yet by
+   * {@link #retrieveEventsByAggregateTypeAfterOffsetTxIdAndOffsetId} because an older transaction is still in progress. Those events are
+   * returned once that transaction ends, whether it commits or rolls back.
+   */
   @Transactional(readOnly = true)
-  public List<EventEntity> retrieveEventsByAggregateTypeAfterOffsetTxIdAndOffsetId(@NotNull String aggregateType, @NotNull Long offsetTxId, Long offsetId) {
-    return this.eventRepository.retrieveEventsByAggregateTypeAfterOffsetTxIdAndOffsetId(aggregateType, offsetTxId, offsetId);
+  public boolean hasEventsBeyondSubscriptionHorizon(@NotNull String aggregateType, int partitionNumber, int partitionCount) {
+    return this.eventRepository.existsEventsByAggregateTypeBeyondSnapshotXmin(aggregateType, partitionNumber, partitionCount);
   }
 
   @Transactional(readOnly = true)
@@ -143,17 +379,139 @@ public class EventStoreService {
     return this.eventRepository.retrieveLatestEventsByAggregateTypeGroupedByAggregateId(aggregateType);
   }
 
-  public boolean updateEventSubscription(@NotNull String subscriptionName, @NotNull Long offsetTxId, @NotNull Long offsetId) {
-    final int rowsUpdated = this.eventSubscriptionRepository.updateEventSubscription(subscriptionName, offsetTxId, offsetId);
+  public boolean updateEventSubscription(@NotNull String subscriptionName, int partitionNumber, @NotNull Long offsetTxId, @NotNull Long offsetId) {
+    final int rowsUpdated = this.eventSubscriptionRepository.updateEventSubscription(subscriptionName, partitionNumber, offsetTxId, offsetId);
     return rowsUpdated > 0;
   }
 
-  @SneakyThrows
-  private Aggregate fromSnapshotToAggregate(AggregateSnapshotEntity aggregateSnapshotEntity, Class<? extends Aggregate> aggregateClass) {
-    String json = aggregateSnapshotEntity.getData();
-    final Aggregate aggregate = JsonUtil.jsonStringToObject(json, aggregateClass);
-    aggregate.setReproducedAggregateVersion(aggregate.getAggregateVersion());
-    return aggregate;
+  /**
+   * The payload is encoded once. The Base64 copy, when requested, is derived from the encoded bytes instead of serializing the payload a
+   * second time.
+   */
+  private void applyPayloadStorage(AbstractEventEntity eventEntity) {
+    if (eventStoreConfigurationProperties.getPayload().storage() == PayloadStorage.JSON) {
+      eventEntity.setDataBase64(null);
+    } else if (eventEntity instanceof EventEntity encodedEventEntity) {
+      byte[] encodedPayload = encodedEventEntity.getDataBinary() != null
+        ? encodedEventEntity.getDataBinary()
+        : encodedEventEntity.getData() != null ? encodedEventEntity.getData().getBytes(StandardCharsets.UTF_8) : null;
+      if (encodedPayload != null) {
+        encodedEventEntity.setDataBase64(Base64.getEncoder().encodeToString(encodedPayload));
+      }
+    }
   }
 
+  private EventStoreOptimisticConcurrencyServiceException optimisticConcurrencyConflict(String aggregateType, UUID aggregateId, long expectedAggregateVersion) {
+    String errorMessage = String.format(
+      "Optimistic concurrency conflict detected for aggregate '%s' with ID '%s'. The current expected version does not match the version '%s'.",
+      aggregateType,
+      aggregateId,
+      expectedAggregateVersion
+    );
+    log.warn(errorMessage);
+    return new EventStoreOptimisticConcurrencyServiceException(errorMessage);
+  }
+
+  private Optional<Aggregate> fromSnapshotToAggregate(AggregateSnapshotEntity aggregateSnapshotEntity, Class<? extends Aggregate> aggregateClass) {
+    return this.aggregateSnapshotCodec.decode(aggregateSnapshotEntity, aggregateClass).map(aggregate -> {
+      aggregate.setReproducedAggregateVersion(aggregate.getAggregateVersion());
+      aggregate.setSnapshotAggregateVersion(aggregate.getAggregateVersion());
+      return aggregate;
+    });
+  }
+
+  /**
+   * Reproduces an aggregate from its latest snapshot, streamed first if there is one, and the events after it. When the snapshot cannot
+   * be decoded the events after it are not enough, so they are skipped and every event of the aggregate is replayed on completion.
+   */
+  private final class SnapshotAndEventReplay {
+
+    private final Class<? extends Aggregate> aggregateClass;
+    private final UUID aggregateId;
+    private final Function<EventEntity, Event> eventMapper;
+    private EventReplay eventReplay;
+    private boolean snapshotUnreadable;
+
+    private SnapshotAndEventReplay(Class<? extends Aggregate> aggregateClass, UUID aggregateId, Function<EventEntity, Event> eventMapper) {
+      this.aggregateClass = aggregateClass;
+      this.aggregateId = aggregateId;
+      this.eventMapper = eventMapper;
+    }
+
+    private void acceptSnapshot(AggregateSnapshotEntity aggregateSnapshotEntity) {
+      fromSnapshotToAggregate(aggregateSnapshotEntity, this.aggregateClass).ifPresentOrElse(
+        aggregate -> this.eventReplay = new EventReplay(aggregate, this.eventMapper),
+        () -> this.snapshotUnreadable = true);
+    }
+
+    private void acceptEvent(EventEntity eventEntity) {
+      if (this.snapshotUnreadable) {
+        return;
+      }
+      if (this.eventReplay == null) {
+        log.info("Snapshot not found for Aggregate ID: {}. Reconstituting from events.", this.aggregateId);
+        this.eventReplay = new EventReplay(aggregateFactory.newInstance(this.aggregateClass, this.aggregateId), this.eventMapper);
+      }
+      this.eventReplay.accept(eventEntity);
+    }
+
+    private Aggregate complete() {
+      if (this.snapshotUnreadable) {
+        // The snapshot could not be decoded, so the events it covers are needed as well.
+        Aggregate aggregate = aggregateFactory.newInstance(this.aggregateClass, this.aggregateId);
+        reproduceAggregateFromEvents(aggregate, null, this.eventMapper);
+        return aggregate;
+      }
+      if (this.eventReplay == null) {
+        this.eventReplay = new EventReplay(aggregateFactory.newInstance(this.aggregateClass, this.aggregateId), this.eventMapper);
+      }
+      return this.eventReplay.complete();
+    }
+  }
+
+  /**
+   * Applies streamed events to an aggregate one at a time, filling in the history moved to the archive when the stream skips versions.
+   * A version that does not follow the previous one after the archive has been read means the history is incomplete, so the replay fails
+   * instead of reproducing the aggregate without it.
+   */
+  private final class EventReplay implements Consumer<EventEntity> {
+
+    private final Aggregate aggregate;
+    private final Function<EventEntity, Event> eventMapper;
+    private long eventCount;
+    private long payloadBytes;
+
+    private EventReplay(Aggregate aggregate, Function<EventEntity, Event> eventMapper) {
+      this.aggregate = aggregate;
+      this.eventMapper = eventMapper;
+    }
+
+    @Override
+    public void accept(EventEntity eventEntity) {
+      if (eventSegmentStore.isEnabled() && eventEntity.getAggregateVersion() > this.aggregate.getAggregateVersion() + 1) {
+        eventSegmentStore.readGap(this.aggregate.getAggregateId(), this.aggregate.getAggregateVersion(), eventEntity.getAggregateVersion() - 1)
+          .forEach(this::apply);
+      }
+      apply(eventEntity);
+    }
+
+    private Aggregate complete() {
+      if (eventSegmentStore.isEnabled() && this.eventCount == 0) {
+        // Every event after the snapshot may have been archived.
+        eventSegmentStore.readGap(this.aggregate.getAggregateId(), this.aggregate.getAggregateVersion(), null).forEach(this::apply);
+      }
+      snapshotPolicyEvaluator.onAggregateReproduced(this.aggregate, this.eventCount, this.payloadBytes);
+      return this.aggregate;
+    }
+
+    private void apply(EventEntity eventEntity) {
+      if (eventEntity.getAggregateVersion() != this.aggregate.getAggregateVersion() + 1) {
+        throw new IllegalStateException("Missing events for aggregate %s: expected version %s but read version %s".formatted(
+          this.aggregate.getAggregateId(), this.aggregate.getAggregateVersion() + 1, eventEntity.getAggregateVersion()));
+      }
+      this.aggregate.reproduceFromEvent(this.eventMapper.apply(eventEntity));
+      this.eventCount++;
+      this.payloadBytes += eventEntity.payloadSize();
+    }
+  }
 }
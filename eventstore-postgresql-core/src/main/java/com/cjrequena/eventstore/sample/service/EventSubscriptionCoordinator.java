@@ -0,0 +1,139 @@
+package com.cjrequena.eventstore.sample.service;
+
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.SubscriptionProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Makes this process a member of the consumer group of the subscription and keeps track of the partitions it owns.
+ * <p>
+ * On every heartbeat the member records that it is alive, and the live members, sorted by ID, split the partitions between them round
+ * robin: the member at index {@code i} of {@code m} is assigned the partitions {@code p} with {@code p % m == i}. Every member computes
+ * the same assignment from the same member list. A member then leases the partitions assigned to it that are free or whose lease has
+ * expired, renews those it already holds, and gives up the others, so a partition changes hands only once its previous owner released it
+ * or stopped renewing it. A member that joins or leaves therefore triggers a rebalance within a heartbeat or a lease.
+ */
+@Component
+@ConditionalOnProperty(name = "eventstore.subscription.enabled", havingValue = "true")
+@Log4j2
+public class EventSubscriptionCoordinator {
+
+  private final EventStoreService eventStoreService;
+  private final SubscriptionProperties subscriptionProperties;
+  private final String memberId;
+  private final List<Runnable> partitionsAcquiredListeners = new CopyOnWriteArrayList<>();
+  private volatile Set<Integer> ownedPartitions = Set.of();
+  private volatile boolean joined;
+  private volatile Set<String> aggregateTypes;
+  private boolean registered;
+
+  @Autowired
+  public EventSubscriptionCoordinator(EventStoreService eventStoreService, EventStoreConfigurationProperties eventStoreConfigurationProperties) {
+    this.eventStoreService = eventStoreService;
+    this.subscriptionProperties = eventStoreConfigurationProperties.getSubscription();
+    // pid@host, so that the owner of a partition can be told at a glance, and a random suffix in case of a restart with the same pid.
+    this.memberId = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+  }
+
+  public String getMemberId() {
+    return this.memberId;
+  }
+
+  /**
+   * @return the number of partitions the subscription is split into.
+   */
+  public int getPartitionCount() {
+    return this.subscriptionProperties.partitions();
+  }
+
+  /**
+   * @return the partitions leased to this process at the latest heartbeat, in ascending order.
+   */
+  public Set<Integer> getOwnedPartitions() {
+    return this.ownedPartitions;
+  }
+
+  /**
+   * Joins the consumer group of the subscription. Until then this process takes no partition, so that processes that enable the
+   * subscription without consuming it do not hold any.
+   *
+   * @param aggregateTypes the aggregate types this process consumes, or null for every type.
+   */
+  public void join(Collection<String> aggregateTypes) {
+    this.aggregateTypes = aggregateTypes == null ? null : Set.copyOf(aggregateTypes);
+    this.joined = true;
+  }
+
+  /**
+   * Calls the given listener, on the heartbeat thread, every time this process acquires partitions it did not own.
+   */
+  public void onPartitionsAcquired(Runnable listener) {
+    this.partitionsAcquiredListeners.add(listener);
+  }
+
+  @Scheduled(initialDelay = 0, fixedDelayString = "${eventstore.subscription.heartbeat-interval:PT3S}")
+  public synchronized void heartbeat() {
+    if (!this.joined) {
+      return;
+    }
+    String subscriptionName = this.subscriptionProperties.name();
+    try {
+      if (!this.registered) {
+        this.eventStoreService.registerSubscriptionPartitions(subscriptionName, getPartitionCount(), this.aggregateTypes);
+        this.registered = true;
+      }
+      List<String> members = this.eventStoreService.heartbeatSubscriptionMember(subscriptionName, this.memberId, this.subscriptionProperties.leaseDuration());
+      int memberIndex = members.indexOf(this.memberId);
+      List<Integer> assignedPartitions = new ArrayList<>();
+      for (int partition = memberIndex; partition >= 0 && partition < getPartitionCount(); partition += members.size()) {
+        assignedPartitions.add(partition);
+      }
+      Set<Integer> ownedPartitions = new TreeSet<>(this.eventStoreService.acquireSubscriptionPartitions(subscriptionName, this.memberId, assignedPartitions,
+        this.subscriptionProperties.leaseDuration()));
+
+      boolean acquired = !this.ownedPartitions.containsAll(ownedPartitions);
+      if (!ownedPartitions.equals(this.ownedPartitions)) {
+        log.info("Subscription {} member {} of {} now owns partitions {} of {}", subscriptionName, this.memberId, members.size(), ownedPartitions,
+          getPartitionCount());
+      }
+      this.ownedPartitions = Collections.unmodifiableSet(ownedPartitions);
+      if (acquired) {
+        this.partitionsAcquiredListeners.forEach(Runnable::run);
+      }
+    } catch (RuntimeException ex) {
+      // The leases run out unless renewed, so the partitions are not kept. Other members take them over.
+      this.ownedPartitions = Set.of();
+      log.warn("Subscription {} heartbeat of member {} failed", subscriptionName, this.memberId, ex);
+    }
+  }
+
+  @PreDestroy
+  public synchronized void leave() {
+    if (!this.joined) {
+      return;
+    }
+    this.joined = false;
+    this.ownedPartitions = Set.of();
+    try {
+      this.eventStoreService.leaveSubscription(this.subscriptionProperties.name(), this.memberId);
+    } catch (RuntimeException ex) {
+      log.warn("Subscription {} member {} could not leave, its partitions are taken over once its leases expire",
+        this.subscriptionProperties.name(), this.memberId, ex);
+    }
+  }
+}
@@ -0,0 +1,226 @@
+package com.cjrequena.eventstore.sample.service;
+
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.GroupCommitProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Commits appends from concurrent callers together.
+ * <p>
+ * Callers hand their append to {@link #append(Runnable)} and block. A single dispatcher thread takes the first pending append, waits up
+ * to the configured window for more (or until the group is full), and runs the whole group in one transaction. Each append runs in its
+ * own savepoint, so an optimistic concurrency conflict, or any other failure, rolls back only that append and is rethrown to its own
+ * caller. Successful callers are released only after the group transaction has committed.
+ * <p>
+ * The group transaction is independent of any transaction of the caller, so the append is not atomic with it: the append stays committed
+ * if the caller's transaction later rolls back.
+ * <p>
+ * The dispatcher claims the appends of a group once its transaction holds a connection. A caller whose append has not been claimed
+ * within the handoff timeout withdraws it and runs it itself, in its own transaction. Callers usually hold a pooled connection while they
+ * wait, so without this a pool exhausted by waiting callers would leave the dispatcher, and every caller, blocked. An append must
+ * therefore run correctly both on the dispatcher thread and on the caller's thread.
+ */
+@Component
+@Log4j2
+public class GroupCommitDispatcher {
+
+  private final GroupCommitProperties groupCommitProperties;
+  private final TransactionTemplate groupTransactionTemplate;
+  private final TransactionTemplate appendTransactionTemplate;
+  private final BlockingQueue<AppendRequest> queue;
+  private final DistributionSummary groupSizeSummary;
+  private final Counter handoffTimeoutCounter;
+  private Thread dispatcherThread;
+  private volatile boolean running;
+
+  @Autowired
+  public GroupCommitDispatcher(
+    @Qualifier("transactionManagerEventStore") PlatformTransactionManager transactionManager,
+    EventStoreConfigurationProperties eventStoreConfigurationProperties,
+    MeterRegistry meterRegistry) {
+    this.groupCommitProperties = eventStoreConfigurationProperties.getGroupCommit();
+    this.groupTransactionTemplate = new TransactionTemplate(transactionManager);
+    this.groupTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.appendTransactionTemplate = new TransactionTemplate(transactionManager);
+    this.appendTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+    this.queue = new LinkedBlockingQueue<>(this.groupCommitProperties.queueCapacity());
+    this.groupSizeSummary = DistributionSummary.builder("eventstore.group-commit.size")
+      .description("Appends committed per transaction")
+      .register(meterRegistry);
+    this.handoffTimeoutCounter = Counter.builder("eventstore.group-commit.handoff-timeouts")
+      .description("Appends run by their caller because the dispatcher did not take them in time")
+      .register(meterRegistry);
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!this.groupCommitProperties.enabled()) {
+      return;
+    }
+    this.running = true;
+    this.dispatcherThread = Thread.ofPlatform().name("eventstore-group-commit").daemon(true).start(this::dispatch);
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    if (this.dispatcherThread == null) {
+      return;
+    }
+    this.running = false;
+    this.dispatcherThread.join(TimeUnit.SECONDS.toMillis(5));
+    AppendRequest appendRequest;
+    while ((appendRequest = this.queue.poll()) != null) {
+      appendRequest.future().completeExceptionally(new IllegalStateException("Group commit dispatcher is shutting down"));
+    }
+  }
+
+  public boolean isEnabled() {
+    return this.groupCommitProperties.enabled();
+  }
+
+  /**
+   * Runs the given append as part of the next group and waits until the group has been committed. If the dispatcher does not take the
+   * append within the handoff timeout, the append runs on the calling thread instead.
+   *
+   * @param append the statements of one append. It runs either on the dispatcher thread, inside a savepoint of the group transaction, or
+   *               on the calling thread, inside the caller's transaction.
+   * @throws RuntimeException the exception thrown by the append, or the one that prevented the group from committing.
+   */
+  public void append(Runnable append) {
+    AppendRequest appendRequest = new AppendRequest(append);
+    long deadline = System.nanoTime() + this.groupCommitProperties.handoffTimeout().toNanos();
+    try {
+      if (this.queue.offer(appendRequest, deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+        try {
+          appendRequest.future().get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          return;
+        } catch (TimeoutException ex) {
+          if (!appendRequest.withdraw()) {
+            // Claimed by a group transaction that already holds its connection, so it completes.
+            appendRequest.future().get();
+            return;
+          }
+          this.queue.remove(appendRequest);
+        }
+      }
+    } catch (InterruptedException ex) {
+      if (appendRequest.withdraw()) {
+        this.queue.remove(appendRequest);
+      }
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the group commit", ex);
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw new IllegalStateException(ex.getCause());
+    }
+    log.debug("Group commit handoff timed out, appending on the calling thread");
+    this.handoffTimeoutCounter.increment();
+    append.run();
+  }
+
+  private void dispatch() {
+    List<AppendRequest> group = new ArrayList<>(this.groupCommitProperties.maxSize());
+    while (this.running) {
+      try {
+        AppendRequest first = this.queue.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+          continue;
+        }
+        group.add(first);
+        long deadline = System.nanoTime() + this.groupCommitProperties.window().toNanos();
+        while (group.size() < this.groupCommitProperties.maxSize()) {
+          AppendRequest next = this.queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          group.add(next);
+        }
+        commit(group);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        group.forEach(appendRequest -> appendRequest.future().completeExceptionally(ex));
+        return;
+      } finally {
+        group.clear();
+      }
+    }
+  }
+
+  private void commit(List<AppendRequest> group) {
+    List<AppendRequest> appended = new ArrayList<>(group.size());
+    try {
+      this.groupTransactionTemplate.executeWithoutResult(status -> {
+        // The transaction holds its connection now. Appends withdrawn by their callers are left out.
+        List<AppendRequest> claimed = group.stream().filter(AppendRequest::claim).toList();
+        for (AppendRequest appendRequest : claimed) {
+          try {
+            this.appendTransactionTemplate.executeWithoutResult(savepoint -> appendRequest.append().run());
+            appended.add(appendRequest);
+          } catch (RuntimeException ex) {
+            appendRequest.future().completeExceptionally(ex);
+          }
+        }
+      });
+    } catch (RuntimeException ex) {
+      log.warn("Unable to commit a group of {} appends: {}", appended.size(), ex.getMessage(), ex);
+      appended.forEach(appendRequest -> appendRequest.future().completeExceptionally(ex));
+      return;
+    }
+    if (!appended.isEmpty()) {
+      this.groupSizeSummary.record(appended.size());
+    }
+    appended.forEach(appendRequest -> appendRequest.future().complete(null));
+  }
+
+  /**
+   * An append waiting for a group. It is either claimed by the dispatcher or withdrawn by its caller, never both.
+   */
+  private static final class AppendRequest {
+
+    private static final int PENDING = 0;
+    private static final int CLAIMED = 1;
+    private static final int WITHDRAWN = 2;
+
+    private final Runnable append;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+
+    private AppendRequest(Runnable append) {
+      this.append = append;
+    }
+
+    private Runnable append() {
+      return this.append;
+    }
+
+    private CompletableFuture<Void> future() {
+      return this.future;
+    }
+
+    private boolean claim() {
+      return this.state.compareAndSet(PENDING, CLAIMED);
+    }
+
+    private boolean withdraw() {
+      return this.state.compareAndSet(PENDING, WITHDRAWN);
+    }
+  }
+}
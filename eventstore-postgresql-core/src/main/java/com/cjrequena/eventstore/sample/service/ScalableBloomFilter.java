@@ -0,0 +1,123 @@
+package com.cjrequena.eventstore.sample.service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter that grows with the number of elements put into it, safe for concurrent use.
+ * <p>
+ * Elements go into the latest stage until it reaches its capacity, then a new stage twice as large and with half the false positive
+ * rate is added. The false positive rate of the whole filter stays below the one it was created with however many stages it ends up with.
+ * Elements are given as two independent 64-bit hashes, combined into the probe positions of each stage.
+ */
+final class ScalableBloomFilter {
+
+  private static final int GROWTH_FACTOR = 2;
+  private static final double TIGHTENING_RATIO = 0.5;
+
+  private final List<Stage> stages = new CopyOnWriteArrayList<>();
+  private volatile Stage currentStage;
+
+  ScalableBloomFilter(long initialCapacity, double falsePositiveRate) {
+    // The rates of the stages form a geometric series, so the first one is scaled down for the sum to stay within falsePositiveRate.
+    this.currentStage = new Stage(initialCapacity, falsePositiveRate * (1 - TIGHTENING_RATIO));
+    this.stages.add(this.currentStage);
+  }
+
+  /**
+   * @return false if the element has definitely never been put, true if it probably has.
+   */
+  boolean mightContain(long hash1, long hash2) {
+    for (Stage stage : this.stages) {
+      if (stage.mightContain(hash1, hash2)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  void put(long hash1, long hash2) {
+    if (mightContain(hash1, hash2)) {
+      return;
+    }
+    Stage stage = this.currentStage;
+    if (stage.count.incrementAndGet() > stage.capacity) {
+      stage = grow(stage);
+    }
+    stage.put(hash1, hash2);
+  }
+
+  /**
+   * @return the approximate number of distinct elements put.
+   */
+  long size() {
+    long size = 0;
+    for (Stage stage : this.stages) {
+      size += Math.min(stage.count.get(), stage.capacity);
+    }
+    return size;
+  }
+
+  /**
+   * @return the number of stages, one more each time the latest one reaches its capacity.
+   */
+  int stageCount() {
+    return this.stages.size();
+  }
+
+  private synchronized Stage grow(Stage fullStage) {
+    if (this.currentStage == fullStage) {
+      this.currentStage = new Stage(fullStage.capacity * GROWTH_FACTOR, fullStage.falsePositiveRate * TIGHTENING_RATIO);
+      this.stages.add(this.currentStage);
+    }
+    this.currentStage.count.incrementAndGet();
+    return this.currentStage;
+  }
+
+  private static final class Stage {
+
+    private final long capacity;
+    private final double falsePositiveRate;
+    private final long bitCount;
+    private final int hashCount;
+    private final AtomicLongArray bits;
+    private final AtomicLong count = new AtomicLong();
+
+    private Stage(long capacity, double falsePositiveRate) {
+      this.capacity = capacity;
+      this.falsePositiveRate = falsePositiveRate;
+      long optimalBitCount = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+      this.bitCount = Math.max(Long.SIZE, (optimalBitCount + Long.SIZE - 1) / Long.SIZE * Long.SIZE);
+      this.hashCount = Math.max(1, (int) Math.round((double) this.bitCount / capacity * Math.log(2)));
+      this.bits = new AtomicLongArray(Math.toIntExact(this.bitCount / Long.SIZE));
+    }
+
+    private boolean mightContain(long hash1, long hash2) {
+      for (int i = 0; i < this.hashCount; i++) {
+        long bitIndex = bitIndex(hash1, hash2, i);
+        if ((this.bits.get((int) (bitIndex >>> 6)) & (1L << bitIndex)) == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void put(long hash1, long hash2) {
+      for (int i = 0; i < this.hashCount; i++) {
+        long bitIndex = bitIndex(hash1, hash2, i);
+        long mask = 1L << bitIndex;
+        int wordIndex = (int) (bitIndex >>> 6);
+        long word;
+        while (((word = this.bits.get(wordIndex)) & mask) == 0 && !this.bits.compareAndSet(wordIndex, word, word | mask)) {
+          // Another thread changed the word in the meantime, retry.
+        }
+      }
+    }
+
+    private long bitIndex(long hash1, long hash2, int i) {
+      return ((hash1 + i * hash2) & Long.MAX_VALUE) % this.bitCount;
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package com.cjrequena.eventstore.sample.snapshot;
+
+import com.cjrequena.eventstore.sample.domain.aggregate.Aggregate;
+import com.cjrequena.eventstore.sample.entity.AggregateSnapshotEntity;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import lombok.SneakyThrows;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Encodes aggregate snapshots in Smile, tagged with a fingerprint of the aggregate schema.
+ * <p>
+ * The same mapper, a Smile copy of the primary {@link ObjectMapper} with the Blackbird module generating the property accessors, is used
+ * to write and to read snapshots. The fingerprint is a hash of the property names and types Jackson finds on the aggregate class and,
+ * recursively, on the classes it holds. A snapshot whose fingerprint does not match the current class is not used, so a class change
+ * makes aggregates load from their events until the snapshot policies take a new snapshot.
+ */
+@Component
+@Log4j2
+public class AggregateSnapshotCodec {
+
+  private final ObjectMapper snapshotObjectMapper;
+  private final ClassValue<String> schemaFingerprints = new ClassValue<>() {
+    @Override
+    protected String computeValue(Class<?> aggregateClass) {
+      return computeSchemaFingerprint(aggregateClass);
+    }
+  };
+
+  @Autowired
+  public AggregateSnapshotCodec(ObjectMapper objectMapper) {
+    this.snapshotObjectMapper = objectMapper.copyWith(new SmileFactory()).registerModule(new BlackbirdModule());
+  }
+
+  /**
+   * @return the schema fingerprint of the given aggregate class.
+   */
+  public String getSchemaFingerprint(Class<? extends Aggregate> aggregateClass) {
+    return this.schemaFingerprints.get(aggregateClass);
+  }
+
+  /**
+   * Builds the snapshot of the given aggregate at its current version.
+   */
+  @SneakyThrows
+  public AggregateSnapshotEntity encode(Aggregate aggregate) {
+    return AggregateSnapshotEntity.builder()
+      .aggregateId(aggregate.getAggregateId())
+      .aggregateVersion(aggregate.getAggregateVersion())
+      .aggregateType(aggregate.getAggregateType())
+      .dataBinary(this.snapshotObjectMapper.writeValueAsBytes(aggregate))
+      .schemaFingerprint(getSchemaFingerprint(aggregate.getClass()))
+      .build();
+  }
+
+  /**
+   * Reads an aggregate back from its snapshot.
+   *
+   * @return the aggregate, or an empty {@link Optional} if the snapshot was taken with another schema or cannot be read.
+   */
+  public <A extends Aggregate> Optional<A> decode(AggregateSnapshotEntity aggregateSnapshotEntity, Class<A> aggregateClass) {
+    if (aggregateSnapshotEntity.getDataBinary() == null
+      || !getSchemaFingerprint(aggregateClass).equals(aggregateSnapshotEntity.getSchemaFingerprint())) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(this.snapshotObjectMapper.readValue(aggregateSnapshotEntity.getDataBinary(), aggregateClass));
+    } catch (Exception ex) {
+      log.warn("Ignoring unreadable snapshot for {} with aggregate ID '{}' version {}: {}", aggregateSnapshotEntity.getAggregateType(),
+        aggregateSnapshotEntity.getAggregateId(), aggregateSnapshotEntity.getAggregateVersion(), ex.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  @SneakyThrows
+  private String computeSchemaFingerprint(Class<?> aggregateClass) {
+    StringBuilder schema = new StringBuilder();
+    describe(this.snapshotObjectMapper.constructType(aggregateClass), schema, new HashSet<>());
+    byte[] digest = MessageDigest.getInstance("SHA-256").digest(schema.toString().getBytes(StandardCharsets.UTF_8));
+    return HexFormat.of().formatHex(digest, 0, 16);
+  }
+
+  /**
+   * Appends the serialized shape of the given type: its properties, sorted by name, with their types. Bean types are described by their
+   * properties rather than their names, JDK and enum types by their names, and container types by their content types.
+   */
+  private void describe(JavaType type, StringBuilder schema, Set<Class<?>> visiting) {
+    Class<?> rawClass = type.getRawClass();
+    if (type.isContainerType()) {
+      schema.append(type.isMapLikeType() ? "map<" : "array<");
+      if (type.getKeyType() != null) {
+        describe(type.getKeyType(), schema, visiting);
+        schema.append(',');
+      }
+      describe(type.getContentType(), schema, visiting);
+      schema.append('>');
+      return;
+    }
+    if (rawClass.isPrimitive() || rawClass.isEnum() || rawClass.getName().startsWith("java.") || !visiting.add(rawClass)) {
+      schema.append(rawClass.getName());
+      return;
+    }
+    List<BeanPropertyDefinition> properties = new ArrayList<>(
+      this.snapshotObjectMapper.getSerializationConfig().introspect(type).findProperties());
+    properties.sort(Comparator.comparing(BeanPropertyDefinition::getName));
+    schema.append('{');
+    for (BeanPropertyDefinition property : properties) {
+      schema.append(property.getName()).append(':');
+      describe(property.getPrimaryType(), schema, visiting);
+      schema.append(';');
+    }
+    schema.append('}');
+    visiting.remove(rawClass);
+  }
+}
@@ -0,0 +1,23 @@
+package com.cjrequena.eventstore.sample.snapshot;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Snapshots once {@code interval} events have been appended after the latest snapshot, however many events each save appends.
+ */
+@Component
+public class EventCountSnapshotPolicy implements SnapshotPolicy {
+
+  public static final String NAME = "event-count";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public boolean shouldSnapshotOnSave(SnapshotContext context) {
+    int interval = context.snapshotProperties().interval();
+    return interval > 0 && context.eventsSinceSnapshot() >= interval;
+  }
+}
@@ -0,0 +1,25 @@
+package com.cjrequena.eventstore.sample.snapshot;
+
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Snapshots once the events after the latest snapshot add up to more than {@code max-payload-size}, so the amount of data read to load
+ * an aggregate stays bounded whatever the size of its events.
+ */
+@Component
+public class PayloadSizeSnapshotPolicy implements SnapshotPolicy {
+
+  public static final String NAME = "payload-size";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public boolean shouldSnapshotOnSave(SnapshotContext context) {
+    DataSize maxPayloadSize = context.snapshotProperties().policy().maxPayloadSize();
+    return maxPayloadSize != null && context.payloadBytesSinceSnapshot() >= maxPayloadSize.toBytes();
+  }
+}
@@ -0,0 +1,24 @@
+package com.cjrequena.eventstore.sample.snapshot;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Queues a snapshot when a load had to replay at least {@code read-trigger-events} events after the latest snapshot. Aggregates that are
+ * read often get snapshotted as soon as they are read, while idle ones are left alone.
+ */
+@Component
+public class ReadTriggeredSnapshotPolicy implements SnapshotPolicy {
+
+  public static final String NAME = "read-triggered";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public boolean shouldSnapshotOnLoad(SnapshotContext context) {
+    int readTriggerEvents = context.snapshotProperties().policy().readTriggerEvents();
+    return readTriggerEvents > 0 && context.eventsSinceSnapshot() >= readTriggerEvents;
+  }
+}
@@ -0,0 +1,26 @@
+package com.cjrequena.eventstore.sample.snapshot;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Snapshots once replaying the events after the latest snapshot is estimated to take longer than {@code max-replay-time}. The estimate
+ * uses the time the aggregate measured per event when it was reproduced, so aggregates with expensive events are snapshotted sooner.
+ */
+@Component
+public class ReplayTimeSnapshotPolicy implements SnapshotPolicy {
+
+  public static final String NAME = "replay-time";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public boolean shouldSnapshotOnSave(SnapshotContext context) {
+    Duration maxReplayTime = context.snapshotProperties().policy().maxReplayTime();
+    return maxReplayTime != null && context.estimatedReplayNanos() > 0 && context.estimatedReplayNanos() >= maxReplayTime.toNanos();
+  }
+}
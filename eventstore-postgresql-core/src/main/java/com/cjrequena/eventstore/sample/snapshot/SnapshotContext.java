@@ -0,0 +1,27 @@
+package com.cjrequena.eventstore.sample.snapshot;
+
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.SnapshotProperties;
+import com.cjrequena.eventstore.sample.domain.aggregate.Aggregate;
+
+/**
+ * What a {@link SnapshotPolicy} knows about an aggregate since its latest snapshot.
+ *
+ * @param aggregate the aggregate.
+ * @param snapshotProperties the snapshot configuration of the aggregate type.
+ * @param eventsSinceSnapshot the number of events after the latest snapshot.
+ * @param payloadBytesSinceSnapshot the encoded size of those events.
+ * @param estimatedReplayNanos the estimated time to replay those events, 0 if the aggregate has not replayed any event yet.
+ */
+public record SnapshotContext(
+  Aggregate aggregate,
+  SnapshotProperties snapshotProperties,
+  long eventsSinceSnapshot,
+  long payloadBytesSinceSnapshot,
+  long estimatedReplayNanos) {
+
+  public static SnapshotContext of(Aggregate aggregate, SnapshotProperties snapshotProperties) {
+    long eventsSinceSnapshot = aggregate.getAggregateVersion() - aggregate.getSnapshotAggregateVersion();
+    return new SnapshotContext(aggregate, snapshotProperties, eventsSinceSnapshot, aggregate.getPayloadBytesSinceSnapshot(),
+      aggregate.getAverageReplayNanos() * eventsSinceSnapshot);
+  }
+}
@@ -0,0 +1,31 @@
+package com.cjrequena.eventstore.sample.snapshot;
+
+/**
+ * Decides when an aggregate should be snapshotted.
+ * <p>
+ * Policies are Spring beans selected by name per aggregate type through {@code eventstore.snapshot.<type>.policy.strategies}. A policy
+ * can ask for a snapshot when the aggregate is saved, when it has been loaded, or both.
+ */
+public interface SnapshotPolicy {
+
+  /**
+   * @return the name the policy is selected with in the configuration.
+   */
+  String getName();
+
+  /**
+   * @param context the aggregate being saved, including its new events.
+   * @return true if the save should take a snapshot.
+   */
+  default boolean shouldSnapshotOnSave(SnapshotContext context) {
+    return false;
+  }
+
+  /**
+   * @param context the aggregate that has just been reproduced from its latest snapshot and events.
+   * @return true if a snapshot of the loaded state should be queued.
+   */
+  default boolean shouldSnapshotOnLoad(SnapshotContext context) {
+    return false;
+  }
+}
@@ -0,0 +1,123 @@
+package com.cjrequena.eventstore.sample.snapshot;
+
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.SnapshotProperties;
+import com.cjrequena.eventstore.sample.domain.aggregate.Aggregate;
+import com.cjrequena.eventstore.sample.entity.AbstractEventEntity;
+import com.cjrequena.eventstore.sample.entity.EventEntity;
+import com.cjrequena.eventstore.sample.service.AggregateSnapshotWriter;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Applies the snapshot policies configured for each aggregate type.
+ * <p>
+ * On save, a snapshot is taken when any policy asks for it, or when a previous load asked for one that could not be queued. On load, a
+ * snapshot of the freshly reproduced state is queued to the {@link AggregateSnapshotWriter} when any policy asks for it. Both paths keep
+ * the counters measured since the latest snapshot up to date on the aggregate.
+ */
+@Component
+@Log4j2
+public class SnapshotPolicyEvaluator {
+
+  private final EventStoreConfigurationProperties eventStoreConfigurationProperties;
+  private final AggregateSnapshotWriter aggregateSnapshotWriter;
+  private final Map<String, SnapshotPolicy> snapshotPolicies;
+
+  @Autowired
+  public SnapshotPolicyEvaluator(
+    EventStoreConfigurationProperties eventStoreConfigurationProperties,
+    AggregateSnapshotWriter aggregateSnapshotWriter,
+    List<SnapshotPolicy> snapshotPolicies) {
+    this.eventStoreConfigurationProperties = eventStoreConfigurationProperties;
+    this.aggregateSnapshotWriter = aggregateSnapshotWriter;
+    this.snapshotPolicies = snapshotPolicies.stream().collect(Collectors.toMap(SnapshotPolicy::getName, Function.identity()));
+  }
+
+  @PostConstruct
+  public void validate() {
+    for (String aggregateType : this.eventStoreConfigurationProperties.snapshotAggregateTypes()) {
+      for (String strategy : this.eventStoreConfigurationProperties.getSnapshot(aggregateType).policy().strategies()) {
+        if (!this.snapshotPolicies.containsKey(strategy)) {
+          throw new IllegalStateException(
+            "Unknown snapshot policy '%s' for aggregate type %s. Available policies: %s".formatted(strategy, aggregateType, this.snapshotPolicies.keySet()));
+        }
+      }
+    }
+  }
+
+  /**
+   * Decides whether saving the aggregate with its new events should take a snapshot, and if so records it on the aggregate.
+   *
+   * @param aggregate the aggregate being saved.
+   * @param newEventEntities its new events, already encoded.
+   * @return true if the save should take a snapshot.
+   */
+  public boolean shouldSnapshotOnSave(Aggregate aggregate, List<AbstractEventEntity> newEventEntities) {
+    addPayloadBytes(aggregate, newEventEntities);
+    SnapshotProperties snapshotProperties = this.eventStoreConfigurationProperties.getSnapshot(aggregate.getAggregateType());
+    if (!snapshotProperties.enabled()) {
+      return false;
+    }
+    SnapshotContext context = SnapshotContext.of(aggregate, snapshotProperties);
+    boolean shouldSnapshot = aggregate.isSnapshotRequested()
+      || policiesOf(snapshotProperties).stream().anyMatch(snapshotPolicy -> snapshotPolicy.shouldSnapshotOnSave(context));
+    if (shouldSnapshot) {
+      aggregate.markSnapshotTaken();
+    }
+    return shouldSnapshot;
+  }
+
+  /**
+   * Records the events an aggregate has just been reproduced from, and queues a snapshot of it if a policy asks for one. Without an
+   * asynchronous snapshot writer, the snapshot is deferred to the next save of the aggregate instead.
+   *
+   * @param aggregate the reproduced aggregate.
+   * @param eventCount the number of events applied after its latest snapshot.
+   * @param payloadBytes the encoded size of those events.
+   */
+  public void onAggregateReproduced(Aggregate aggregate, long eventCount, long payloadBytes) {
+    aggregate.addPayloadBytesSinceSnapshot(payloadBytes);
+    SnapshotProperties snapshotProperties = this.eventStoreConfigurationProperties.getSnapshot(aggregate.getAggregateType());
+    if (!snapshotProperties.enabled() || eventCount == 0) {
+      return;
+    }
+    SnapshotContext context = SnapshotContext.of(aggregate, snapshotProperties);
+    if (policiesOf(snapshotProperties).stream().noneMatch(snapshotPolicy -> snapshotPolicy.shouldSnapshotOnLoad(context))) {
+      return;
+    }
+    if (!this.aggregateSnapshotWriter.isAsync()) {
+      aggregate.setSnapshotRequested(true);
+      return;
+    }
+    try {
+      this.aggregateSnapshotWriter.submitNow(aggregate);
+      aggregate.markSnapshotTaken();
+    } catch (Exception ex) {
+      // The load itself succeeded, the next save will take the snapshot.
+      log.warn("Unable to queue snapshot for {} with aggregate ID '{}': {}", aggregate.getAggregateType(), aggregate.getAggregateId(), ex.getMessage());
+      aggregate.setSnapshotRequested(true);
+    }
+  }
+
+  private List<SnapshotPolicy> policiesOf(SnapshotProperties snapshotProperties) {
+    return snapshotProperties.policy().strategies().stream().map(this.snapshotPolicies::get).toList();
+  }
+
+  private static void addPayloadBytes(Aggregate aggregate, List<? extends AbstractEventEntity> eventEntities) {
+    long payloadBytes = 0;
+    for (AbstractEventEntity eventEntity : eventEntities) {
+      if (eventEntity instanceof EventEntity encodedEventEntity) {
+        payloadBytes += encodedEventEntity.payloadSize();
+      }
+    }
+    aggregate.addPayloadBytesSinceSnapshot(payloadBytes);
+  }
+}
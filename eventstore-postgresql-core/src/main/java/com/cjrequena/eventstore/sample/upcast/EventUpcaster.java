@@ -0,0 +1,29 @@
+package com.cjrequena.eventstore.sample.upcast;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Migrates the payload of one event type from one revision to the next.
+ * <p>
+ * Every {@code EventUpcaster} bean is registered in the {@link EventUpcasterChain}. Stored events keep the revision they were written
+ * with in {@code EVENT_REVISION}, and are brought to the latest revision of their type when they are read, so evolving a payload shape
+ * never requires rewriting the stored history. The upcasters of an event type must cover every revision from 1 to the latest one.
+ */
+public interface EventUpcaster {
+
+  /**
+   * @return the event type, as stored in {@code EVENT_TYPE}.
+   */
+  String getEventType();
+
+  /**
+   * @return the revision this upcaster reads. It produces revision {@code getFromRevision() + 1}.
+   */
+  int getFromRevision();
+
+  /**
+   * @param payload the payload at {@link #getFromRevision()}, which may be modified in place.
+   * @return the payload at the next revision.
+   */
+  JsonNode upcast(JsonNode payload);
+}
@@ -0,0 +1,94 @@
+package com.cjrequena.eventstore.sample.upcast;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Brings event payloads written with an older revision to the latest revision of their event type.
+ * <p>
+ * The registered {@link EventUpcaster}s are grouped by event type and composed once at startup: for each event type and each older
+ * revision there is a single precomposed function applying every step up to the latest revision. Reading an event at the latest revision
+ * costs one map lookup, and event types without upcasters are always at revision {@link #INITIAL_REVISION}.
+ */
+@Component
+@Log4j2
+public class EventUpcasterChain {
+
+  public static final int INITIAL_REVISION = 1;
+
+  private final Map<String, UpcasterChain> chainsByEventType;
+
+  @Autowired
+  public EventUpcasterChain(List<EventUpcaster> eventUpcasters) {
+    Map<String, List<EventUpcaster>> upcastersByEventType = eventUpcasters.stream()
+      .collect(Collectors.groupingBy(EventUpcaster::getEventType));
+    Map<String, UpcasterChain> chains = new HashMap<>();
+    upcastersByEventType.forEach((eventType, upcasters) -> chains.put(eventType, compose(eventType, upcasters)));
+    this.chainsByEventType = Map.copyOf(chains);
+  }
+
+  /**
+   * @return the revision new events of the given type are written with.
+   */
+  public int getLatestRevision(String eventType) {
+    UpcasterChain chain = this.chainsByEventType.get(eventType);
+    return chain != null ? chain.latestRevision() : INITIAL_REVISION;
+  }
+
+  /**
+   * @return true if an event of the given type and revision must be upcast before it is decoded.
+   */
+  public boolean requiresUpcast(String eventType, int revision) {
+    UpcasterChain chain = this.chainsByEventType.get(eventType);
+    return chain != null && revision < chain.latestRevision();
+  }
+
+  /**
+   * Upcasts a payload of the given type and revision to the latest revision.
+   *
+   * @param eventType the event type.
+   * @param revision the revision the payload was written with.
+   * @param payload the payload, which may be modified in place.
+   * @return the payload at the latest revision.
+   */
+  public JsonNode upcast(String eventType, int revision, JsonNode payload) {
+    UpcasterChain chain = this.chainsByEventType.get(eventType);
+    if (chain == null || revision >= chain.latestRevision()) {
+      return payload;
+    }
+    return chain.fromRevision().get(Math.max(revision, INITIAL_REVISION) - INITIAL_REVISION).apply(payload);
+  }
+
+  private static UpcasterChain compose(String eventType, List<EventUpcaster> upcasters) {
+    List<EventUpcaster> sortedUpcasters = new ArrayList<>(upcasters);
+    sortedUpcasters.sort(Comparator.comparingInt(EventUpcaster::getFromRevision));
+    for (int i = 0; i < sortedUpcasters.size(); i++) {
+      int expectedRevision = INITIAL_REVISION + i;
+      if (sortedUpcasters.get(i).getFromRevision() != expectedRevision) {
+        throw new IllegalStateException("Upcasters of event type %s must cover revisions %d to %d without gaps or duplicates, found revision %d"
+          .formatted(eventType, INITIAL_REVISION, sortedUpcasters.size(), sortedUpcasters.get(i).getFromRevision()));
+      }
+    }
+    // fromRevision[i] upcasts revision INITIAL_REVISION + i to the latest one, built backwards so each entry reuses the next.
+    List<UnaryOperator<JsonNode>> fromRevision = new ArrayList<>(Collections.nCopies(sortedUpcasters.size(), null));
+    UnaryOperator<JsonNode> tail = UnaryOperator.identity();
+    for (int i = sortedUpcasters.size() - 1; i >= 0; i--) {
+      EventUpcaster upcaster = sortedUpcasters.get(i);
+      UnaryOperator<JsonNode> next = tail;
+      tail = i == sortedUpcasters.size() - 1 ? upcaster::upcast : payload -> next.apply(upcaster.upcast(payload));
+      fromRevision.set(i, tail);
+    }
+    int latestRevision = INITIAL_REVISION + sortedUpcasters.size();
+    log.info("Registered {} upcasters for event type {}, latest revision {}", sortedUpcasters.size(), eventType, latestRevision);
+    return new UpcasterChain(latestRevision, List.copyOf(fromRevision));
+  }
+
+  private record UpcasterChain(int latestRevision, List<UnaryOperator<JsonNode>> fromRevision) {
+  }
+}
@@ -0,0 +1,94 @@
+package com.cjrequena.eventstore.sample.codec;
+
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.PayloadProperties;
+import com.cjrequena.eventstore.sample.configuration.EventStoreConfigurationProperties.PayloadStorage;
+import com.cjrequena.eventstore.sample.entity.EventEntity;
+import com.cjrequena.eventstore.sample.upcast.EventUpcasterChain;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static com.cjrequena.eventstore.sample.codec.EventPayloadCodecConfiguration.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventPayloadCodecRegistryTest {
+
+  private static final String JSON_AGGREGATE = "JSON_AGGREGATE";
+  private static final String SMILE_AGGREGATE = "SMILE_AGGREGATE";
+  private static final String CBOR_AGGREGATE = "CBOR_AGGREGATE";
+  private static final TestPayload PAYLOAD = new TestPayload("Subscription", new BigDecimal("100.50"));
+
+  private final EventPayloadCodecRegistry registry = newRegistry(Map.of(SMILE_AGGREGATE, APPLICATION_SMILE, CBOR_AGGREGATE, APPLICATION_CBOR));
+
+  @Test
+  void encodesAndDecodesSmilePayloads() {
+    EventEntity eventEntity = encode(SMILE_AGGREGATE);
+
+    assertEquals(APPLICATION_SMILE, eventEntity.getDataContentType());
+    assertNull(eventEntity.getData());
+    assertNotNull(eventEntity.getDataBinary());
+    assertEquals(PAYLOAD, this.registry.decodeData(eventEntity, TestPayload.class));
+  }
+
+  @Test
+  void encodesAndDecodesCborPayloads() {
+    EventEntity eventEntity = encode(CBOR_AGGREGATE);
+
+    assertEquals(APPLICATION_CBOR, eventEntity.getDataContentType());
+    assertNull(eventEntity.getData());
+    assertNotNull(eventEntity.getDataBinary());
+    assertEquals(PAYLOAD, this.registry.decodeData(eventEntity, TestPayload.class));
+  }
+
+  @Test
+  void encodesAggregateTypesWithoutAContentTypeAsJson() {
+    EventEntity eventEntity = encode(JSON_AGGREGATE);
+
+    assertEquals(APPLICATION_JSON, eventEntity.getDataContentType());
+    assertNull(eventEntity.getDataBinary());
+    assertEquals(PAYLOAD, this.registry.decodeData(eventEntity, TestPayload.class));
+  }
+
+  @Test
+  void decodesEventsWithoutAContentTypeAsJson() {
+    for (String dataContentType : new String[] {null, "", " "}) {
+      EventEntity eventEntity = new EventEntity();
+      eventEntity.setEventType("TEST_EVENT");
+      eventEntity.setDataContentType(dataContentType);
+      eventEntity.setData("{\"owner\":\"Subscription\",\"balance\":100.50}");
+
+      assertEquals(PAYLOAD, this.registry.decodeData(eventEntity, TestPayload.class));
+    }
+  }
+
+  @Test
+  void rejectsAnUnknownContentTypeAtStartup() {
+    IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+      () -> newRegistry(Map.of(JSON_AGGREGATE, "application/unknown")));
+    assertTrue(exception.getMessage().contains("application/unknown"));
+  }
+
+  private EventEntity encode(String aggregateType) {
+    EventEntity eventEntity = new EventEntity();
+    eventEntity.setEventType("TEST_EVENT");
+    this.registry.encodeData(eventEntity, PAYLOAD, aggregateType);
+    return eventEntity;
+  }
+
+  private static EventPayloadCodecRegistry newRegistry(Map<String, String> contentTypes) {
+    ObjectMapper objectMapper = new ObjectMapper();
+    EventPayloadCodecConfiguration codecConfiguration = new EventPayloadCodecConfiguration();
+    EventStoreConfigurationProperties eventStoreConfigurationProperties = new EventStoreConfigurationProperties();
+    eventStoreConfigurationProperties.setPayload(new PayloadProperties(PayloadStorage.JSON, contentTypes));
+    return new EventPayloadCodecRegistry(List.of(codecConfiguration.jsonEventPayloadCodec(objectMapper),
+      codecConfiguration.smileEventPayloadCodec(objectMapper), codecConfiguration.cborEventPayloadCodec(objectMapper)),
+      eventStoreConfigurationProperties, new EventUpcasterChain(List.of()));
+  }
+
+  record TestPayload(String owner, BigDecimal balance) {
+  }
+}
@@ -0,0 +1,110 @@
+package com.cjrequena.eventstore.sample.domain.aggregate;
+
+import com.cjrequena.eventstore.sample.domain.event.Event;
+import jakarta.annotation.Nonnull;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Method;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the reflective dispatch formerly used by {@link Aggregate} with the {@link AggregateHandlers} dispatch table.
+ * <p>
+ * It is not run by the test phase. After {@code mvn test-compile}, run its {@code main} method with the test classpath of the module.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AggregateDispatchBenchmark {
+
+  private final AggregateHandlers eventHandlers = new AggregateHandlers("applyEvent", Event.class);
+  private BenchmarkAggregate aggregate;
+  private Event creditedEvent;
+  private Event debitedEvent;
+
+  @Setup
+  public void setUp() {
+    UUID aggregateId = UUID.randomUUID();
+    this.aggregate = new BenchmarkAggregate(aggregateId, 0);
+    this.creditedEvent = new BenchmarkCreditedEvent(aggregateId, 1);
+    this.debitedEvent = new BenchmarkDebitedEvent(aggregateId, 2);
+  }
+
+  @Benchmark
+  public long reflective() throws ReflectiveOperationException {
+    invokeReflectively(this.aggregate, this.creditedEvent);
+    invokeReflectively(this.aggregate, this.debitedEvent);
+    return this.aggregate.balance;
+  }
+
+  @Benchmark
+  public long dispatchTable() {
+    this.eventHandlers.invoke(this.aggregate, this.creditedEvent);
+    this.eventHandlers.invoke(this.aggregate, this.debitedEvent);
+    return this.aggregate.balance;
+  }
+
+  // The dispatch Aggregate.invoke performed before the dispatch tables.
+  private static void invokeReflectively(Aggregate aggregate, Object parameter) throws ReflectiveOperationException {
+    Method method = aggregate.getClass().getMethod("applyEvent", parameter.getClass());
+    method.invoke(aggregate, parameter);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(AggregateDispatchBenchmark.class.getSimpleName()).build()).run();
+  }
+
+  public static class BenchmarkAggregate extends Aggregate {
+
+    private long balance;
+
+    public BenchmarkAggregate(UUID aggregateId, long aggregateVersion) {
+      super(aggregateId, aggregateVersion);
+    }
+
+    public void applyEvent(BenchmarkCreditedEvent event) {
+      this.balance += 10;
+    }
+
+    public void applyEvent(BenchmarkDebitedEvent event) {
+      this.balance -= 5;
+    }
+
+    @Nonnull
+    @Override
+    public String getAggregateType() {
+      return "BENCHMARK_AGGREGATE";
+    }
+  }
+
+  public static class BenchmarkCreditedEvent extends Event {
+
+    public BenchmarkCreditedEvent(UUID aggregateId, long aggregateVersion) {
+      super(aggregateId, aggregateVersion);
+    }
+
+    @Override
+    public Object getData() {
+      return null;
+    }
+  }
+
+  public static class BenchmarkDebitedEvent extends Event {
+
+    public BenchmarkDebitedEvent(UUID aggregateId, long aggregateVersion) {
+      super(aggregateId, aggregateVersion);
+    }
+
+    @Override
+    public Object getData() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.cjrequena.eventstore.sample.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScalableBloomFilterTest {
+
+  private static final double FALSE_POSITIVE_RATE = 0.01;
+
+  @Test
+  void addsAStageEachTimeTheLatestOneIsFull() {
+    ScalableBloomFilter bloomFilter = new ScalableBloomFilter(100, FALSE_POSITIVE_RATE);
+    long[][] elements = elements(1, 1000);
+    assertEquals(1, bloomFilter.stageCount());
+
+    putAll(bloomFilter, elements);
+
+    // Stages of 100, 200, 400 and 800 elements.
+    assertEquals(4, bloomFilter.stageCount());
+    assertContainsAll(bloomFilter, elements);
+  }
+
+  @Test
+  void keepsTheFalsePositiveRateAfterGrowing() {
+    ScalableBloomFilter bloomFilter = new ScalableBloomFilter(100, FALSE_POSITIVE_RATE);
+    putAll(bloomFilter, elements(1, 10_000));
+
+    long[][] absentElements = elements(2, 100_000);
+    long falsePositives = 0;
+    for (long[] element : absentElements) {
+      if (bloomFilter.mightContain(element[0], element[1])) {
+        falsePositives++;
+      }
+    }
+    assertTrue(falsePositives < absentElements.length * FALSE_POSITIVE_RATE, () -> "Too many false positives");
+  }
+
+  @Test
+  void countsDistinctElements() {
+    ScalableBloomFilter bloomFilter = new ScalableBloomFilter(1000, FALSE_POSITIVE_RATE);
+    long[][] elements = elements(1, 500);
+
+    putAll(bloomFilter, elements);
+    long size = bloomFilter.size();
+    putAll(bloomFilter, elements);
+
+    // An element mistaken for one already put is not counted, so the size may fall slightly short.
+    assertTrue(size > 490 && size <= 500, () -> "Unexpected size " + size);
+    assertEquals(size, bloomFilter.size(), "Putting the same elements again changed the size");
+  }
+
+  @Test
+  void hasNoFalseNegativesUnderConcurrentPuts() throws Exception {
+    int threads = 8;
+    int elementsPerThread = 20_000;
+    // Small enough for the filter to grow several times while the threads put.
+    ScalableBloomFilter bloomFilter = new ScalableBloomFilter(1000, FALSE_POSITIVE_RATE);
+    List<long[][]> elementsByThread = new ArrayList<>();
+    for (int thread = 0; thread < threads; thread++) {
+      elementsByThread.add(elements(thread + 1, elementsPerThread));
+    }
+
+    CountDownLatch start = new CountDownLatch(1);
+    try (ExecutorService executorService = Executors.newFixedThreadPool(threads)) {
+      List<Future<?>> futures = new ArrayList<>();
+      for (long[][] elements : elementsByThread) {
+        futures.add(executorService.submit(() -> {
+          start.await();
+          putAll(bloomFilter, elements);
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+
+    assertTrue(bloomFilter.stageCount() > 1);
+    elementsByThread.forEach(elements -> assertContainsAll(bloomFilter, elements));
+    assertTrue(bloomFilter.size() > threads * elementsPerThread * (1 - FALSE_POSITIVE_RATE), () -> "Unexpected size " + bloomFilter.size());
+  }
+
+  private static void putAll(ScalableBloomFilter bloomFilter, long[][] elements) {
+    for (long[] element : elements) {
+      bloomFilter.put(element[0], element[1]);
+    }
+  }
+
+  private static void assertContainsAll(ScalableBloomFilter bloomFilter, long[][] elements) {
+    for (long[] element : elements) {
+      assertTrue(bloomFilter.mightContain(element[0], element[1]), "False negative");
+    }
+  }
+
+  /**
+   * @return random pairs of hashes, the second one odd as {@link AggregateExistenceIndex} makes it. Different seeds give distinct elements.
+   */
+  private static long[][] elements(long seed, int count) {
+    SplittableRandom random = new SplittableRandom(seed);
+    long[][] elements = new long[count][];
+    for (int i = 0; i < count; i++) {
+      elements[i] = new long[] {random.nextLong(), random.nextLong() | 1};
+    }
+    return elements;
+  }
+}
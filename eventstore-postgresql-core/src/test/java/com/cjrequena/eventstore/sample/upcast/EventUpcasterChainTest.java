@@ -0,0 +1,82 @@
+package com.cjrequena.eventstore.sample.upcast;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventUpcasterChainTest {
+
+  private static final String EVENT_TYPE = "TEST_EVENT";
+
+  @Test
+  void upcastsEveryOlderRevisionToTheLatestOneInOrder() {
+    // Registered out of order on purpose, the chain sorts them by revision.
+    EventUpcasterChain chain = new EventUpcasterChain(List.of(new AppendingUpcaster(EVENT_TYPE, 3), new AppendingUpcaster(EVENT_TYPE, 1),
+      new AppendingUpcaster(EVENT_TYPE, 2)));
+
+    assertEquals(4, chain.getLatestRevision(EVENT_TYPE));
+    assertEquals("1,2,3", upcastSteps(chain, 1));
+    assertEquals("2,3", upcastSteps(chain, 2));
+    assertEquals("3", upcastSteps(chain, 3));
+    assertEquals("", upcastSteps(chain, 4));
+    assertTrue(chain.requiresUpcast(EVENT_TYPE, 3));
+    assertFalse(chain.requiresUpcast(EVENT_TYPE, 4));
+  }
+
+  @Test
+  void leavesEventTypesWithoutUpcastersAtTheInitialRevision() {
+    EventUpcasterChain chain = new EventUpcasterChain(List.of(new AppendingUpcaster(EVENT_TYPE, 1)));
+
+    assertEquals(EventUpcasterChain.INITIAL_REVISION, chain.getLatestRevision("OTHER_EVENT"));
+    assertFalse(chain.requiresUpcast("OTHER_EVENT", EventUpcasterChain.INITIAL_REVISION));
+    ObjectNode payload = JsonNodeFactory.instance.objectNode();
+    assertSame(payload, chain.upcast("OTHER_EVENT", EventUpcasterChain.INITIAL_REVISION, payload));
+  }
+
+  @Test
+  void rejectsAGapInTheRevisions() {
+    List<EventUpcaster> upcasters = List.of(new AppendingUpcaster(EVENT_TYPE, 1), new AppendingUpcaster(EVENT_TYPE, 3));
+
+    IllegalStateException exception = assertThrows(IllegalStateException.class, () -> new EventUpcasterChain(upcasters));
+    assertTrue(exception.getMessage().contains(EVENT_TYPE));
+  }
+
+  @Test
+  void rejectsADuplicateRevision() {
+    List<EventUpcaster> upcasters = List.of(new AppendingUpcaster(EVENT_TYPE, 1), new AppendingUpcaster(EVENT_TYPE, 1));
+
+    assertThrows(IllegalStateException.class, () -> new EventUpcasterChain(upcasters));
+  }
+
+  @Test
+  void rejectsAChainThatDoesNotStartAtTheInitialRevision() {
+    List<EventUpcaster> upcasters = List.of(new AppendingUpcaster(EVENT_TYPE, 2));
+
+    assertThrows(IllegalStateException.class, () -> new EventUpcasterChain(upcasters));
+  }
+
+  private static String upcastSteps(EventUpcasterChain chain, int revision) {
+    ObjectNode payload = JsonNodeFactory.instance.objectNode();
+    payload.put("steps", "");
+    return chain.upcast(EVENT_TYPE, revision, payload).get("steps").asText();
+  }
+
+  /**
+   * Records the revision it reads in the {@code steps} field, so the order in which the chain applied the upcasters can be checked.
+   */
+  private record AppendingUpcaster(String getEventType, int getFromRevision) implements EventUpcaster {
+
+    @Override
+    public JsonNode upcast(JsonNode payload) {
+      ObjectNode node = (ObjectNode) payload;
+      String steps = node.get("steps").asText();
+      node.put("steps", steps.isEmpty() ? String.valueOf(getFromRevision) : steps + "," + getFromRevision);
+      return node;
+    }
+  }
+}